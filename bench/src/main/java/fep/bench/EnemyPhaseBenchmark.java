@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.bench;
+
+import fep.ai.EnemyPhasePlan;
+import fep.ai.EnemyPhasePlanner;
+import fep.model.CombatProfile;
+import fep.model.Faction;
+import fep.model.Map;
+import fep.model.MoveCostStrategy;
+import fep.model.MoveType;
+import fep.model.Unit;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures planning a whole enemy phase of 200 units against 100 player
+ * units on a 100x100 map, at several pool sizes. With one task per unit the
+ * evaluation stage should speed up nearly in proportion to the parallelism,
+ * up to the number of cores; resolution stays sequential.
+ * @author Kyle Buzsaki
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EnemyPhaseBenchmark {
+
+    private static final int SIZE = 100;
+    private static final int ENEMY_COUNT = 200;
+    private static final int PLAYER_COUNT = 100;
+
+    /**
+     * Cavalry with 7 movement and a 1-2 range weapon.
+     */
+    private static final CombatProfile PROFILE = new CombatProfile() {
+        @Override
+        public MoveCostStrategy getMoveCostStrategy(Unit unit) {
+            return MoveType.KNIGHT_A;
+        }
+        @Override
+        public int getMovement(Unit unit) {
+            return 7;
+        }
+        @Override
+        public int getMinRange(Unit unit) {
+            return 1;
+        }
+        @Override
+        public int getMaxRange(Unit unit) {
+            return 2;
+        }
+    };
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int parallelism;
+
+    private Map map;
+    private ForkJoinPool pool;
+    private EnemyPhasePlanner planner;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(MapFixtures.SEED);
+        map = MapFixtures.createTerrainMap(SIZE, random);
+        MapFixtures.addUnits(map, ENEMY_COUNT, Faction.ENEMY, random);
+        MapFixtures.addUnits(map, PLAYER_COUNT, Faction.PLAYER, random);
+        pool = new ForkJoinPool(parallelism);
+        planner = new EnemyPhasePlanner(PROFILE, pool);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public EnemyPhasePlan planPhase() {
+        return planner.plan(map, Faction.ENEMY);
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.bench;
+
+import fep.model.ImmutablePoint;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the {@link ImmutablePoint} methods used by every map and path
+ * operation.
+ * @author Kyle Buzsaki
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImmutablePointBenchmark {
+    
+    private static final int POINTS = 1024;
+    
+    private ImmutablePoint[] points;
+    
+    @Setup
+    public void setUp() {
+        Random random = new Random(MapFixtures.SEED);
+        points = new ImmutablePoint[POINTS];
+        for(int i = 0; i < POINTS; i++) {
+            // small coordinates so that a good share of pairs are adjacent
+            points[i] = new ImmutablePoint(random.nextInt(8), random.nextInt(8));
+        }
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public int pointHashCode() {
+        int sum = 0;
+        for(ImmutablePoint point : points) {
+            sum += point.hashCode();
+        }
+        return sum;
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(POINTS - 1)
+    public int isAdjacentTo() {
+        int count = 0;
+        for(int i = 1; i < POINTS; i++) {
+            if(points[i].isAdjacentTo(points[i - 1])) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+}
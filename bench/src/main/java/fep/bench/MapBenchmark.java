@@ -0,0 +1,171 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.bench;
+
+import fep.model.ImmutablePoint;
+import fep.model.Map;
+import fep.model.Unit;
+import fep.model.UnitVisitor;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the unit mutators, accessors and spatial queries of {@link Map}
+ * across map sizes and unit counts.
+ * @author Kyle Buzsaki
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MapBenchmark {
+    
+    @Param({"32", "128", "512"})
+    public int size;
+    
+    @Param({"16", "256"})
+    public int unitCount;
+    
+    private Map map;
+    private Unit[] units;
+    private Unit spareUnit;
+    /**
+     * Two empty tiles that a unit shuttles between, and a third that the
+     * spare unit is added to and removed from.
+     */
+    private ImmutablePoint firstFreeTile;
+    private ImmutablePoint secondFreeTile;
+    private ImmutablePoint spareTile;
+    private int next;
+    /**
+     * Counts the units a spatial query visits.
+     */
+    private final CountingVisitor counter = new CountingVisitor();
+    
+    private static final class CountingVisitor implements UnitVisitor {
+        int count;
+        
+        @Override
+        public boolean visit(Unit unit, int tileIndex) {
+            count++;
+            return true;
+        }
+    }
+    
+    @Setup
+    public void setUp() {
+        Random random = new Random(MapFixtures.SEED);
+        map = MapFixtures.createTerrainMap(size, random);
+        List<Unit> unitList = MapFixtures.addUnits(map, unitCount, random);
+        units = unitList.toArray(new Unit[unitCount]);
+        
+        firstFreeTile = randomFreeTile(random);
+        // occupy each free tile while picking the next so they're distinct
+        map.moveUnitTo(firstFreeTile, units[unitCount - 1]);
+        secondFreeTile = randomFreeTile(random);
+        spareUnit = new Unit();
+        map.addUnit(secondFreeTile, spareUnit);
+        spareTile = randomFreeTile(random);
+        map.removeUnit(spareUnit);
+        // the last unit shuttles between the two free tiles, starting at the first
+    }
+    
+    private ImmutablePoint randomFreeTile(Random random) {
+        ImmutablePoint tile;
+        do {
+            tile = MapFixtures.randomPoint(map, random);
+        } while(map.unitAt(tile));
+        return tile;
+    }
+    
+    @Benchmark
+    public Unit addAndRemoveUnit() {
+        map.addUnit(spareTile, spareUnit);
+        map.removeUnit(spareUnit);
+        return spareUnit;
+    }
+    
+    @Benchmark
+    public Unit moveUnitTo() {
+        Unit unit = units[unitCount - 1];
+        if(map.getUnitAt(firstFreeTile) == unit) {
+            map.moveUnitTo(secondFreeTile, unit);
+        }
+        else {
+            map.moveUnitTo(firstFreeTile, unit);
+        }
+        return unit;
+    }
+    
+    /**
+     * Tries a move and takes it back through the undo journal, as an AI 
+     * search does at every node, with events suppressed.
+     */
+    @Benchmark
+    public long makeAndUnmakeMove() {
+        Unit unit = units[unitCount - 1];
+        map.setSuppressingEvents(true);
+        int checkpoint = map.checkpoint();
+        map.moveUnitTo(map.getUnitAt(firstFreeTile) == unit ? secondFreeTile : firstFreeTile, unit);
+        long hash = map.stateHash();
+        map.rollbackTo(checkpoint);
+        map.setSuppressingEvents(false);
+        return hash;
+    }
+    
+    @Benchmark
+    public ImmutablePoint getPositionOf() {
+        next = (next + 1) % unitCount;
+        return map.getPositionOf(units[next]);
+    }
+    
+    @Benchmark
+    public boolean containsUnit() {
+        next = (next + 1) % unitCount;
+        return map.containsUnit(units[next]);
+    }
+    
+    /**
+     * Counts the units within 6 tiles of a unit, as an AI looking for 
+     * nearby threats would, using the occupancy index.
+     */
+    @Benchmark
+    public int unitsInDiamond() {
+        next = (next + 1) % unitCount;
+        counter.count = 0;
+        map.visitUnitsInDiamond(map.getPositionOf(units[next]), 6, counter);
+        return counter.count;
+    }
+    
+    /**
+     * The same query as unitsInDiamond, answered by checking every unit.
+     */
+    @Benchmark
+    public int unitsInDiamondByScan() {
+        next = (next + 1) % unitCount;
+        ImmutablePoint center = map.getPositionOf(units[next]);
+        int count = 0;
+        for(Unit unit : map.getUnits()) {
+            if(map.getPositionOf(unit).distanceGrid(center) <= 6) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+}
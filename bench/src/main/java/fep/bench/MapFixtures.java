@@ -0,0 +1,94 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.bench;
+
+import fep.model.DefaultTerrain;
+import fep.model.Faction;
+import fep.model.ImmutablePoint;
+import fep.model.Map;
+import fep.model.Unit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds the maps shared by the benchmarks. Every fixture is generated from
+ * a fixed seed so that results are comparable between runs and releases.
+ * @author Kyle Buzsaki
+ */
+final class MapFixtures {
+    
+    static final long SEED = 42;
+    
+    private MapFixtures() {}
+    
+    /**
+     * Creates a square map with roughly a quarter of its tiles forest and a 
+     * twentieth peaks, scattered at random.
+     * @param size  the width and height of the map.
+     * @param random  the source of randomness.
+     * @return  the new map.
+     */
+    static Map createTerrainMap(int size, Random random) {
+        Map map = new Map(size, size);
+        for(int x = 0; x < size; x++) {
+            for(int y = 0; y < size; y++) {
+                int roll = random.nextInt(20);
+                if(roll < 5) {
+                    map.setTerrainAt(new ImmutablePoint(x, y), DefaultTerrain.FOREST);
+                }
+                else if(roll == 5) {
+                    map.setTerrainAt(new ImmutablePoint(x, y), DefaultTerrain.PEAK);
+                }
+            }
+        }
+        return map;
+    }
+    
+    /**
+     * Adds the given number of units to empty tiles of the map at random.
+     * @param map  the map to add units to. Must have at least unitCount
+     * empty tiles.
+     * @param unitCount  the number of units to add.
+     * @param random  the source of randomness.
+     * @return  the units added, in the order they were added.
+     */
+    static List<Unit> addUnits(Map map, int unitCount, Random random) {
+        return addUnits(map, unitCount, Faction.NEUTRAL, random);
+    }
+    
+    /**
+     * Adds the given number of units of a faction to empty tiles of the map
+     * at random.
+     * @param map  the map to add units to. Must have at least unitCount
+     * empty tiles.
+     * @param unitCount  the number of units to add.
+     * @param faction  the faction of the units.
+     * @param random  the source of randomness.
+     * @return  the units added, in the order they were added.
+     */
+    static List<Unit> addUnits(Map map, int unitCount, Faction faction, Random random) {
+        List<Unit> units = new ArrayList<>(unitCount);
+        while(units.size() < unitCount) {
+            ImmutablePoint position = randomPoint(map, random);
+            if(!map.unitAt(position)) {
+                Unit unit = new Unit(faction);
+                map.addUnit(position, unit);
+                units.add(unit);
+            }
+        }
+        return units;
+    }
+    
+    /**
+     * Returns a random point within the map.
+     * @param map  the map to pick a point on.
+     * @param random  the source of randomness.
+     * @return  a random point within the map.
+     */
+    static ImmutablePoint randomPoint(Map map, Random random) {
+        return new ImmutablePoint(random.nextInt(map.getWidth()), random.nextInt(map.getHeight()));
+    }
+    
+}
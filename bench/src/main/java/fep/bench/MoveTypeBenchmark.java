@@ -0,0 +1,103 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.bench;
+
+import fep.model.DefaultTerrainBehavior;
+import fep.model.MoveType;
+import fep.model.TerrainBehavior;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the per-lookup cost of {@link MoveType#getCostOf(TerrainBehavior)}
+ * and the per-path cost of {@link MoveType#getCostOf(List)}.
+ * The legacy benchmark replays the same lookups against a nested, boxed 
+ * HashMap table laid out the way MoveType stored its costs before they were
+ * compiled into a dense int table, for a before/after comparison.
+ * @author Kyle Buzsaki
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MoveTypeBenchmark {
+    
+    private static final int LOOKUPS = 1024;
+    
+    @Param({"FOOT", "KNIGHT_A", "FLYER"})
+    public MoveType moveType;
+    
+    /**
+     * A fixed, shuffled sequence of behaviors to look up.
+     */
+    private TerrainBehavior[] behaviors;
+    private List<TerrainBehavior> behaviorPath;
+    private java.util.Map<MoveType, java.util.Map<TerrainBehavior, Integer>> legacyTable;
+    
+    @Setup
+    public void setUp() {
+        List<TerrainBehavior> sequence = new ArrayList<>();
+        DefaultTerrainBehavior[] values = DefaultTerrainBehavior.values();
+        for(int i = 0; i < LOOKUPS; i++) {
+            sequence.add(values[i % values.length]);
+        }
+        Collections.shuffle(sequence, new Random(42));
+        behaviors = sequence.toArray(new TerrainBehavior[LOOKUPS]);
+        // a typical cursor path's worth of terrain
+        behaviorPath = new ArrayList<>(sequence.subList(0, 8));
+        
+        legacyTable = new HashMap<>();
+        for(MoveType type : MoveType.values()) {
+            java.util.Map<TerrainBehavior, Integer> costs = new HashMap<>();
+            for(DefaultTerrainBehavior behavior : values) {
+                costs.put(behavior, type.getCostOf(behavior));
+            }
+            legacyTable.put(type, costs);
+        }
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int denseLookup() {
+        int sum = 0;
+        for(TerrainBehavior behavior : behaviors) {
+            sum += moveType.getCostOf(behavior);
+        }
+        return sum;
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int legacyLookup() {
+        int sum = 0;
+        for(TerrainBehavior behavior : behaviors) {
+            sum += legacyTable.get(moveType).get(behavior);
+        }
+        return sum;
+    }
+    
+    @Benchmark
+    public int pathCost() {
+        return moveType.getCostOf(behaviorPath);
+    }
+    
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.bench;
+
+import fep.model.DefaultAllegiance;
+import fep.model.DefaultTerrain;
+import fep.model.ImmutablePoint;
+import fep.model.Map;
+import fep.model.MoveRange;
+import fep.model.MoveType;
+import fep.model.Path;
+import fep.model.Pathfinder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the movement queries: {@link MoveRange} reachability and 
+ * {@link Pathfinder} shortest paths, across map sizes and unit counts.
+ * @author Kyle Buzsaki
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MovementBenchmark {
+    
+    @Param({"32", "128", "512"})
+    public int size;
+    
+    @Param({"16", "256"})
+    public int unitCount;
+    
+    @Param({"5", "10"})
+    public int movement;
+    
+    private Map map;
+    private Pathfinder pathfinder;
+    private ImmutablePoint center;
+    private ImmutablePoint farCorner;
+    
+    @Setup
+    public void setUp() {
+        Random random = new Random(MapFixtures.SEED);
+        map = MapFixtures.createTerrainMap(size, random);
+        center = new ImmutablePoint(size / 2, size / 2);
+        farCorner = new ImmutablePoint(size - 1, size - 1);
+        // keep the endpoints clear so every query has a unit-free start
+        map.setTerrainAt(center, DefaultTerrain.PLAINS);
+        map.setTerrainAt(new ImmutablePoint(0, 0), DefaultTerrain.PLAINS);
+        map.setTerrainAt(farCorner, DefaultTerrain.PLAINS);
+        MapFixtures.addUnits(map, unitCount, random);
+        if(map.unitAt(center)) {
+            map.removeUnit(map.getUnitAt(center));
+        }
+        pathfinder = new Pathfinder(map);
+    }
+    
+    @Benchmark
+    public MoveRange moveRange() {
+        return MoveRange.calculate(map, center, MoveType.FOOT, movement, DefaultAllegiance.ALL_HOSTILE);
+    }
+    
+    /**
+     * Finds a path of about the given movement, as a unit routing within its
+     * range would.
+     */
+    @Benchmark
+    public Path shortPath() {
+        ImmutablePoint goal = new ImmutablePoint(center.getX() + movement / 2, center.getY() + movement / 2);
+        return pathfinder.findPath(center, goal, MoveType.FOOT);
+    }
+    
+    /**
+     * Finds a path across the whole map, as AI routing toward a distant 
+     * target would.
+     */
+    @Benchmark
+    public Path crossMapPath() {
+        return pathfinder.findPath(new ImmutablePoint(0, 0), farCorner, MoveType.FOOT);
+    }
+    
+}
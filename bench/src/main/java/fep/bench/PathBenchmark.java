@@ -0,0 +1,105 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.bench;
+
+import fep.model.Direction;
+import fep.model.ImmutablePoint;
+import fep.model.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link Path} operations as a cursor path grows. Paths snake back
+ * and forth across rows of 16 so that they never cross themselves.
+ * @author Kyle Buzsaki
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PathBenchmark {
+    
+    private static final int ROW_LENGTH = 16;
+    
+    @Param({"16", "64", "256"})
+    public int length;
+    
+    private ImmutablePoint[] points;
+    private Path path;
+    private ImmutablePoint nextPoint;
+    private ImmutablePoint missingPoint;
+    
+    @Setup
+    public void setUp() {
+        points = new ImmutablePoint[length + 1];
+        ImmutablePoint point = new ImmutablePoint(0, 0);
+        for(int i = 0; i < points.length; i++) {
+            points[i] = point;
+            int row = i / ROW_LENGTH;
+            if(i % ROW_LENGTH == ROW_LENGTH - 1) {
+                point = point.getTranslated(Direction.UP);
+            }
+            else {
+                point = point.getTranslated(row % 2 == 0 ? Direction.RIGHT : Direction.LEFT);
+            }
+        }
+        
+        path = Path.emptyPath();
+        for(int i = 0; i < length; i++) {
+            path = path.concat(points[i]);
+        }
+        nextPoint = points[length];
+        missingPoint = new ImmutablePoint(-1, -1);
+    }
+    
+    /**
+     * Draws an entire path of the given length one point at a time.
+     */
+    @Benchmark
+    public Path drawPath() {
+        Path drawn = Path.emptyPath();
+        for(int i = 0; i < length; i++) {
+            drawn = drawn.concat(points[i]);
+        }
+        return drawn;
+    }
+    
+    @Benchmark
+    public Path concatOne() {
+        return path.concat(nextPoint);
+    }
+    
+    @Benchmark
+    public Path concatTruncate() {
+        return path.concat(points[length / 2]);
+    }
+    
+    @Benchmark
+    public boolean containsHit() {
+        return path.contains(points[length / 2]);
+    }
+    
+    @Benchmark
+    public boolean containsMiss() {
+        return path.contains(missingPoint);
+    }
+    
+    @Benchmark
+    public int pathHashCode() {
+        return path.hashCode();
+    }
+    
+}
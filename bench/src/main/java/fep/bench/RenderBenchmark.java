@@ -0,0 +1,137 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.bench;
+
+import fep.model.ImmutablePoint;
+import fep.model.Map;
+import fep.model.Unit;
+import fep.view.Camera;
+import fep.view.MapRenderer;
+import fep.view.TileAtlas;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of a frame from {@link MapRenderer}, drawn headlessly
+ * into a {@link BufferedImage} standing in for the screen. Compares a frame
+ * that redraws the whole view against frames where one unit and the cursor
+ * move, frames where nothing changes, and frames of a {@link Camera}
+ * panning across the map. A frame must stay well under 16.7 ms to hold 60
+ * fps.
+ * @author Kyle Buzsaki
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class RenderBenchmark {
+
+    // a 480x320 window of 16 pixel tiles, twice the GBA screen
+    private static final int TILE_SIZE = 16;
+    private static final int VIEW_WIDTH = 30;
+    private static final int VIEW_HEIGHT = 20;
+
+    @Param({"64", "512"})
+    public int size;
+
+    private Map map;
+    private MapRenderer renderer;
+    private BufferedImage screen;
+    private Graphics2D screenGraphics;
+    private Unit walker;
+    private int step;
+    private Camera camera;
+    private int panStep;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(MapFixtures.SEED);
+        map = MapFixtures.createTerrainMap(size, random);
+        MapFixtures.addUnits(map, size * size / 64, random);
+        renderer = MapRenderer.attach(map, new TileAtlas(TILE_SIZE), VIEW_WIDTH, VIEW_HEIGHT);
+        renderer.setViewOrigin(size / 2 - VIEW_WIDTH / 2, size / 2 - VIEW_HEIGHT / 2);
+        screen = new BufferedImage(VIEW_WIDTH * TILE_SIZE, VIEW_HEIGHT * TILE_SIZE,
+                BufferedImage.TYPE_INT_RGB);
+        screenGraphics = screen.createGraphics();
+
+        // a unit pacing back and forth in the middle of the view
+        ImmutablePoint start = new ImmutablePoint(size / 2, size / 2);
+        if(map.unitAt(start)) {
+            map.removeUnit(map.getUnitAt(start));
+        }
+        if(map.unitAt(new ImmutablePoint(size / 2 + 1, size / 2))) {
+            map.removeUnit(map.getUnitAt(new ImmutablePoint(size / 2 + 1, size / 2)));
+        }
+        walker = new Unit();
+        map.addUnit(start, walker);
+        renderer.update();
+
+        camera = Camera.attach(map, new TileAtlas(TILE_SIZE), VIEW_WIDTH, VIEW_HEIGHT);
+        camera.paint(screenGraphics, 0, 0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        screenGraphics.dispose();
+        renderer.detach();
+        camera.detach();
+    }
+
+    @Benchmark
+    public BufferedImage fullRedraw() {
+        renderer.markAllDirty();
+        renderer.update();
+        renderer.paint(screenGraphics, 0, 0);
+        return screen;
+    }
+
+    @Benchmark
+    public BufferedImage unitAndCursorMove() {
+        step++;
+        ImmutablePoint next = new ImmutablePoint(size / 2 + (step & 1), size / 2);
+        map.moveUnitTo(next, walker);
+        renderer.setCursor(next);
+        renderer.update();
+        renderer.paint(screenGraphics, 0, 0);
+        return screen;
+    }
+
+    /**
+     * Pans the camera back and forth across the whole map at its default
+     * scroll speed, one tick per frame.
+     */
+    @Benchmark
+    public BufferedImage cameraPan() {
+        panStep++;
+        int lastColumn = map.getWidth() - 1;
+        int column = panStep / 16 % (2 * lastColumn);
+        camera.follow(map.getPoint(column <= lastColumn ? column : 2 * lastColumn - column, size / 2));
+        camera.tick();
+        camera.paint(screenGraphics, 0, 0);
+        return screen;
+    }
+
+    @Benchmark
+    public boolean idleFrame() {
+        // nothing changed, so the renderer draws nothing and a real frame is skipped
+        return renderer.update();
+    }
+
+}
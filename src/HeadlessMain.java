@@ -0,0 +1,58 @@
+import fep.controller.Command;
+import fep.controller.CommandLoop;
+import fep.controller.Cursor;
+import fep.model.Map;
+import java.util.List;
+
+/**
+ * Runs the game without a window, feeding a scripted command sequence to a
+ * fresh map for each match. Nothing on this path loads AWT or Swing, so it
+ * can be run on headless machines.
+ * <p>
+ * Usage: {@code HeadlessMain [--matches N] [--width W] [--height H]
+ * [--verbose] [commands...]}, where commands are command names such as
+ * {@code A UP UP LEFT A}. Command throughput is reported at exit.
+ */
+public class HeadlessMain {
+    static final String DEFAULT_SCRIPT = "A UP UP LEFT LEFT DOWN LEFT A";
+    // the size of the GBA screen, in tiles
+    static final int MAP_WIDTH = 15;
+    static final int MAP_HEIGHT = 10;
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        int matches = 1;
+        int width = MAP_WIDTH;
+        int height = MAP_HEIGHT;
+        boolean verbose = false;
+        StringBuilder script = new StringBuilder();
+        for(int i = 0; i < args.length; i++) {
+            switch(args[i]) {
+                case "--matches": matches = Integer.parseInt(args[++i]); break;
+                case "--width":   width = Integer.parseInt(args[++i]); break;
+                case "--height":  height = Integer.parseInt(args[++i]); break;
+                case "--verbose": verbose = true; break;
+                default:          script.append(args[i]).append(' ');
+            }
+        }
+        List<Command> commands = CommandLoop.parseCommands(
+                script.length() == 0 ? DEFAULT_SCRIPT : script.toString());
+
+        long commandCount = 0;
+        long elapsedNanos = 0;
+        for(int match = 0; match < matches; match++) {
+            Cursor cursor = new Cursor(new Map(width, height), verbose ? System.out : null);
+            CommandLoop loop = new CommandLoop(cursor);
+            loop.run(commands);
+            commandCount += loop.getCommandCount();
+            elapsedNanos += loop.getElapsedNanos();
+        }
+
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("Matches: %d, Commands: %d, Time: %.3f s, Commands/s: %.0f%n",
+                matches, commandCount, seconds, seconds == 0 ? 0 : commandCount / seconds);
+    }
+
+}
@@ -2,8 +2,12 @@
 import fep.controller.Command;
 import static fep.controller.Command.*;
 import fep.controller.Cursor;
+import fep.controller.GameLoop;
 import fep.controller.KeyMapper;
+import fep.model.Map;
 import fep.view.GameWindow;
+import fep.view.Camera;
+import fep.view.TileAtlas;
 import java.awt.Point;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
@@ -11,32 +15,61 @@ import java.util.ArrayList;
 
 public class Main {
     static Command[] commands = { A, UP, UP, LEFT, LEFT, DOWN, LEFT, A};
+    // the size of the GBA screen, in tiles
+    static final int SCREEN_WIDTH = 15;
+    static final int SCREEN_HEIGHT = 10;
+    // maps may be larger than the screen; the camera follows the cursor
+    static final int MAP_WIDTH = 15;
+    static final int MAP_HEIGHT = 10;
+    // the size of a GBA tile, in pixels
+    static final int TILE_SIZE = 16;
+    // the GBA runs at 60 frames per second
+    static final int TICKS_PER_SECOND = 60;
+    // ticks a direction is held before it repeats, then ticks between repeats
+    static final int REPEAT_DELAY_TICKS = 12;
+    static final int REPEAT_INTERVAL_TICKS = 4;
 
     /**
      * @param args the command line arguments
      */
     public static void main(String[] args) {
-        final Cursor cursor = new Cursor();
+        final Map map = new Map(MAP_WIDTH, MAP_HEIGHT);
+        final Cursor cursor = new Cursor(map);
         // eventually loaded as part of settings
         final KeyMapper keyMapper = new KeyMapper();
+        final GameLoop gameLoop = new GameLoop(cursor, TICKS_PER_SECOND, 
+                REPEAT_DELAY_TICKS, REPEAT_INTERVAL_TICKS);
         
+        // the event dispatch thread only queues input; the game loop handles it
         KeyAdapter commandForwarder = new KeyAdapter() {
-            private static final int minDelay = 70;
-            long lastCommandTime = 0;
-            
             @Override
             public void keyPressed(KeyEvent e) {
-                if (System.currentTimeMillis() > lastCommandTime + minDelay)
-                {
-                    cursor.handleCommand(keyMapper.getCommand(e));
-                    lastCommandTime = System.currentTimeMillis();
-                }
+                gameLoop.press(keyMapper.getCommand(e));
+            }
+            
+            @Override
+            public void keyReleased(KeyEvent e) {
+                gameLoop.release(keyMapper.getCommand(e));
             }
         };
         
-        GameWindow window = new GameWindow();
+        final GameWindow window = new GameWindow(SCREEN_WIDTH * TILE_SIZE, SCREEN_HEIGHT * TILE_SIZE);
         window.addKeyListener(commandForwarder);
         window.start();
+        
+        // frames are drawn on the game loop thread, after each tick
+        final Camera camera = Camera.attach(map, new TileAtlas(TILE_SIZE), 
+                SCREEN_WIDTH, SCREEN_HEIGHT);
+        gameLoop.setRenderer(new Runnable() {
+            @Override
+            public void run() {
+                camera.getRenderer().setCursor(cursor.getPosition());
+                camera.follow(cursor.getPosition());
+                camera.tick();
+                camera.render(window.getCanvasStrategy());
+            }
+        });
+        gameLoop.start();
     }
 
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.ai;
+
+import fep.model.Map;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The actions an {@link EnemyPhasePlanner} chose for one phase, in the order
+ * they should be carried out, along with how long each stage of planning
+ * took. No two actions share a destination.
+ * <p>
+ * This class is immutable.
+ * @author Kyle Buzsaki
+ */
+public final class EnemyPhasePlan {
+
+    private final List<PlannedAction> actions;
+    /**
+     * The modification count of the map when it was snapshotted for planning.
+     */
+    private final long modCount;
+    private final long candidateCount;
+    private final int parallelism;
+    private final long preparationNanos;
+    private final long evaluationNanos;
+    private final long resolutionNanos;
+
+    EnemyPhasePlan(List<PlannedAction> actions, long modCount, long candidateCount,
+            int parallelism, long preparationNanos, long evaluationNanos, long resolutionNanos) {
+        this.actions = Collections.unmodifiableList(actions);
+        this.modCount = modCount;
+        this.candidateCount = candidateCount;
+        this.parallelism = parallelism;
+        this.preparationNanos = preparationNanos;
+        this.evaluationNanos = evaluationNanos;
+        this.resolutionNanos = resolutionNanos;
+    }
+
+    /**
+     * Moves every planned unit to its destination, in order, in a single
+     * batch. Combat is not yet modeled, so targets are left untouched.
+     * @param map  the map the phase was planned on, unchanged since. Must
+     * be non-null.
+     * @throws IllegalStateException if the map has been modified since the
+     * phase was planned.
+     */
+    public void apply(Map map) {
+        if(map == null) {
+            throw new IllegalArgumentException("Map must be non-null");
+        }
+        if(map.getModCount() != modCount) {
+            throw new IllegalStateException("Map has been modified since the phase was planned");
+        }
+        map.beginBatch();
+        try {
+            for(PlannedAction action : actions) {
+                if(!action.getDestination().equals(action.getOrigin())) {
+                    map.moveUnitTo(action.getDestination(), action.getUnit());
+                }
+            }
+        } finally {
+            map.endBatch();
+        }
+    }
+
+    // Accessors
+    /**
+     * Returns the chosen actions, one per unit, in the order they should be
+     * carried out.
+     * @return an unmodifiable list of the actions.
+     */
+    public List<PlannedAction> getActions() {
+        return actions;
+    }
+    /**
+     * Returns the number of (destination, target) pairs that were scored.
+     * @return the number of candidate actions evaluated.
+     */
+    public long getCandidateCount() {
+        return candidateCount;
+    }
+    /**
+     * Returns the parallelism of the pool the candidates were evaluated on.
+     * @return the number of worker threads available.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+    /**
+     * Returns the time spent gathering the units and preparing the map
+     * before evaluation.
+     * @return the preparation time in nanoseconds.
+     */
+    public long getPreparationNanos() {
+        return preparationNanos;
+    }
+    /**
+     * Returns the time spent evaluating every unit's candidates in parallel.
+     * @return the evaluation time in nanoseconds.
+     */
+    public long getEvaluationNanos() {
+        return evaluationNanos;
+    }
+    /**
+     * Returns the time spent resolving conflicts between the units' choices.
+     * @return the resolution time in nanoseconds.
+     */
+    public long getResolutionNanos() {
+        return resolutionNanos;
+    }
+    /**
+     * Returns the total time spent planning.
+     * @return the total planning time in nanoseconds.
+     */
+    public long getTotalNanos() {
+        return preparationNanos + evaluationNanos + resolutionNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "EnemyPhasePlan{actions: " + actions.size() + ", candidates: " + candidateCount
+                + ", parallelism: " + parallelism + ", prepare: " + preparationNanos / 1000
+                + " us, evaluate: " + evaluationNanos / 1000 + " us, resolve: "
+                + resolutionNanos / 1000 + " us}";
+    }
+
+}
@@ -0,0 +1,406 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.ai;
+
+import fep.model.CombatProfile;
+import fep.model.DefaultAllegiance;
+import fep.model.Faction;
+import fep.model.ImmutablePoint;
+import fep.model.Map;
+import fep.model.MapSnapshot;
+import fep.model.MapView;
+import fep.model.MoveCostStrategy;
+import fep.model.MoveRange;
+import fep.model.MovementGraph;
+import fep.model.Unit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Plans a whole phase for one faction, usually the enemy: where each of its
+ * units moves and whom it attacks.
+ * <p>
+ * Planning runs in three stages. First the faction's units are gathered,
+ * their movement and ranges are looked up in the {@link CombatProfile}, and
+ * the map is snapshotted along with a copy of each movement graph the units
+ * need. Then every unit's candidate actions
+ * (destination, target) are scored independently on a {@link ForkJoinPool},
+ * one task per unit. Finally the units pick their actions one at a time,
+ * best score first, each taking its best candidate whose destination no
+ * earlier unit claimed. Scoring only reads the snapshot and resolution is
+ * sequential in an order fixed by the scores and positions, so the plan is
+ * the same whatever the pool's parallelism.
+ * <p>
+ * Units do not yet have stats, so the scoring is simple: a unit attacks if
+ * it can, moving as little as possible to do so, and otherwise closes on the
+ * nearest hostile unit. Units move through their own side and block their
+ * enemies as {@link DefaultAllegiance#FACTION} decides.
+ * <p>
+ * The pool's threads never touch the map or the combat profile, only the
+ * snapshot, the graph copies and the looked up values, so a change to the
+ * map while they work cannot corrupt the plan and the profile need not be
+ * thread safe. Like the rest of the model, {@link #plan(Map, Faction)} should
+ * still be called from the thread that modifies the map, since it reads the
+ * map to take the snapshot.
+ * @author Kyle Buzsaki
+ */
+public final class EnemyPhasePlanner {
+
+    /**
+     * Added to the score of every attack, so that any attack beats any move.
+     */
+    private static final long ATTACK_SCORE = 1L << 40;
+
+    private final CombatProfile combatProfile;
+    private final ForkJoinPool pool;
+
+    /**
+     * Holds the pool shared by planners that are not given one, so that it
+     * is only created once a planner needs it.
+     */
+    private static final class SharedPool {
+        private static final ForkJoinPool INSTANCE = new ForkJoinPool();
+    }
+
+    /**
+     * The scored candidate actions of a single unit, best first.
+     */
+    private static final class Candidates {
+        private final int originIndex;
+        private final int[] destinations;
+        private final int[] targets;
+        private final long[] scores;
+
+        private Candidates(int originIndex, int[] destinations, int[] targets, long[] scores) {
+            this.originIndex = originIndex;
+            this.destinations = destinations;
+            this.targets = targets;
+            this.scores = scores;
+        }
+    }
+
+    /**
+     * Everything the pool's threads read while scoring, prepared on the
+     * planning thread. The arrays are indexed like units. Candidates are
+     * written by the workers, each to its own unit's slot.
+     */
+    private static final class Evaluation {
+        private final MapSnapshot view;
+        private final Unit[] units;
+        private final MovementGraph[] movementGraphs;
+        private final int[] movements;
+        private final int[] minRanges;
+        private final int[] maxRanges;
+        private final int[] hostileTiles;
+        private final Candidates[] candidates;
+
+        private Evaluation(MapSnapshot view, Unit[] units, int[] hostileTiles) {
+            this.view = view;
+            this.units = units;
+            this.movementGraphs = new MovementGraph[units.length];
+            this.movements = new int[units.length];
+            this.minRanges = new int[units.length];
+            this.maxRanges = new int[units.length];
+            this.hostileTiles = hostileTiles;
+            this.candidates = new Candidates[units.length];
+        }
+    }
+
+    /**
+     * Scores the candidates of a range of units, splitting it in half until
+     * each task has a single unit.
+     */
+    private static final class EvaluateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Evaluation evaluation;
+        private final int from;
+        private final int to;
+
+        private EvaluateTask(Evaluation evaluation, int from, int to) {
+            this.evaluation = evaluation;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from == 1) {
+                evaluation.candidates[from] = evaluate(evaluation, from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new EvaluateTask(evaluation, from, middle),
+                    new EvaluateTask(evaluation, middle, to));
+        }
+    }
+
+    /**
+     * Constructs a planner that evaluates on a pool shared by every planner
+     * constructed this way, with one thread per available processor. The
+     * shared pool's threads are daemons, so it never needs to be shut down.
+     * @param combatProfile  supplies each unit's movement and weapon range.
+     * Must be non-null.
+     */
+    public EnemyPhasePlanner(CombatProfile combatProfile) {
+        this(combatProfile, SharedPool.INSTANCE);
+    }
+
+    /**
+     * Constructs a planner that evaluates on the given pool.
+     * @param combatProfile  supplies each unit's movement and weapon range.
+     * Must be non-null.
+     * @param pool  the pool to evaluate candidates on. Must be non-null.
+     * The planner never shuts it down.
+     */
+    public EnemyPhasePlanner(CombatProfile combatProfile, ForkJoinPool pool) {
+        if(combatProfile == null || pool == null) {
+            throw new IllegalArgumentException("Combat profile and pool must be non-null");
+        }
+        this.combatProfile = combatProfile;
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the pool this planner evaluates candidates on.
+     * @return this planner's pool.
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Plans a phase for every unit of the given faction on the given map.
+     * The map is not changed; see {@link EnemyPhasePlan#apply(Map)}.
+     * @param map  the map to plan on. Must be non-null.
+     * @param faction  the faction whose units act. Must be non-null.
+     * @return the plan, with one action for each of the faction's units.
+     */
+    public EnemyPhasePlan plan(Map map, Faction faction) {
+        if(map == null || faction == null) {
+            throw new IllegalArgumentException("Map and faction must be non-null");
+        }
+        long startTime = System.nanoTime();
+
+        // order by position, so the plan depends only on the map's state
+        Unit[] units = sortByTile(map, map.getUnits(faction));
+        List<Unit> hostiles = new ArrayList<>();
+        for(Faction other : Faction.values()) {
+            if(faction.isHostileTo(other)) {
+                hostiles.addAll(map.getUnits(other));
+            }
+        }
+        Unit[] hostileUnits = sortByTile(map, hostiles);
+        int[] hostileTiles = new int[hostileUnits.length];
+        for(int i = 0; i < hostileUnits.length; i++) {
+            hostileTiles[i] = map.getIndexOf(hostileUnits[i]);
+        }
+        // the workers read only these, never the live map, its graphs or the profile
+        MapSnapshot view = map.snapshot();
+        Evaluation evaluation = new Evaluation(view, units, hostileTiles);
+        java.util.Map<MoveCostStrategy, MovementGraph> graphs = new HashMap<>();
+        for(int i = 0; i < units.length; i++) {
+            Unit unit = units[i];
+            MoveCostStrategy moveCostStrategy = combatProfile.getMoveCostStrategy(unit);
+            MovementGraph movementGraph = graphs.get(moveCostStrategy);
+            if(movementGraph == null) {
+                movementGraph = map.getMovementGraph(moveCostStrategy).copy();
+                graphs.put(moveCostStrategy, movementGraph);
+            }
+            evaluation.movementGraphs[i] = movementGraph;
+            evaluation.movements[i] = combatProfile.getMovement(unit);
+            evaluation.minRanges[i] = combatProfile.getMinRange(unit);
+            evaluation.maxRanges[i] = combatProfile.getMaxRange(unit);
+        }
+        long preparedTime = System.nanoTime();
+
+        Candidates[] candidates = evaluation.candidates;
+        if(units.length > 0) {
+            pool.invoke(new EvaluateTask(evaluation, 0, units.length));
+        }
+        long evaluatedTime = System.nanoTime();
+
+        List<PlannedAction> actions = resolve(view, units, candidates);
+        long candidateCount = 0;
+        for(Candidates unitCandidates : candidates) {
+            candidateCount += unitCandidates.destinations.length;
+        }
+        long resolvedTime = System.nanoTime();
+
+        return new EnemyPhasePlan(actions, view.getModCount(), candidateCount, pool.getParallelism(),
+                preparedTime - startTime, evaluatedTime - preparedTime,
+                resolvedTime - evaluatedTime);
+    }
+
+    // Private Implementation Methods
+    /**
+     * Scores every tile the given unit can end its move on. Runs on the
+     * pool, so it must only read the evaluation.
+     */
+    private static Candidates evaluate(Evaluation evaluation, int unitNumber) {
+        MapSnapshot view = evaluation.view;
+        Unit unit = evaluation.units[unitNumber];
+        int[] hostileTiles = evaluation.hostileTiles;
+        int width = view.getWidth();
+        ImmutablePoint origin = view.getPositionOf(unit);
+        int originIndex = view.indexOf(origin);
+        int minRange = evaluation.minRanges[unitNumber];
+        int maxRange = evaluation.maxRanges[unitNumber];
+        MoveRange moveRange = MoveRange.calculate(view, evaluation.movementGraphs[unitNumber],
+                origin, evaluation.movements[unitNumber], DefaultAllegiance.FACTION);
+
+        int nearest = -1;
+        int nearestDistance = Integer.MAX_VALUE;
+        for(int hostileTile : hostileTiles) {
+            int distance = distance(originIndex, hostileTile, width);
+            if(distance < nearestDistance) {
+                nearest = hostileTile;
+                nearestDistance = distance;
+            }
+        }
+
+        int[] reachable = moveRange.getReachableTiles();
+        int count = 0;
+        int[] destinations = new int[reachable.length];
+        int[] targets = new int[reachable.length];
+        long[] scores = new long[reachable.length];
+        for(int tile : reachable) {
+            if(!moveRange.canEndAt(tile)) {
+                continue;
+            }
+            int cost = moveRange.getCostTo(tile);
+            int target = findTarget(view, unit.getFaction(), tile, minRange, maxRange);
+
+            destinations[count] = tile;
+            targets[count] = target;
+            if(target != -1) {
+                scores[count] = ATTACK_SCORE - cost;
+            }
+            else if(nearest != -1) {
+                scores[count] = -((long) distance(tile, nearest, width) << 20) - cost;
+            }
+            else {
+                scores[count] = -cost;
+            }
+            count++;
+        }
+        return sortCandidates(originIndex, destinations, targets, scores, count);
+    }
+
+    /**
+     * Gives each unit, best first, its best candidate whose destination is
+     * still free.
+     */
+    private List<PlannedAction> resolve(MapView view, Unit[] units, final Candidates[] candidates) {
+        Integer[] order = new Integer[units.length];
+        for(int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer first, Integer second) {
+                Candidates a = candidates[first];
+                Candidates b = candidates[second];
+                int byScore = Long.compare(b.scores[0], a.scores[0]);
+                return byScore != 0 ? byScore : Integer.compare(a.originIndex, b.originIndex);
+            }
+        });
+
+        BitSet claimed = new BitSet(view.getTileCount());
+        List<PlannedAction> actions = new ArrayList<>(units.length);
+        for(int unitNumber : order) {
+            Candidates unitCandidates = candidates[unitNumber];
+            // the origin is always a candidate no other unit can claim
+            for(int i = 0; i < unitCandidates.destinations.length; i++) {
+                int destination = unitCandidates.destinations[i];
+                if(!claimed.get(destination)) {
+                    claimed.set(destination);
+                    int target = unitCandidates.targets[i];
+                    actions.add(new PlannedAction(units[unitNumber],
+                            view.getPoint(unitCandidates.originIndex), view.getPoint(destination),
+                            target != -1 ? view.getUnitAt(target) : null,
+                            unitCandidates.scores[i]));
+                    break;
+                }
+            }
+        }
+        return actions;
+    }
+
+    /**
+     * Returns the tile of the first unit hostile to the faction within range
+     * of the given tile, in row-major order, or -1 if there is none.
+     */
+    private static int findTarget(MapView view, Faction faction, int tile,
+            int minRange, int maxRange) {
+        int width = view.getWidth();
+        int height = view.getHeight();
+        int x = tile % width;
+        int y = tile / width;
+        // clamp so that y +/- range cannot overflow
+        int range = Math.min(maxRange, width + height);
+        for(int targetY = Math.max(0, y - range); targetY <= Math.min(height - 1, y + range); targetY++) {
+            int span = range - Math.abs(targetY - y);
+            for(int targetX = Math.max(0, x - span); targetX <= Math.min(width - 1, x + span); targetX++) {
+                if(Math.abs(targetX - x) + Math.abs(targetY - y) < minRange) {
+                    continue;
+                }
+                Unit occupant = view.getUnitAt(targetY * width + targetX);
+                if(occupant != null && faction.isHostileTo(occupant.getFaction())) {
+                    return targetY * width + targetX;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static Candidates sortCandidates(int originIndex, final int[] destinations,
+            int[] targets, final long[] scores, int count) {
+        Integer[] order = new Integer[count];
+        for(int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer first, Integer second) {
+                int byScore = Long.compare(scores[second], scores[first]);
+                return byScore != 0 ? byScore
+                        : Integer.compare(destinations[first], destinations[second]);
+            }
+        });
+        int[] sortedDestinations = new int[count];
+        int[] sortedTargets = new int[count];
+        long[] sortedScores = new long[count];
+        for(int i = 0; i < count; i++) {
+            sortedDestinations[i] = destinations[order[i]];
+            sortedTargets[i] = targets[order[i]];
+            sortedScores[i] = scores[order[i]];
+        }
+        return new Candidates(originIndex, sortedDestinations, sortedTargets, sortedScores);
+    }
+
+    private static Unit[] sortByTile(final Map map, Collection<Unit> units) {
+        Unit[] sorted = units.toArray(new Unit[units.size()]);
+        Arrays.sort(sorted, new Comparator<Unit>() {
+            @Override
+            public int compare(Unit first, Unit second) {
+                return Integer.compare(map.getIndexOf(first), map.getIndexOf(second));
+            }
+        });
+        return sorted;
+    }
+
+    private static int distance(int firstTile, int secondTile, int width) {
+        return Math.abs(firstTile % width - secondTile % width)
+                + Math.abs(firstTile / width - secondTile / width);
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.ai;
+
+import fep.model.ImmutablePoint;
+import fep.model.Unit;
+
+/**
+ * A single unit's part of an enemy phase: where it moves, and whom it
+ * attacks from there, if anyone.
+ * <p>
+ * This class is immutable.
+ * @author Kyle Buzsaki
+ */
+public final class PlannedAction {
+
+    private final Unit unit;
+    private final ImmutablePoint origin;
+    private final ImmutablePoint destination;
+    private final Unit target;
+    private final long score;
+
+    PlannedAction(Unit unit, ImmutablePoint origin, ImmutablePoint destination,
+            Unit target, long score) {
+        this.unit = unit;
+        this.origin = origin;
+        this.destination = destination;
+        this.target = target;
+        this.score = score;
+    }
+
+    /**
+     * Returns the unit that acts.
+     * @return the acting unit.
+     */
+    public Unit getUnit() {
+        return unit;
+    }
+    /**
+     * Returns the position the unit starts from.
+     * @return the unit's position when the phase was planned.
+     */
+    public ImmutablePoint getOrigin() {
+        return origin;
+    }
+    /**
+     * Returns the position the unit ends its move on. This is its origin if
+     * it stays put.
+     * @return the unit's destination.
+     */
+    public ImmutablePoint getDestination() {
+        return destination;
+    }
+    /**
+     * Returns the unit attacked from the destination, or null if the unit
+     * only moves.
+     * @return the target. May be null.
+     */
+    public Unit getTarget() {
+        return target;
+    }
+    /**
+     * Returns true if the unit attacks after moving.
+     * @return whether this action has a target.
+     */
+    public boolean isAttack() {
+        return target != null;
+    }
+    /**
+     * Returns how highly the planner rated this action. Only comparable
+     * with the scores of other actions from the same planner.
+     * @return the action's score.
+     */
+    public long getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return "PlannedAction{" + origin + " -> " + destination
+                + (target != null ? ", attacks " + target : "") + "}";
+    }
+
+}
@@ -32,6 +32,25 @@ public enum Command {
         return name;
     }
     
+    /**
+     * Returns the command with the given name, ignoring case. Accepts both 
+     * the display name ("Start") and the constant name ("START").
+     * @param name  the name of the command. Must be non-null.
+     * @return the command with the given name.
+     * @throws IllegalArgumentException if no command has the given name.
+     */
+    public static Command fromName(String name) {
+        if(name == null) {
+            throw new IllegalArgumentException("Command name must be non-null");
+        }
+        for(Command command : values()) {
+            if(command.name.equalsIgnoreCase(name)) {
+                return command;
+            }
+        }
+        throw new IllegalArgumentException("Unknown command: " + name);
+    }
+    
     public Direction toDirection() {
         switch(this) {
             case UP: return Direction.UP;
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.controller;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Drives a {@link Cursor} from a stream of commands rather than from the
+ * keyboard. Nothing here touches AWT or Swing, so simulations can be run on
+ * machines without a display, as fast as the model can process them.
+ * <p>
+ * The loop keeps a running count of the commands it has handled and the
+ * time spent handling them, across every call to run.
+ * @author Kyle Buzsaki
+ */
+public class CommandLoop {
+
+    private final Cursor cursor;
+    private long commandCount;
+    private long elapsedNanos;
+
+    /**
+     * Constructs a loop that feeds commands to the given cursor.
+     * @param cursor  the cursor to drive. Must be non-null.
+     */
+    public CommandLoop(Cursor cursor) {
+        if(cursor == null) {
+            throw new IllegalArgumentException("Cursor must be non-null");
+        }
+        this.cursor = cursor;
+    }
+
+    /**
+     * Returns the cursor this loop drives.
+     * @return this loop's cursor.
+     */
+    public Cursor getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Hands every remaining command of the given iterator to the cursor, in
+     * order.
+     * @param commands  the commands to handle. Must be non-null and contain
+     * no null elements.
+     * @return the number of commands handled by this call.
+     */
+    public long run(Iterator<Command> commands) {
+        if(commands == null) {
+            throw new IllegalArgumentException("Commands must be non-null");
+        }
+        long handled = 0;
+        long start = System.nanoTime();
+        try {
+            while(commands.hasNext()) {
+                Command command = commands.next();
+                if(command == null) {
+                    throw new IllegalArgumentException("Commands must not contain null");
+                }
+                cursor.handleCommand(command);
+                handled++;
+            }
+        } finally {
+            elapsedNanos += System.nanoTime() - start;
+            commandCount += handled;
+        }
+        return handled;
+    }
+
+    /**
+     * Hands every command of the given sequence to the cursor, in order.
+     * @param commands  the commands to handle. Must be non-null and contain
+     * no null elements.
+     * @return the number of commands handled by this call.
+     * @see #run(Iterator)
+     */
+    public long run(Iterable<Command> commands) {
+        if(commands == null) {
+            throw new IllegalArgumentException("Commands must be non-null");
+        }
+        return run(commands.iterator());
+    }
+
+    /**
+     * Returns the total number of commands this loop has handled.
+     * @return the number of commands handled.
+     */
+    public long getCommandCount() {
+        return commandCount;
+    }
+
+    /**
+     * Returns the total time this loop has spent handling commands.
+     * @return the time spent handling commands, in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Returns the average number of commands handled per second, or 0 if no
+     * time has been spent handling commands.
+     * @return the command throughput of this loop.
+     */
+    public double getCommandsPerSecond() {
+        return elapsedNanos == 0 ? 0 : commandCount * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Parses a whitespace or comma separated list of command names, such as
+     * "A UP UP LEFT A".
+     * @param script  the command names. Must be non-null.
+     * @return the commands, in order.
+     * @throws IllegalArgumentException if any name is not a command.
+     * @see Command#fromName(String)
+     */
+    public static List<Command> parseCommands(String script) {
+        if(script == null) {
+            throw new IllegalArgumentException("Script must be non-null");
+        }
+        List<Command> commands = new ArrayList<>();
+        for(String name : script.trim().split("[\\s,]+")) {
+            if(!name.isEmpty()) {
+                commands.add(Command.fromName(name));
+            }
+        }
+        return commands;
+    }
+
+}
@@ -3,13 +3,16 @@
  */
 package fep.controller;
 
-import fep.model.DefaultTerrain;
+import fep.model.DefaultAllegiance;
 import fep.model.Direction;
 import fep.model.ImmutablePoint;
+import fep.model.Map;
 import fep.model.MoveCostStrategy;
 import fep.model.MoveType;
 import fep.model.Path;
+import fep.model.Pathfinder;
 import fep.model.TerrainBehavior;
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -28,17 +31,87 @@ public class Cursor {
     
     private static final int MAX_COST = 7;
     
+    private final Map map;
+    private final Pathfinder pathfinder;
+    /**
+     * Where the cursor reports its position and paths, or null if it should
+     * stay silent.
+     */
+    private final PrintStream out;
     private ImmutablePoint position;
     private Path currentPath;
+    /**
+     * The movement cost of each prefix of the current path: entry i holds 
+     * the cost of moving from the start of the path to its point i. Kept in
+     * step with currentPath so that each edit only costs the point it adds.
+     */
+    private int[] pathCosts;
     private CursorState state;
     private MoveCostStrategy moveCostStrategy = MoveType.FOOT;
     
-    public Cursor() {
-        position = new ImmutablePoint(0, 0);
+    /**
+     * Constructs a cursor that moves over the given map, starting at its
+     * top left corner, and reports to standard out.
+     * @param map  the map the cursor moves over. Must be non-null.
+     */
+    public Cursor(Map map) {
+        this(map, System.out);
+    }
+    
+    /**
+     * Constructs a cursor that moves over the given map, starting at its
+     * top left corner, and reports to the given stream.
+     * @param map  the map the cursor moves over. Must be non-null.
+     * @param out  where to report the cursor's position and paths. May be
+     * null, in which case nothing is reported.
+     */
+    public Cursor(Map map, PrintStream out) {
+        if(map == null) {
+            throw new IllegalArgumentException("Map must be non-null");
+        }
+        this.map = map;
+        this.out = out;
+        this.pathfinder = new Pathfinder(map);
+        position = map.getPoint(0, 0);
         currentPath = Path.emptyPath();
+        pathCosts = new int[MAX_COST + 1];
         state = CursorState.MOVE;
     }
     
+    /**
+     * Returns the map this cursor moves over.
+     * @return this cursor's map.
+     */
+    public Map getMap() {
+        return map;
+    }
+    
+    /**
+     * Returns the cursor's current position.
+     * @return the position of the cursor.
+     */
+    public ImmutablePoint getPosition() {
+        return position;
+    }
+    
+    /**
+     * Returns the path currently being drawn, or an empty path if no path is
+     * being drawn.
+     * @return the current path.
+     */
+    public Path getCurrentPath() {
+        return currentPath;
+    }
+    
+    /**
+     * Returns the movement cost of the path currently being drawn, or 0 if
+     * no path is being drawn.
+     * @return the cost of the current path.
+     */
+    public int getCurrentPathCost() {
+        return currentPath.isEmpty() ? 0 : pathCosts[currentPath.size() - 1];
+    }
+    
     public void handleCommand(Command command) {
         switch(command) {
             case A:
@@ -46,13 +119,16 @@ public class Cursor {
                     case MOVE:
                         state = CursorState.SELECT;
                         currentPath = Path.createPath(Arrays.asList(position));
+                        pathCosts[0] = 0;
                         break;
                     case SELECT:
                         state = CursorState.MOVE;
-                        for(ImmutablePoint point : currentPath) {
-                            System.out.print(point + ", ");
+                        if(out != null) {
+                            for(ImmutablePoint point : currentPath) {
+                                out.print(point + ", ");
+                            }
+                            out.println();
                         }
-                        System.out.println();
                         currentPath = Path.emptyPath();
                         break;
                 }
@@ -64,34 +140,123 @@ public class Cursor {
                 switch(state) {
                     case MOVE:
                         move(command.toDirection());
-                        System.out.println("Position: " + position);
+                        if(out != null) {
+                            report("Position: " + position);
+                        }
                         break;
                     case SELECT:
-                        move(command.toDirection());
-                        if(currentPath.getEnd().isAdjacentTo(position)) {
-                            Path tempPath = currentPath.concat(position);
-                            if(moveCostStrategy.getCostOf(getTerrainPath(tempPath)) <= MAX_COST) {
-                                currentPath = tempPath;
-                                System.out.println("Position: " + position + " Path: " + currentPath );
-                            }
-                            else {
-                                System.out.println("Path is not pathable. (Too long or obstructed)");
-                            }
+                        if(!move(command.toDirection())) {
+                            break;
+                        }
+                        if(!extendPath() && !reroutePath()) {
+                            report("Path is not pathable. (Too long or obstructed)");
+                        }
+                        else if(out != null) {
+                            // only build the report if someone will read it
+                            report("Position: " + position + " Path: " + currentPath 
+                                    + " Cost: " + getCurrentPathCost());
                         }
                 }
         }
     }
     
-    private void move(Direction direction) {
-        position = position.getTranslated(direction);
+    /**
+     * Moves the cursor one tile in the given direction, unless that would 
+     * take it off the map.
+     * @return true if the cursor moved.
+     */
+    private boolean move(Direction direction) {
+        int x = position.getX();
+        int y = position.getY();
+        switch(direction) {
+            case UP:    y++; break;
+            case DOWN:  y--; break;
+            case LEFT:  x--; break;
+            case RIGHT: x++; break;
+        }
+        // the cursor may not leave the map
+        if(x < 0 || x >= map.getWidth() || y < 0 || y >= map.getHeight()) {
+            return false;
+        }
+        position = map.getPoint(x, y);
+        return true;
+    }
+    
+    /**
+     * Extends or truncates the current path to the cursor's position, if the
+     * position is adjacent to the end of the path and the result is within 
+     * MAX_COST. Only the cost of the newly entered tile is looked up.
+     * @return true if the path was changed.
+     */
+    private boolean extendPath() {
+        if(!currentPath.getEnd().isAdjacentTo(position)) {
+            return false;
+        }
+        if(currentPath.contains(position)) {
+            // backtracking: the prefix's cost is already known
+            currentPath = currentPath.concat(position);
+            return true;
+        }
+        int currentCost = getCurrentPathCost();
+        int stepCost = getStepCost(position);
+        // compare against the remaining budget so IMPASSABLE can't overflow
+        if(stepCost > MAX_COST - currentCost) {
+            return false;
+        }
+        currentPath = currentPath.concat(position);
+        setPathCost(currentPath.size() - 1, currentCost + stepCost);
+        return true;
+    }
+    
+    /**
+     * Replaces the current path with the cheapest path from its start to the
+     * cursor's position, like FE does when the drawn path gets too long.
+     * @return true if there is such a path within MAX_COST.
+     */
+    private boolean reroutePath() {
+        Path reroutedPath = pathfinder.findPath(currentPath.get(0), position, 
+                moveCostStrategy, MAX_COST, DefaultAllegiance.ALL_ALLIED);
+        if(reroutedPath == null) {
+            return false;
+        }
+        currentPath = reroutedPath;
+        for(int i = 1; i < currentPath.size(); i++) {
+            setPathCost(i, pathCosts[i - 1] + getStepCost(currentPath.get(i)));
+        }
+        return true;
+    }
+    
+    private void report(String message) {
+        if(out != null) {
+            out.println(message);
+        }
+    }
+    
+    private int getStepCost(ImmutablePoint point) {
+        return moveCostStrategy.getCostOf(map.getTerrainAt(point).getTerrainBehavior());
+    }
+    
+    private void setPathCost(int index, int cost) {
+        if(index >= pathCosts.length) {
+            pathCosts = Arrays.copyOf(pathCosts, Math.max(index + 1, pathCosts.length * 2));
+        }
+        pathCosts[index] = cost;
     }
     
-    public static List<TerrainBehavior> getTerrainPath(Path path) {
-        List<TerrainBehavior> terrainPath = new ArrayList<>();
+    /**
+     * Returns the behaviors of the terrain along the given path on the given 
+     * map, in order. The result can be passed to 
+     * {@link MoveCostStrategy#getCostOf(java.util.List)}.
+     * @param map  the map the path is on. Must be non-null.
+     * @param path  the path. Must be non-null and within the map's dimensions.
+     * @return the behaviors of the terrain along the path.
+     */
+    public static List<TerrainBehavior> getTerrainPath(Map map, Path path) {
+        List<TerrainBehavior> terrainPath = new ArrayList<>(path.size());
         
         for(ImmutablePoint point : path) {
             // get the terrain at this point
-            terrainPath.add(DefaultTerrain.PLAINS.getTerrainBehavior());
+            terrainPath.add(map.getTerrainAt(point).getTerrainBehavior());
         }
         
         return terrainPath;
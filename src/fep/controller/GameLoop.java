@@ -0,0 +1,236 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.controller;
+
+import java.util.EnumMap;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the game logic on its own thread at a fixed tick rate. Input arrives
+ * as button presses and releases from any thread (normally the event
+ * dispatch thread) and is queued without locking; the loop drains the queue
+ * at the start of each tick and hands commands to its {@link Cursor}, so the
+ * cursor and the model behind it are only ever touched by the loop thread.
+ * <p>
+ * Every press is handled, however quickly it follows the last one. Holding a
+ * direction repeats it the way FE does: once the button has been held for
+ * the repeat delay (DAS), the command repeats every repeat interval (ARR)
+ * until the button is released. Both are measured in ticks.
+ * @author Kyle Buzsaki
+ */
+public class GameLoop implements Runnable {
+
+    /**
+     * The most ticks the loop will run back to back to catch up after
+     * falling behind. Beyond this the loop drops the missed ticks instead.
+     */
+    private static final int MAX_CATCH_UP_TICKS = 5;
+
+    /**
+     * A button press or release, as queued by the input thread.
+     */
+    private static final class Input {
+        private final Command command;
+        private final boolean pressed;
+
+        private Input(Command command, boolean pressed) {
+            this.command = command;
+            this.pressed = pressed;
+        }
+    }
+
+    private final Cursor cursor;
+    private final long tickNanos;
+    private final int repeatDelay;
+    private final int repeatInterval;
+    private final Queue<Input> inputQueue;
+    /**
+     * The number of ticks each held button has been held for. Only touched
+     * by the loop thread.
+     */
+    private final EnumMap<Command, Integer> heldTicks;
+
+    /**
+     * Run on the loop thread after every tick, or null.
+     */
+    private volatile Runnable renderer;
+    private volatile boolean running;
+    private Thread thread;
+    private volatile long tickCount;
+
+    /**
+     * Constructs a loop that drives the given cursor.
+     * @param cursor  the cursor to hand commands to. Must be non-null.
+     * @param ticksPerSecond  the number of logic ticks per second. Must be
+     * positive.
+     * @param repeatDelay  the number of ticks a direction must be held
+     * before it starts repeating. Must be positive.
+     * @param repeatInterval  the number of ticks between repeats once a held
+     * direction has started repeating. Must be positive.
+     */
+    public GameLoop(Cursor cursor, int ticksPerSecond, int repeatDelay, int repeatInterval) {
+        if(cursor == null) {
+            throw new IllegalArgumentException("Cursor must be non-null");
+        }
+        if(ticksPerSecond <= 0 || repeatDelay <= 0 || repeatInterval <= 0) {
+            throw new IllegalArgumentException("Tick rate and repeat timings must be positive: "
+                    + "Ticks Per Second: " + ticksPerSecond + ", Repeat Delay: "
+                    + repeatDelay + ", Repeat Interval: " + repeatInterval);
+        }
+        this.cursor = cursor;
+        this.tickNanos = TimeUnit.SECONDS.toNanos(1) / ticksPerSecond;
+        this.repeatDelay = repeatDelay;
+        this.repeatInterval = repeatInterval;
+        this.inputQueue = new ConcurrentLinkedQueue<>();
+        this.heldTicks = new EnumMap<>(Command.class);
+    }
+
+    // Input
+    /**
+     * Queues a press of the given button. May be called from any thread.
+     * @param command  the button pressed. May be null, in which case the
+     * press is ignored.
+     */
+    public void press(Command command) {
+        if(command != null) {
+            inputQueue.add(new Input(command, true));
+        }
+    }
+    /**
+     * Queues a release of the given button. May be called from any thread.
+     * @param command  the button released. May be null, in which case the
+     * release is ignored.
+     */
+    public void release(Command command) {
+        if(command != null) {
+            inputQueue.add(new Input(command, false));
+        }
+    }
+
+    /**
+     * Sets the task that draws a frame after each tick. It runs on the loop
+     * thread, so it may read the model freely.
+     * @param renderer  the task to run after each tick. May be null, in
+     * which case nothing is drawn.
+     */
+    public void setRenderer(Runnable renderer) {
+        this.renderer = renderer;
+    }
+
+    // Thread Control
+    /**
+     * Starts running the loop on a new thread.
+     * @throws IllegalStateException if the loop is already running.
+     */
+    public synchronized void start() {
+        if(thread != null) {
+            throw new IllegalStateException("Game loop already started");
+        }
+        running = true;
+        thread = new Thread(this, "GameLoop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    /**
+     * Stops the loop and waits for its thread to finish its current tick.
+     * Does nothing if the loop is not running.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public synchronized void stop() throws InterruptedException {
+        running = false;
+        if(thread != null) {
+            LockSupport.unpark(thread);
+            thread.join();
+            thread = null;
+        }
+    }
+    /**
+     * Returns true if the loop is running.
+     * @return whether the loop is running.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Ticks at the fixed rate until stopped, drawing a frame after each tick
+     * if there is a renderer. Called by the loop thread; use
+     * {@link #start()} rather than calling this directly.
+     */
+    @Override
+    public void run() {
+        long nextTick = System.nanoTime();
+        while(running) {
+            long now = System.nanoTime();
+            if(now - nextTick < 0) {
+                LockSupport.parkNanos(nextTick - now);
+                continue;
+            }
+            tick();
+            Runnable frameRenderer = renderer;
+            if(frameRenderer != null) {
+                frameRenderer.run();
+            }
+            nextTick += tickNanos;
+            if(now - nextTick > MAX_CATCH_UP_TICKS * tickNanos) {
+                // too far behind to catch up, so drop the missed ticks
+                nextTick = now + tickNanos;
+            }
+        }
+    }
+
+    /**
+     * Runs a single tick: handles every queued press and release, then
+     * repeats any held directions that are due. Only the loop thread may
+     * call this while the loop is running.
+     */
+    public void tick() {
+        for(Input input = inputQueue.poll(); input != null; input = inputQueue.poll()) {
+            if(input.pressed) {
+                // keyboards that auto-repeat send extra presses; repeating is our job
+                if(!heldTicks.containsKey(input.command)) {
+                    heldTicks.put(input.command, 0);
+                    cursor.handleCommand(input.command);
+                }
+            }
+            else {
+                heldTicks.remove(input.command);
+            }
+        }
+
+        for(java.util.Map.Entry<Command, Integer> entry : heldTicks.entrySet()) {
+            int ticks = entry.getValue() + 1;
+            entry.setValue(ticks);
+            if(isRepeatable(entry.getKey()) && ticks >= repeatDelay
+                    && (ticks - repeatDelay) % repeatInterval == 0) {
+                cursor.handleCommand(entry.getKey());
+            }
+        }
+        tickCount++;
+    }
+
+    /**
+     * Returns the number of ticks run so far.
+     * @return the tick count.
+     */
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    private static boolean isRepeatable(Command command) {
+        switch(command) {
+            case UP:
+            case DOWN:
+            case LEFT:
+            case RIGHT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+}
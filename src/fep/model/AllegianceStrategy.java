@@ -0,0 +1,25 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.model;
+
+/**
+ * Represents a rule for deciding whether two units are on the same side.
+ * Movement calculations use this to decide which occupied tiles a unit may
+ * pass through: units may move through tiles held by their allies, but tiles
+ * held by anyone else block them.
+ * The default AllegianceStrategies can be found in {@link fep.model.DefaultAllegiance}.
+ * @author Kyle Buzsaki
+ */
+public interface AllegianceStrategy {
+    
+    /**
+     * Determines whether the moving unit treats the occupying unit as an ally.
+     * @param mover  the unit that is moving. Must be non-null.
+     * @param occupant  the unit occupying a tile the mover wants to enter. 
+     * Must be non-null.
+     * @return  true if the mover may pass through the occupant's tile.
+     */
+    boolean areAllied(Unit mover, Unit occupant);
+    
+}
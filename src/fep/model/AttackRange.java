@@ -0,0 +1,237 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.model;
+
+import java.util.BitSet;
+
+/**
+ * The tiles a unit can move to this turn, and the tiles it can attack from
+ * any of them with a weapon of a given range. The attack set is the move set
+ * dilated by the weapon's range: every tile whose gridwise distance from some
+ * tile in the move set is between the minimum and maximum range, inclusive.
+ * <p>
+ * Both sets are stored as bitsets indexed by tile index, and are built in a
+ * single pass over a {@link MoveRange}'s reachable tiles by stamping a
+ * precomputed range diamond onto each tile the unit can end its move on.
+ * <p>
+ * This class is immutable. It reflects the state of the map at the time it
+ * was calculated, and is not updated when the map changes.
+ * @author Kyle Buzsaki
+ */
+public final class AttackRange {
+
+    private final MoveRange moveRange;
+    private final int minRange;
+    private final int maxRange;
+    private final BitSet moveTiles;
+    private final BitSet attackTiles;
+
+    private AttackRange(MoveRange moveRange, int minRange, int maxRange) {
+        this.moveRange = moveRange;
+        this.minRange = minRange;
+        this.maxRange = maxRange;
+
+        Map map = moveRange.getMap();
+        int width = map.getWidth();
+        int height = map.getHeight();
+        moveTiles = new BitSet(map.getTileCount());
+        attackTiles = new BitSet(map.getTileCount());
+
+        // no two tiles are further apart than this, so longer ranges add nothing
+        int farthest = width + height - 2;
+        RangeStencil stencil = null;
+        if(minRange <= farthest) {
+            stencil = RangeStencil.of(minRange, Math.min(maxRange, farthest));
+        }
+        for(int tileIndex : moveRange.getReachableTiles()) {
+            if(!moveRange.canEndAt(tileIndex)) {
+                continue;
+            }
+            moveTiles.set(tileIndex);
+            if(stencil != null) {
+                stencil.stamp(attackTiles, tileIndex % width, tileIndex / width, width, height);
+            }
+        }
+    }
+
+    /**
+     * Calculates the attack range of a unit that moves as described by the
+     * given move range.
+     * @param moveRange  the tiles the unit can reach. Must be non-null.
+     * @param minRange  the least distance the unit's weapon can attack at.
+     * Must not be negative.
+     * @param maxRange  the greatest distance the unit's weapon can attack at.
+     * Must not be less than minRange.
+     * @return the attack range.
+     */
+    public static AttackRange calculate(MoveRange moveRange, int minRange, int maxRange) {
+        if(moveRange == null) {
+            throw new IllegalArgumentException("Move range must be non-null");
+        }
+        if(minRange < 0 || maxRange < minRange) {
+            throw new IllegalArgumentException("Invalid weapon range: Min: "
+                    + minRange + ", Max: " + maxRange);
+        }
+        return new AttackRange(moveRange, minRange, maxRange);
+    }
+
+    /**
+     * Calculates the attack range from the given origin. The unit at the
+     * origin, if any, is treated as the moving unit, as with
+     * {@link MoveRange#calculate(Map, ImmutablePoint, MoveCostStrategy, int,
+     * AllegianceStrategy) MoveRange.calculate}.
+     * @param map  the map to move on. Must be non-null.
+     * @param origin  the starting position. Must be non-null and within the
+     * map's dimensions (exclusive).
+     * @param moveCostStrategy  determines the cost of entering each tile.
+     * Must be non-null.
+     * @param movement  the total movement cost that may be spent. Must not
+     * be negative.
+     * @param minRange  the least distance the unit's weapon can attack at.
+     * Must not be negative.
+     * @param maxRange  the greatest distance the unit's weapon can attack at.
+     * Must not be less than minRange.
+     * @param allegianceStrategy  decides which occupants can be passed
+     * through. Must be non-null.
+     * @return the attack range from the given origin.
+     */
+    public static AttackRange calculate(Map map, ImmutablePoint origin,
+            MoveCostStrategy moveCostStrategy, int movement, int minRange, int maxRange,
+            AllegianceStrategy allegianceStrategy) {
+        if(minRange < 0 || maxRange < minRange) {
+            throw new IllegalArgumentException("Invalid weapon range: Min: "
+                    + minRange + ", Max: " + maxRange);
+        }
+        return new AttackRange(MoveRange.calculate(map, origin, moveCostStrategy,
+                movement, allegianceStrategy), minRange, maxRange);
+    }
+
+    /**
+     * Calculates the attack range of the given unit from its current position.
+     * @param unit  the unit to move. Must be non-null and on a map.
+     * @param moveCostStrategy  determines the cost of entering each tile.
+     * Must be non-null.
+     * @param movement  the total movement cost that may be spent. Must not
+     * be negative.
+     * @param minRange  the least distance the unit's weapon can attack at.
+     * Must not be negative.
+     * @param maxRange  the greatest distance the unit's weapon can attack at.
+     * Must not be less than minRange.
+     * @param allegianceStrategy  decides which occupants can be passed
+     * through. Must be non-null.
+     * @return the unit's attack range.
+     */
+    public static AttackRange calculate(Unit unit, MoveCostStrategy moveCostStrategy,
+            int movement, int minRange, int maxRange, AllegianceStrategy allegianceStrategy) {
+        if(unit == null) {
+            throw new IllegalArgumentException("Unit must be non-null");
+        }
+        return calculate(unit.getMap(), unit.getPosition(), moveCostStrategy,
+                movement, minRange, maxRange, allegianceStrategy);
+    }
+
+    // Metadata Accessors
+    /**
+     * Returns the move range this attack range was calculated from.
+     * @return the underlying move range.
+     */
+    public MoveRange getMoveRange() {
+        return moveRange;
+    }
+    /**
+     * Returns the least distance the weapon can attack at.
+     * @return the minimum weapon range.
+     */
+    public int getMinRange() {
+        return minRange;
+    }
+    /**
+     * Returns the greatest distance the weapon can attack at.
+     * @return the maximum weapon range.
+     */
+    public int getMaxRange() {
+        return maxRange;
+    }
+
+    // Tile Accessors
+    /**
+     * Returns true if the unit can end its move on the tile with the given
+     * index.
+     * @param tileIndex  a tile index of the map this range was calculated on.
+     * @return true if the tile is in the move set.
+     */
+    public boolean canMoveTo(int tileIndex) {
+        return moveTiles.get(tileIndex);
+    }
+    /**
+     * Returns true if the unit can end its move at the given position.
+     * @param position  the position to check. Must be non-null and within
+     * the map's dimensions (exclusive).
+     * @return true if the position is in the move set.
+     */
+    public boolean canMoveTo(ImmutablePoint position) {
+        return canMoveTo(moveRange.getMap().indexOf(position));
+    }
+    /**
+     * Returns true if the unit can attack the tile with the given index after
+     * moving this turn.
+     * @param tileIndex  a tile index of the map this range was calculated on.
+     * @return true if the tile is in the attack set.
+     */
+    public boolean canAttack(int tileIndex) {
+        return attackTiles.get(tileIndex);
+    }
+    /**
+     * Returns true if the unit can attack the given position after moving
+     * this turn.
+     * @param position  the position to check. Must be non-null and within
+     * the map's dimensions (exclusive).
+     * @return true if the position is in the attack set.
+     */
+    public boolean canAttack(ImmutablePoint position) {
+        return canAttack(moveRange.getMap().indexOf(position));
+    }
+    /**
+     * Returns the number of tiles in the move set.
+     * @return the number of tiles the unit can move to.
+     */
+    public int getMoveTileCount() {
+        return moveTiles.cardinality();
+    }
+    /**
+     * Returns the number of tiles in the attack set.
+     * @return the number of tiles the unit can attack.
+     */
+    public int getAttackTileCount() {
+        return attackTiles.cardinality();
+    }
+    /**
+     * Returns the move set as a bitset of tile indices. The returned bitset
+     * is a copy.
+     * @return the tiles the unit can move to.
+     */
+    public BitSet getMoveTiles() {
+        return (BitSet) moveTiles.clone();
+    }
+    /**
+     * Returns the attack set as a bitset of tile indices. The attack set
+     * includes tiles in the move set that are in range of another tile the
+     * unit can move to. The returned bitset is a copy.
+     * @return the tiles the unit can attack.
+     */
+    public BitSet getAttackTiles() {
+        return (BitSet) attackTiles.clone();
+    }
+    /**
+     * Returns the tiles the unit can attack but not move to, which is what
+     * FE shades red. The returned bitset is a new copy.
+     * @return the attack set minus the move set.
+     */
+    public BitSet getAttackOnlyTiles() {
+        BitSet attackOnlyTiles = (BitSet) attackTiles.clone();
+        attackOnlyTiles.andNot(moveTiles);
+        return attackOnlyTiles;
+    }
+
+}
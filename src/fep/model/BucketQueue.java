@@ -0,0 +1,128 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.model;
+
+import java.util.Arrays;
+
+/**
+ * A monotone priority queue of ints with integer priorities, as used by 
+ * Dial's variant of Dijkstra's algorithm. Values are kept in a ring of 
+ * buckets, one per priority, so adding and polling are constant time. 
+ * Priorities added must never be less than the priority of the most recently
+ * polled value, nor more than maxStep greater than it.
+ * This class is not thread safe; instances are meant to be reused by a single
+ * search at a time via {@link #clear()}.
+ * @author Kyle Buzsaki
+ */
+final class BucketQueue {
+    
+    private static final int INITIAL_BUCKET_CAPACITY = 8;
+    
+    /**
+     * One growable bucket of values per priority, indexed by priority modulo
+     * the number of buckets.
+     */
+    private int[][] buckets;
+    /**
+     * The number of values stored in each bucket.
+     */
+    private int[] sizes;
+    /**
+     * The lowest priority that may still hold values.
+     */
+    private int currentPriority;
+    /**
+     * The total number of values in the queue.
+     */
+    private int size;
+    
+    /**
+     * Constructs an empty queue accepting priorities up to maxStep greater
+     * than the current priority. For a search, maxStep is the greatest cost
+     * of a single edge.
+     * @param maxStep  the greatest difference between an added priority and
+     * the current priority. Must not be negative.
+     */
+    BucketQueue(int maxStep) {
+        if(maxStep < 0) {
+            throw new IllegalArgumentException("Max step must not be negative: " + maxStep);
+        }
+        buckets = new int[maxStep + 1][];
+        sizes = new int[maxStep + 1];
+    }
+    
+    /**
+     * Returns true if the queue holds no values.
+     * @return true if the queue holds no values.
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+    
+    /**
+     * Returns the priority of the value most recently returned by poll().
+     * @return the current priority of the queue.
+     */
+    int getCurrentPriority() {
+        return currentPriority;
+    }
+    
+    /**
+     * Adds a value with the given priority.
+     * @param value  the value to add.
+     * @param priority  the value's priority. Must be between the current 
+     * priority and the current priority plus maxStep, inclusive.
+     */
+    void add(int value, int priority) {
+        if(priority < currentPriority || priority - currentPriority >= buckets.length) {
+            throw new IllegalArgumentException("Priority out of range: " + priority
+                    + " (current: " + currentPriority + ", max step: " 
+                    + (buckets.length - 1) + ")");
+        }
+        int slot = priority % buckets.length;
+        int[] bucket = buckets[slot];
+        int bucketSize = sizes[slot];
+        if(bucket == null) {
+            bucket = new int[INITIAL_BUCKET_CAPACITY];
+            buckets[slot] = bucket;
+        }
+        else if(bucketSize == bucket.length) {
+            bucket = Arrays.copyOf(bucket, bucketSize * 2);
+            buckets[slot] = bucket;
+        }
+        bucket[bucketSize] = value;
+        sizes[slot] = bucketSize + 1;
+        size++;
+    }
+    
+    /**
+     * Removes and returns a value with the lowest priority in the queue.
+     * Values with equal priority are returned most recently added first.
+     * @return a value with the lowest priority.
+     * @throws IllegalStateException if the queue is empty.
+     */
+    int poll() {
+        if(size == 0) {
+            throw new IllegalStateException("Attempting to poll an empty queue.");
+        }
+        int slot = currentPriority % buckets.length;
+        while(sizes[slot] == 0) {
+            currentPriority++;
+            slot = currentPriority % buckets.length;
+        }
+        size--;
+        return buckets[slot][--sizes[slot]];
+    }
+    
+    /**
+     * Removes all values from the queue and resets the current priority to 0.
+     * Bucket storage is kept for reuse.
+     */
+    void clear() {
+        Arrays.fill(sizes, 0);
+        currentPriority = 0;
+        size = 0;
+    }
+    
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.model;
+
+/**
+ * Describes how far a unit can move and how far it can attack, for range
+ * calculations that cover many units at once. Units do not yet carry stats,
+ * classes or weapons, so callers supply this mapping.
+ * <p>
+ * Implementations should return the same values for a unit until told
+ * otherwise: services that cache ranges, such as {@link DangerZone}, must be
+ * refreshed when a unit's profile changes.
+ * @author Kyle Buzsaki
+ */
+public interface CombatProfile {
+    
+    /**
+     * Returns the strategy that determines the given unit's movement costs.
+     * @param unit  the unit. Must be non-null.
+     * @return  the unit's move cost strategy. Must be non-null.
+     */
+    MoveCostStrategy getMoveCostStrategy(Unit unit);
+    
+    /**
+     * Returns the total movement cost the given unit may spend in a turn.
+     * @param unit  the unit. Must be non-null.
+     * @return  the unit's movement. Must not be negative.
+     */
+    int getMovement(Unit unit);
+    
+    /**
+     * Returns the least distance the given unit can attack at.
+     * @param unit  the unit. Must be non-null.
+     * @return  the unit's minimum attack range. Must not be negative.
+     */
+    int getMinRange(Unit unit);
+    
+    /**
+     * Returns the greatest distance the given unit can attack at.
+     * @param unit  the unit. Must be non-null.
+     * @return  the unit's maximum attack range. Must not be less than its 
+     * minimum range.
+     */
+    int getMaxRange(Unit unit);
+    
+}
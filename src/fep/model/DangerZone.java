@@ -0,0 +1,360 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.model;
+
+import fep.model.event.MapBatchEvent;
+import fep.model.event.MapChangeListener;
+import fep.model.event.TerrainChangedEvent;
+import fep.model.event.UnitAddedEvent;
+import fep.model.event.UnitMovedEvent;
+import fep.model.event.UnitRemovedEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The union of the attack ranges of every threatening unit on a map, kept up
+ * to date as the map changes. This is FE's "danger zone": the tiles that
+ * some enemy could attack on its next turn.
+ * <p>
+ * A DangerZone listens to its map. A unit's attack range can only change if
+ * something within its movement of its position changes, since every step
+ * costs at least 1. So on each change only the threats whose movement
+ * diamond contains a changed tile are recalculated. The zone keeps a count of
+ * threats per tile, so a recalculated threat is applied by subtracting its
+ * old range and adding its new one rather than rebuilding the union.
+ * <p>
+ * Which units are threats is decided by a {@link UnitFilter}, and their
+ * movement and weapon ranges come from a {@link CombatProfile}. If either
+ * changes its answer for a unit, call {@link #refresh(Unit)}.
+ * @author Kyle Buzsaki
+ */
+public final class DangerZone implements MapChangeListener {
+
+    private final Map map;
+    private final CombatProfile combatProfile;
+    private final UnitFilter threatFilter;
+    private final AllegianceStrategy allegianceStrategy;
+    /**
+     * The number of threats that can attack each tile, by tile index.
+     */
+    private final int[] threatCounts;
+    /**
+     * The current attack range of each threat on the map.
+     */
+    private final java.util.Map<Unit, Threat> threats;
+    /**
+     * The number of attack ranges calculated since this zone was created.
+     */
+    private long recalculationCount;
+
+    /**
+     * A threat's attack range along with the area that can affect it.
+     */
+    private static final class Threat {
+        private final ImmutablePoint origin;
+        private final int movement;
+        private final BitSet attackTiles;
+
+        private Threat(ImmutablePoint origin, int movement, BitSet attackTiles) {
+            this.origin = origin;
+            this.movement = movement;
+            this.attackTiles = attackTiles;
+        }
+
+        /**
+         * Returns true if a change at the given position could change this
+         * threat's attack range.
+         */
+        private boolean isAffectedBy(ImmutablePoint position) {
+            return position.distanceGrid(origin) <= movement;
+        }
+    }
+
+    private DangerZone(Map map, CombatProfile combatProfile, UnitFilter threatFilter,
+            AllegianceStrategy allegianceStrategy) {
+        this.map = map;
+        this.combatProfile = combatProfile;
+        this.threatFilter = threatFilter;
+        this.allegianceStrategy = allegianceStrategy;
+        threatCounts = new int[map.getTileCount()];
+        threats = new LinkedHashMap<>();
+        for(Unit unit : map.getUnits()) {
+            if(threatFilter.accept(unit)) {
+                addThreat(unit);
+            }
+        }
+    }
+
+    /**
+     * Calculates the danger zone of the given map and starts listening to it.
+     * @param map  the map to watch. Must be non-null.
+     * @param combatProfile  supplies each threat's movement and weapon range.
+     * Must be non-null.
+     * @param threatFilter  selects the units whose attack ranges make up the
+     * zone. Must be non-null.
+     * @param allegianceStrategy  decides which units each threat can move
+     * through. Must be non-null.
+     * @return  the danger zone of the map, registered as a listener on it.
+     */
+    public static DangerZone attach(Map map, CombatProfile combatProfile,
+            UnitFilter threatFilter, AllegianceStrategy allegianceStrategy) {
+        if(map == null) {
+            throw new IllegalArgumentException("Map must be non-null");
+        }
+        if(combatProfile == null || threatFilter == null || allegianceStrategy == null) {
+            throw new IllegalArgumentException("Combat profile, threat filter and"
+                    + " allegiance strategy must be non-null");
+        }
+        DangerZone dangerZone = new DangerZone(map, combatProfile, threatFilter, allegianceStrategy);
+        map.addMapChangeListener(dangerZone);
+        return dangerZone;
+    }
+
+    /**
+     * Stops listening to the map. The zone keeps its last state but is no
+     * longer updated.
+     */
+    public void detach() {
+        map.removeMapChangeListener(this);
+    }
+
+    /**
+     * Returns the map this zone covers.
+     * @return this zone's map.
+     */
+    public Map getMap() {
+        return map;
+    }
+
+    // Tile Accessors
+    /**
+     * Returns the number of threats that could attack the tile with the given
+     * index on their next turn.
+     * @param tileIndex  a tile index of this zone's map.
+     * @return the number of threats to the tile.
+     */
+    public int getThreatCount(int tileIndex) {
+        return threatCounts[tileIndex];
+    }
+    /**
+     * Returns the number of threats that could attack the given position on
+     * their next turn.
+     * @param position  the position to check. Must be non-null and within
+     * the map's dimensions (exclusive).
+     * @return the number of threats to the position.
+     */
+    public int getThreatCount(ImmutablePoint position) {
+        return threatCounts[map.indexOf(position)];
+    }
+    /**
+     * Returns true if any threat could attack the tile with the given index
+     * on its next turn.
+     * @param tileIndex  a tile index of this zone's map.
+     * @return true if the tile is in the danger zone.
+     */
+    public boolean isDangerous(int tileIndex) {
+        return threatCounts[tileIndex] > 0;
+    }
+    /**
+     * Returns true if any threat could attack the given position on its next
+     * turn.
+     * @param position  the position to check. Must be non-null and within
+     * the map's dimensions (exclusive).
+     * @return true if the position is in the danger zone.
+     */
+    public boolean isDangerous(ImmutablePoint position) {
+        return isDangerous(map.indexOf(position));
+    }
+    /**
+     * Returns the danger zone as a bitset of tile indices. The returned
+     * bitset is a new copy.
+     * @return the tiles that some threat could attack.
+     */
+    public BitSet getDangerousTiles() {
+        BitSet dangerousTiles = new BitSet(threatCounts.length);
+        for(int tile = 0; tile < threatCounts.length; tile++) {
+            if(threatCounts[tile] > 0) {
+                dangerousTiles.set(tile);
+            }
+        }
+        return dangerousTiles;
+    }
+
+    // Threat Accessors
+    /**
+     * Returns the units currently counted as threats. The returned set is an
+     * unmodifiable copy.
+     * @return the threats on the map.
+     */
+    public Set<Unit> getThreats() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(threats.keySet()));
+    }
+    /**
+     * Returns the tiles the given threat could attack on its next turn, or
+     * an empty bitset if the unit is not a threat. The returned bitset is a
+     * copy.
+     * @param unit  the unit to check. May be null.
+     * @return the tiles the unit threatens.
+     */
+    public BitSet getAttackTilesOf(Unit unit) {
+        Threat threat = threats.get(unit);
+        return threat == null ? new BitSet() : (BitSet) threat.attackTiles.clone();
+    }
+    /**
+     * Returns the number of individual attack ranges this zone has
+     * calculated since it was created. Useful for checking how much work
+     * incremental updates are saving.
+     * @return the number of attack range calculations.
+     */
+    public long getRecalculationCount() {
+        return recalculationCount;
+    }
+
+    // Refreshing
+    /**
+     * Re-evaluates whether the given unit is a threat and recalculates its
+     * attack range. Call this when the threat filter's or combat profile's
+     * answer for the unit changes.
+     * @param unit  the unit to refresh. Must be non-null.
+     */
+    public void refresh(Unit unit) {
+        if(unit == null) {
+            throw new IllegalArgumentException("Unit must be non-null");
+        }
+        removeThreat(unit);
+        if(map.containsUnit(unit) && threatFilter.accept(unit)) {
+            addThreat(unit);
+        }
+    }
+    /**
+     * Recalculates every threat from scratch.
+     */
+    public void refreshAll() {
+        for(Unit unit : new ArrayList<>(threats.keySet())) {
+            removeThreat(unit);
+        }
+        for(Unit unit : map.getUnits()) {
+            if(threatFilter.accept(unit)) {
+                addThreat(unit);
+            }
+        }
+    }
+
+    // MapChangeListener Methods
+    @Override
+    public void handleUnitAdded(UnitAddedEvent event) {
+        Unit unit = event.getUnitAdded();
+        recalculateAffected(Collections.singletonList(event.getPosition()), unit);
+        if(threatFilter.accept(unit)) {
+            addThreat(unit);
+        }
+    }
+    @Override
+    public void handleUnitRemoved(UnitRemovedEvent event) {
+        Unit unit = event.getUnitRemoved();
+        removeThreat(unit);
+        recalculateAffected(Collections.singletonList(event.getPriorPosition()), unit);
+    }
+    @Override
+    public void handleUnitMoved(UnitMovedEvent event) {
+        Unit unit = event.getUnitMoved();
+        removeThreat(unit);
+        recalculateAffected(Arrays.asList(event.getPriorPosition(), event.getNewPosition()), unit);
+        if(threatFilter.accept(unit)) {
+            addThreat(unit);
+        }
+    }
+    @Override
+    public void handleTerrainChanged(TerrainChangedEvent event) {
+        recalculateAffected(Collections.singletonList(event.getPointChanged()), null);
+    }
+    @Override
+    public void handleBatch(MapBatchEvent event) {
+        List<ImmutablePoint> changedPositions = new ArrayList<>();
+        List<Unit> changedUnits = new ArrayList<>();
+        for(UnitRemovedEvent removal : event.getUnitsRemoved()) {
+            changedPositions.add(removal.getPriorPosition());
+            changedUnits.add(removal.getUnitRemoved());
+        }
+        for(UnitMovedEvent move : event.getUnitsMoved()) {
+            changedPositions.add(move.getPriorPosition());
+            changedPositions.add(move.getNewPosition());
+            changedUnits.add(move.getUnitMoved());
+        }
+        for(UnitAddedEvent addition : event.getUnitsAdded()) {
+            changedPositions.add(addition.getPosition());
+            changedUnits.add(addition.getUnitAdded());
+        }
+        for(TerrainChangedEvent terrainChange : event.getTerrainChanges()) {
+            changedPositions.add(terrainChange.getPointChanged());
+        }
+
+        for(Unit unit : changedUnits) {
+            removeThreat(unit);
+        }
+        recalculateAffected(changedPositions, null);
+        for(Unit unit : changedUnits) {
+            if(map.containsUnit(unit) && threatFilter.accept(unit)) {
+                addThreat(unit);
+            }
+        }
+    }
+
+    // Private Implementation Methods
+    /**
+     * Recalculates every threat other than the excluded unit whose attack
+     * range could be changed by a change at any of the given positions.
+     */
+    private void recalculateAffected(List<ImmutablePoint> changedPositions, Unit excluded) {
+        List<Unit> affected = new ArrayList<>();
+        for(java.util.Map.Entry<Unit, Threat> entry : threats.entrySet()) {
+            if(entry.getKey() == excluded) {
+                continue;
+            }
+            for(ImmutablePoint position : changedPositions) {
+                if(entry.getValue().isAffectedBy(position)) {
+                    affected.add(entry.getKey());
+                    break;
+                }
+            }
+        }
+        for(Unit unit : affected) {
+            removeThreat(unit);
+            addThreat(unit);
+        }
+    }
+
+    private void addThreat(Unit unit) {
+        int movement = combatProfile.getMovement(unit);
+        AttackRange attackRange = AttackRange.calculate(map, map.getPositionOf(unit),
+                combatProfile.getMoveCostStrategy(unit), movement,
+                combatProfile.getMinRange(unit), combatProfile.getMaxRange(unit),
+                allegianceStrategy);
+        recalculationCount++;
+
+        BitSet attackTiles = attackRange.getAttackTiles();
+        for(int tile = attackTiles.nextSetBit(0); tile >= 0; tile = attackTiles.nextSetBit(tile + 1)) {
+            threatCounts[tile]++;
+        }
+        threats.put(unit, new Threat(map.getPositionOf(unit), movement, attackTiles));
+    }
+
+    private void removeThreat(Unit unit) {
+        Threat threat = threats.remove(unit);
+        if(threat == null) {
+            return;
+        }
+        BitSet attackTiles = threat.attackTiles;
+        for(int tile = attackTiles.nextSetBit(0); tile >= 0; tile = attackTiles.nextSetBit(tile + 1)) {
+            threatCounts[tile]--;
+        }
+    }
+
+}
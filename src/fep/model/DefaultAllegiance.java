@@ -0,0 +1,45 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.model;
+
+/**
+ * Enumerates the built-in {@link AllegianceStrategy AllegianceStrategies} of FEP.
+ * @author Kyle Buzsaki
+ */
+public enum DefaultAllegiance implements AllegianceStrategy {
+    
+    /**
+     * Every unit is allied with every other unit. Occupied tiles never block
+     * movement, though units still may not end their move on them.
+     */
+    ALL_ALLIED {
+        @Override
+        public boolean areAllied(Unit mover, Unit occupant) {
+            return true;
+        }
+    },
+    /**
+     * No unit is allied with any other unit. Every occupied tile blocks 
+     * movement.
+     */
+    ALL_HOSTILE {
+        @Override
+        public boolean areAllied(Unit mover, Unit occupant) {
+            return false;
+        }
+    },
+    /**
+     * Units are allied unless their {@link Faction factions} are hostile to 
+     * each other. Units may pass through their own side and through 
+     * neutral units, but not through their enemies.
+     * @see Faction#isHostileTo(Faction)
+     */
+    FACTION {
+        @Override
+        public boolean areAllied(Unit mover, Unit occupant) {
+            return !mover.getFaction().isHostileTo(occupant.getFaction());
+        }
+    };
+    
+}
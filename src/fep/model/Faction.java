@@ -0,0 +1,63 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.model;
+
+/**
+ * An enumeration of the sides a unit may fight for. Every unit belongs to
+ * exactly one faction for as long as it exists, and a {@link Map} keeps the
+ * units of each faction indexed separately.
+ * <p>
+ * A faction is also a {@link UnitFilter} that accepts exactly its own units.
+ * @author Kyle Buzsaki
+ */
+public enum Faction implements UnitFilter {
+    /**
+     * Units controlled by the player. (blue units)
+     */
+    PLAYER,
+    /**
+     * Units fighting the player. (red units)
+     */
+    ENEMY,
+    /**
+     * Units fighting alongside the player but not controlled by them.
+     * (green units)
+     */
+    ALLY,
+    /**
+     * Units that take no side, such as villagers. Nobody is hostile to them.
+     */
+    NEUTRAL;
+
+    /**
+     * Determines whether units of this faction fight units of the given
+     * faction. Hostility is symmetric: enemies are hostile to players and
+     * allies, and no other pair of factions is hostile.
+     * @param other  the faction to check against. Must be non-null.
+     * @return true if the two factions are hostile to each other.
+     */
+    public boolean isHostileTo(Faction other) {
+        if(other == null) {
+            throw new IllegalArgumentException("Faction must be non-null");
+        }
+        if(this == ENEMY) {
+            return other == PLAYER || other == ALLY;
+        }
+        if(other == ENEMY) {
+            return this == PLAYER || this == ALLY;
+        }
+        return false;
+    }
+
+    /**
+     * Accepts the units of this faction.
+     * @param unit  the unit to check. Must be non-null.
+     * @return true if the unit belongs to this faction.
+     */
+    @Override
+    public boolean accept(Unit unit) {
+        return unit.getFaction() == this;
+    }
+
+}
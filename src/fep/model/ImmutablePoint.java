@@ -12,6 +12,11 @@ import java.util.Set;
 /**
  * Represents an integer point in 2 dimensional space. This point is immutable.
  * This class's purpose is to provide an immutable alternative to {@link Point}.
+ * <p>
+ * Points within a map can be obtained from {@link Map#getPoint(int, int)}, 
+ * which returns the same instance every time. Code that handles many points 
+ * at once can avoid objects entirely by packing coordinates into a long with 
+ * {@link #pack(int, int)}.
  * @author Kyle Buzsaki
  */
 public final class ImmutablePoint {
@@ -42,6 +47,50 @@ public final class ImmutablePoint {
     public ImmutablePoint(Point point) {
         this(point.x, point.y);
     }
+    
+    /**
+     * Packs the given coordinates into a single long, with x in the high 32 
+     * bits and y in the low 32 bits. Packed coordinates are equal if and only
+     * if the points they represent are equal.
+     * @param x  the x coordinate
+     * @param y  the y coordinate
+     * @return the packed coordinates.
+     */
+    public static long pack(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+    /**
+     * Returns the x coordinate of the given packed coordinates.
+     * @param packed  coordinates packed by {@link #pack(int, int)}.
+     * @return the x coordinate.
+     */
+    public static int unpackX(long packed) {
+        return (int) (packed >> 32);
+    }
+    /**
+     * Returns the y coordinate of the given packed coordinates.
+     * @param packed  coordinates packed by {@link #pack(int, int)}.
+     * @return the y coordinate.
+     */
+    public static int unpackY(long packed) {
+        return (int) packed;
+    }
+    /**
+     * Constructs an ImmutablePoint from the given packed coordinates.
+     * @param packed  coordinates packed by {@link #pack(int, int)}.
+     * @return a point with the packed coordinates.
+     */
+    public static ImmutablePoint fromPacked(long packed) {
+        return new ImmutablePoint(unpackX(packed), unpackY(packed));
+    }
+    /**
+     * Returns this point's coordinates packed into a long.
+     * @return this point's packed coordinates.
+     * @see #pack(int, int)
+     */
+    public long toPacked() {
+        return pack(x, y);
+    }
 
     public int getX() {
         return x;
@@ -90,10 +139,9 @@ public final class ImmutablePoint {
     
     @Override
     public int hashCode() {
-        // lifted and slightly changed from java.awt.geom.Point2D
-        long bits = java.lang.Double.doubleToLongBits(getX());
-        bits ^= java.lang.Double.doubleToLongBits(getY()) * 17;
-        return (((int) bits) ^ ((int) (bits >> 32)));
+        // spread x across the word so nearby points don't collide on wide maps
+        int hash = x * 0x9E3779B9 ^ y;
+        return hash ^ (hash >>> 16);
     }
     
     @Override
@@ -108,12 +156,16 @@ public final class ImmutablePoint {
     /**
      * Returns true if and only if the specified point is adjacent to this point. 
      * Adjacency is defined as having a distance of 1 between the points.
-     * This method is logically equivalent to {@code distance(point)} == 1.
+     * This method is logically equivalent to {@code distance(point)} == 1,
+     * which for integer points is the same as the gridwise distance being 1.
      * @param point  the specified point to check
      * @return true if and only if the specified point is adjacent to this point.
      */
     public boolean isAdjacentTo(ImmutablePoint point) {
-        return this.distance(point) == 1;
+        // widened so that offsets near the int limits can't wrap around to 1
+        long xOffset = Math.abs((long) x - point.x);
+        long yOffset = Math.abs((long) y - point.y);
+        return xOffset + yOffset == 1;
     }
     
     /**
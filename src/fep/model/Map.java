@@ -3,14 +3,21 @@
  */
 package fep.model;
 
+import fep.model.event.MapBatchEvent;
 import fep.model.event.MapChangeListener;
 import fep.model.event.TerrainChangedEvent;
 import fep.model.event.UnitAddedEvent;
 import fep.model.event.UnitMovedEvent;
 import fep.model.event.UnitRemovedEvent;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
-import javax.swing.event.EventListenerList;
 
 /**
  * Represents a game map.
@@ -18,9 +25,39 @@ import javax.swing.event.EventListenerList;
  * contained within the map is guaranteed to have a non-null piece of terrain.
  * Squares may or may not contain units. Units are guaranteed to only appear
  * once in the map.
+ * <p>
+ * A map is not thread safe. Threads other than the one modifying it should
+ * read from a {@link MapSnapshot} instead.
  * @author Kyle Buzsaki
  */
-public class Map {
+public class Map implements MapView {
+    
+    /**
+     * The maximum number of distinct terrains a single map may contain.
+     * Terrain is stored as an unsigned short index into the map's palette.
+     */
+    public static final int MAX_PALETTE_SIZE = 1 << 16;
+    /**
+     * The listener snapshot of a map with no listeners.
+     */
+    private static final MapChangeListener[] NO_LISTENERS = new MapChangeListener[0];
+    /**
+     * The width and height in tiles of the square regions that modifications
+     * are tracked by.
+     * @see #getLastModified(int, int, int, int)
+     */
+    public static final int REGION_SIZE = 8;
+    /**
+     * Every faction, indexed by ordinal.
+     */
+    private static final Faction[] FACTIONS = Faction.values();
+    /**
+     * The kinds of change recorded in the undo journal.
+     */
+    private static final byte JOURNAL_ADD = 0;
+    private static final byte JOURNAL_REMOVE = 1;
+    private static final byte JOURNAL_MOVE = 2;
+    private static final byte JOURNAL_TERRAIN = 3;
     
     /**
      * The width of the map in tiles.
@@ -32,39 +69,206 @@ public class Map {
     private final int height;
     /**
      * Positionally organized array of the units on this map.
-     * The dimensions of this 2D array should match width and height, respectively.
+     * Stored row-major: the unit at (x, y) is at index {@code y * width + x}.
      */
-    private final Unit[][] unitIndex;
+    private final Unit[] unitIndex;
     /**
      * Positionally organized array of the terrain making up this map.
-     * The dimensions of this 2D array should match width and height, respectively.
+     * Stored row-major like unitIndex. Each entry is an unsigned index into
+     * terrainPalette rather than a Terrain reference.
+     */
+    private final short[] terrainIndex;
+    /**
+     * The canonical point for every tile, by region, laid out like the chunks
+     * of a {@link MapSnapshot}. Positions handed out by this map are always
+     * taken from here. Chunks and the points in them are created the first
+     * time they are asked for, so tiles that are never asked about cost 
+     * nothing.
+     */
+    private final ImmutablePoint[][] pointChunks;
+    /**
+     * The distinct terrains used on this map, in the order they were first 
+     * placed. Index 0 is always {@link DefaultTerrain#PLAINS}, the terrain 
+     * every tile starts with.
+     */
+    private final List<Terrain> terrainPalette;
+    /**
+     * Reverse lookup from terrain to its index in terrainPalette.
+     */
+    private final java.util.Map<Terrain, Integer> terrainIds;
+    /**
+     * The Zobrist key of each terrain in terrainPalette, by palette id.
+     */
+    private long[] terrainKeys;
+    /**
+     * One bit per tile, set if the tile holds a unit. Each row is stored in
+     * its own run of occupancyStride words, so spatial queries can skip 
+     * empty stretches of a row 64 tiles at a time.
+     */
+    private final long[] occupancy;
+    /**
+     * The number of words of occupancy per row.
+     */
+    private final int occupancyStride;
+    /**
+     * An occupancy bitmap per faction, indexed by faction ordinal and laid 
+     * out like occupancy. A tile's bit is set only in the bitmap of the 
+     * faction of the unit on it.
+     */
+    private final long[][] factionOccupancy;
+    /**
+     * Reverse index from each unit on this map to its current position.
+     * Kept in sync with unitIndex by {@link #setUnitAt(int, Unit)}
+     * so that position lookups and containment checks do not need to scan the
+     * map. Its key set doubles as the live roster of units on the map.
+     */
+    private final java.util.Map<Unit, ImmutablePoint> unitPositions;
+    /**
+     * Unmodifiable view of the keys of unitPositions, returned by getUnits().
+     */
+    private final Set<Unit> unitRoster;
+    /**
+     * The units of each faction on this map.
+     */
+    private final java.util.Map<Faction, Set<Unit>> factionMembers;
+    /**
+     * Unmodifiable views of the sets in factionMembers, returned by 
+     * getUnits(Faction).
+     */
+    private final java.util.Map<Faction, Set<Unit>> factionRosters;
+    /**
+     * The movement graphs compiled from this map so far, by strategy. They
+     * are updated by setTerrainAt before any listener is notified, so 
+     * listeners always see graphs that match the new terrain.
+     */
+    private final java.util.Map<MoveCostStrategy, MovementGraph> movementGraphs;
+    /**
+     * The number of modifications made to this map. Each modification 
+     * increments it, so it serves as a version stamp for the map.
+     */
+    private long modCount;
+    /**
+     * The width of the map in regions.
+     */
+    private final int regionColumns;
+    /**
+     * The value of modCount when each region was last modified, stored 
+     * row-major by region. 0 if the region has never been modified.
+     */
+    private final long[] regionStamps;
+    /**
+     * The value of modCount after the last unit was added, removed or moved.
+     */
+    private long unitsModCount;
+    /**
+     * The Zobrist hash of the terrain and units on this map, updated by every
+     * mutation.
+     * @see #stateHash()
+     */
+    private long stateHash;
+    /**
+     * The most recent snapshot of this map, or null if none has been taken.
+     * Volatile so that other threads can pick up the latest snapshot.
+     */
+    private volatile MapSnapshot lastSnapshot;
+    /**
+     * Snapshot of the {@link fep.model.event.MapChangeListener} objects that 
+     * this map will notify when changes are made to its terrain or units.
+     * The array is never modified once published: adding or removing a 
+     * listener replaces it with a copy, so mutations can dispatch straight 
+     * from it without copying, and listeners may unregister themselves 
+     * while being notified.
+     */
+    private volatile MapChangeListener[] listeners;
+    /**
+     * The number of batches currently open. Events are held back until the
+     * outermost batch ends.
+     */
+    private int batchDepth;
+    /**
+     * The position each unit changed in the current batch had when the batch
+     * began, or null if it was not on the map. Units are added the first time
+     * they are changed in a batch.
+     */
+    private final java.util.Map<Unit, ImmutablePoint> batchUnitOrigins;
+    /**
+     * The terrain each tile changed in the current batch had when the batch
+     * began, keyed by tile index.
      */
-    private final Terrain[][] terrainIndex;
+    private final java.util.Map<Integer, Terrain> batchTerrainOrigins;
     /**
-     * EventListenerList of all of this map's EventListeners. 
-     * Contains {@link fep.model.event.MapChangeListener} objects that this map
-     * will notify when changes are made to its terrain or units.
+     * Whether mutations skip notifying listeners entirely.
+     * @see #setSuppressingEvents(boolean)
      */
-    private final EventListenerList listeners;
+    private boolean suppressingEvents;
+    /**
+     * The undo journal: one entry per change made while a checkpoint is 
+     * open, stored across parallel arrays. Each entry holds the kind of 
+     * change, a tile, and the unit changed or the terrain replaced. The tile
+     * is where the unit was added, removed or moved from, or where the 
+     * terrain was replaced.
+     */
+    private byte[] journalKinds;
+    private int[] journalTiles;
+    private Object[] journalSubjects;
+    private int journalSize;
+    /**
+     * The journal size when each open checkpoint was taken, innermost last.
+     */
+    private int[] checkpoints;
+    private int checkpointDepth;
+    /**
+     * Whether a rollback is in progress, during which nothing is journaled.
+     */
+    private boolean rollingBack;
     
     public Map(final int width, final int height) {
         if(width <= 0 || height <= 0) {
             throw new IllegalArgumentException("Map height and width must be"
                     + " greater than 0");
         }
+        if((long) width * height > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Map area must fit in an int: "
+                    + "Width: " + width + ", Height: " + height);
+        }
         this.width = width;
         this.height = height;
         
-        unitIndex = new Unit[width][height];
-        terrainIndex = new Terrain[width][height];
+        unitIndex = new Unit[width * height];
+        occupancyStride = (width + Long.SIZE - 1) / Long.SIZE;
+        occupancy = new long[occupancyStride * height];
+        factionOccupancy = new long[FACTIONS.length][occupancyStride * height];
+        // every id starts at 0, which the palette maps to plains
+        terrainIndex = new short[width * height];
+        terrainPalette = new ArrayList<>();
+        terrainIds = new HashMap<>();
+        terrainKeys = new long[4];
+        getTerrainId(DefaultTerrain.PLAINS);
         
-        for(int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                terrainIndex[x][y] = DefaultTerrain.PLAINS;
-            }
+        unitPositions = new LinkedHashMap<>();
+        unitRoster = Collections.unmodifiableSet(unitPositions.keySet());
+        factionMembers = new EnumMap<>(Faction.class);
+        factionRosters = new EnumMap<>(Faction.class);
+        for(Faction faction : FACTIONS) {
+            Set<Unit> members = new LinkedHashSet<>();
+            factionMembers.put(faction, members);
+            factionRosters.put(faction, Collections.unmodifiableSet(members));
         }
+        movementGraphs = new HashMap<>();
+        
+        regionColumns = (width + REGION_SIZE - 1) / REGION_SIZE;
+        int regionRows = (height + REGION_SIZE - 1) / REGION_SIZE;
+        regionStamps = new long[regionColumns * regionRows];
+        pointChunks = new ImmutablePoint[regionColumns * regionRows][];
         
-        this.listeners = new EventListenerList();
+        this.listeners = NO_LISTENERS;
+        batchUnitOrigins = new LinkedHashMap<>();
+        batchTerrainOrigins = new LinkedHashMap<>();
+        journalKinds = new byte[16];
+        journalTiles = new int[16];
+        journalSubjects = new Object[16];
+        checkpoints = new int[4];
+        stateHash = recomputeStateHash();
     }
     
     /**
@@ -81,6 +285,146 @@ public class Map {
     public final int getHeight() {
         return height;
     }
+    /**
+     * Returns the number of tiles in the map. Valid tile indices range from 
+     * 0 (inclusive) to this value (exclusive).
+     * @return the width of the map multiplied by its height.
+     */
+    public final int getTileCount() {
+        return unitIndex.length;
+    }
+    
+    // Index Accessors
+    /**
+     * Returns the tile index of the given coordinates. Tiles are indexed in
+     * row-major order, so the index of (x, y) is {@code y * width + x}.
+     * @param x the x coordinate. Must be within the map's width (exclusive).
+     * @param y the y coordinate. Must be within the map's height (exclusive).
+     * @return the index of the tile at the given coordinates.
+     */
+    public int indexOf(int x, int y) {
+        if(x < 0 || x >= width || y < 0 || y >= height) {
+            throw new IllegalArgumentException("Position out of bounds: "
+                    + "Position: " + new ImmutablePoint(x, y) + ", Width: " 
+                    + getWidth() + ", Height: " + getHeight());
+        }
+        return y * width + x;
+    }
+    /**
+     * Returns the tile index of the given position.
+     * @param position the position to index. Must be non-null and within 
+     * the map's dimensions (exclusive).
+     * @return the index of the tile at the given position.
+     * @see #indexOf(int, int)
+     */
+    public int indexOf(ImmutablePoint position) {
+        boundsCheck(position);
+        return position.getY() * width + position.getX();
+    }
+    /**
+     * Returns the canonical point with the given coordinates. Every call with
+     * the same coordinates returns the same instance, and every position 
+     * reported by this map is one of these instances.
+     * @param x the x coordinate. Must be within the map's width (exclusive).
+     * @param y the y coordinate. Must be within the map's height (exclusive).
+     * @return the point with the given coordinates.
+     */
+    public ImmutablePoint getPoint(int x, int y) {
+        return pointAt(indexOf(x, y));
+    }
+    /**
+     * Returns the canonical point of the tile with the given index.
+     * @param index a tile index. Must be a valid index for this map.
+     * @return the point of the tile.
+     * @see #getPoint(int, int)
+     */
+    public ImmutablePoint getPoint(int index) {
+        indexCheck(index);
+        return pointAt(index);
+    }
+    /**
+     * Returns the x coordinate of the tile with the given index.
+     * @param index a tile index. Must be a valid index for this map.
+     * @return the x coordinate of the tile.
+     */
+    public int xOf(int index) {
+        indexCheck(index);
+        return index % width;
+    }
+    /**
+     * Returns the y coordinate of the tile with the given index.
+     * @param index a tile index. Must be a valid index for this map.
+     * @return the y coordinate of the tile.
+     */
+    public int yOf(int index) {
+        indexCheck(index);
+        return index / width;
+    }
+    /**
+     * Returns the unit at the tile with the given index. Returns null if no
+     * unit is present.
+     * @param index a tile index. Must be a valid index for this map.
+     * @return the unit at the given tile. May be null.
+     */
+    public Unit getUnitAt(int index) {
+        indexCheck(index);
+        return unitIndex[index];
+    }
+    /**
+     * Returns the terrain at the tile with the given index. Guaranteed to be
+     * non-null.
+     * @param index a tile index. Must be a valid index for this map.
+     * @return the terrain at the given tile.
+     */
+    public Terrain getTerrainAt(int index) {
+        indexCheck(index);
+        return terrainPalette.get(terrainIndex[index] & 0xFFFF);
+    }
+    /**
+     * Returns the palette id of the terrain at the tile with the given index.
+     * Palette ids are small, dense, map-specific integers; two tiles have the
+     * same id if and only if they have the same terrain.
+     * @param index a tile index. Must be a valid index for this map.
+     * @return the palette id of the terrain at the given tile.
+     * @see #getPaletteTerrain(int)
+     */
+    public int getTerrainIdAt(int index) {
+        indexCheck(index);
+        return terrainIndex[index] & 0xFFFF;
+    }
+    /**
+     * Returns the terrain with the given palette id.
+     * @param terrainId a palette id. Must be less than the palette size.
+     * @return the terrain with the given palette id.
+     * @throws IndexOutOfBoundsException if the id is not in the palette.
+     */
+    public Terrain getPaletteTerrain(int terrainId) {
+        return terrainPalette.get(terrainId);
+    }
+    /**
+     * Returns the number of distinct terrains that have been placed on this
+     * map. Palette ids range from 0 (inclusive) to this value (exclusive).
+     * @return the size of this map's terrain palette.
+     */
+    public int getPaletteSize() {
+        return terrainPalette.size();
+    }
+    /**
+     * Returns this map's terrain compiled for the given strategy. The graph
+     * is built on first request and kept up to date as terrain changes, so
+     * the same instance is returned for as long as the map exists.
+     * @param moveCostStrategy  the strategy to compile for. Must be non-null,
+     * and must always return the same cost for the same terrain behavior.
+     * @return the movement graph of this map for the given strategy.
+     */
+    public MovementGraph getMovementGraph(MoveCostStrategy moveCostStrategy) {
+        MovementGraph movementGraph = movementGraphs.get(moveCostStrategy);
+        if(movementGraph == null) {
+            movementGraph = new MovementGraph(this, moveCostStrategy);
+            movementGraphs.put(moveCostStrategy, movementGraph);
+        }
+        return movementGraph;
+    }
 
     // Positional Accessors
     /**
@@ -100,26 +444,29 @@ public class Map {
      * @return the unit at the given position. May be null.
      */
     public Unit getUnitAt(ImmutablePoint position) {
-        boundsCheck(position);
-        return unitIndex[position.getX()][position.getY()];
+        return unitIndex[indexOf(position)];
     }
     /**
      * Returns a collection of all of the units on the map. 
      * Guaranteed to be non-null and have no null elements.
+     * The returned set is an unmodifiable live view: it reflects later 
+     * additions and removals, so callers that mutate the map while iterating
+     * should copy it first.
      * @return a collection of all of the units on the map.
      */
     public Set<Unit> getUnits() {
-        Set<Unit> units = new HashSet<>();
-        
-        for(Unit[] column : unitIndex) {
-            for(Unit unit : column) {
-                if(unit != null) {
-                    units.add(unit);
-                }
-            }
-        }
-        
-        return units;
+        return unitRoster;
+    }
+    /**
+     * Returns a collection of the units of the given faction on the map.
+     * Guaranteed to be non-null and have no null elements. Like 
+     * {@link #getUnits()}, the returned set is an unmodifiable live view.
+     * @param faction the faction to get the units of. Must be non-null.
+     * @return a collection of the given faction's units on the map.
+     */
+    public Set<Unit> getUnits(Faction faction) {
+        factionCheck(faction);
+        return factionRosters.get(faction);
     }
     /**
      * Returns the terrain at the given position. Guaranteed to be non-null.
@@ -128,8 +475,7 @@ public class Map {
      * @return the terrain at the given position.
      */
     public Terrain getTerrainAt(ImmutablePoint position) {
-        boundsCheck(position);
-        return terrainIndex[position.getX()][position.getY()];
+        return getTerrainAt(indexOf(position));
     }
     /**
      * Returns a tile at the given position. Guaranteed to be non-null, but
@@ -155,7 +501,7 @@ public class Map {
             return false;
         }
         else {
-            return getUnits().contains(unit);
+            return unitPositions.containsKey(unit);
         }
     }
     /**
@@ -168,16 +514,159 @@ public class Map {
     public ImmutablePoint getPositionOf(Unit unit) {
         nullCheck(unit);
         
-        for (int x = 0; x < getWidth(); x++) {
-            for (int y = 0; y < getHeight(); y++) {
-                ImmutablePoint position = new ImmutablePoint(x, y);
-                if(unit.equals(getUnitAt(position))) {
-                    return position;
-                }
+        ImmutablePoint position = unitPositions.get(unit);
+        if(position == null) {
+            throw new UnitNotFoundException(unit, "Attempting to get the position of a unit not in the map.");
+        }
+        return position;
+    }
+    
+    /**
+     * Returns the index of the tile the given unit is on.
+     * @param unit the unit to check the position of. Must be non-null.
+     * @return the tile index of the given unit's position.
+     * @throws UnitNotFoundException if the unit is not present in the map.
+     */
+    public int getIndexOf(Unit unit) {
+        ImmutablePoint position = getPositionOf(unit);
+        return position.getY() * width + position.getX();
+    }
+    
+    // Faction Queries
+    /**
+     * Returns true if the given position holds a unit of the given faction.
+     * @param position the position to check. Must be non-null and within 
+     * the map's dimensions (exclusive).
+     * @param faction the faction to check for. Must be non-null.
+     * @return true if a unit of the faction is at the position.
+     */
+    public boolean isOccupiedBy(ImmutablePoint position, Faction faction) {
+        return isOccupiedBy(indexOf(position), faction);
+    }
+    /**
+     * Returns true if the tile with the given index holds a unit of the 
+     * given faction. Reads the faction's occupancy bitmap, so it does not 
+     * touch the unit itself.
+     * @param index the index of the tile to check. Must be a valid index for
+     * this map.
+     * @param faction the faction to check for. Must be non-null.
+     * @return true if a unit of the faction is on the tile.
+     * @see #isOccupiedBy(ImmutablePoint, Faction)
+     */
+    public boolean isOccupiedBy(int index, Faction faction) {
+        indexCheck(index);
+        factionCheck(faction);
+        return (factionOccupancy[faction.ordinal()][occupancyWordOf(index)] 
+                & 1L << (index % width)) != 0;
+    }
+    /**
+     * Returns true if the given position holds a unit hostile to the given
+     * faction, and so blocks that faction's movement.
+     * @param position the position to check. Must be non-null and within 
+     * the map's dimensions (exclusive).
+     * @param faction the faction asking. Must be non-null.
+     * @return true if a unit hostile to the faction is at the position.
+     * @see Faction#isHostileTo(Faction)
+     */
+    public boolean isHostileOccupied(ImmutablePoint position, Faction faction) {
+        return isHostileOccupied(indexOf(position), faction);
+    }
+    /**
+     * Returns true if the tile with the given index holds a unit hostile to
+     * the given faction. Reads the occupancy bitmaps of the hostile 
+     * factions, so it does not touch the unit itself.
+     * @param index the index of the tile to check. Must be a valid index for
+     * this map.
+     * @param faction the faction asking. Must be non-null.
+     * @return true if a unit hostile to the faction is on the tile.
+     * @see #isHostileOccupied(ImmutablePoint, Faction)
+     */
+    public boolean isHostileOccupied(int index, Faction faction) {
+        indexCheck(index);
+        factionCheck(faction);
+        int word = occupancyWordOf(index);
+        long bit = 1L << (index % width);
+        for(Faction other : FACTIONS) {
+            if(faction.isHostileTo(other) && (factionOccupancy[other.ordinal()][word] & bit) != 0) {
+                return true;
             }
         }
-        
-        throw new UnitNotFoundException(unit, "Attempting to get the position of a unit not in the map.");
+        return false;
+    }
+    
+    // Spatial Queries
+    /**
+     * Visits every unit in the given rectangle, in row-major order. The 
+     * rectangle is clipped to the map. Takes time proportional to the 
+     * rectangle's height times its width in 64 tile words, plus the number 
+     * of units visited.
+     * @param minX  the left edge of the rectangle, inclusive.
+     * @param minY  the top edge of the rectangle, inclusive.
+     * @param maxX  the right edge of the rectangle, inclusive.
+     * @param maxY  the bottom edge of the rectangle, inclusive.
+     * @param visitor  receives each unit found. Must be non-null.
+     * @return true if every unit was visited, or false if the visitor 
+     * stopped the query.
+     */
+    public boolean visitUnitsInRectangle(int minX, int minY, int maxX, int maxY, 
+            UnitVisitor visitor) {
+        visitorCheck(visitor);
+        int firstRow = Math.max(0, minY);
+        int lastRow = Math.min(height - 1, maxY);
+        int fromX = Math.max(0, minX);
+        int toX = Math.min(width - 1, maxX);
+        if(fromX > toX) {
+            return true;
+        }
+        for(int y = firstRow; y <= lastRow; y++) {
+            if(!visitRow(y, fromX, toX, visitor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    /**
+     * Visits every unit within the given number of tiles of the center, 
+     * measuring diagonal steps as one tile (Chebyshev distance). This is 
+     * the square of side {@code 2 * radius + 1} around the center.
+     * @param center  the center of the query. Must be non-null and within
+     * the map's dimensions (exclusive).
+     * @param radius  the greatest distance to include. Must not be negative.
+     * @param visitor  receives each unit found. Must be non-null.
+     * @return true if every unit was visited, or false if the visitor 
+     * stopped the query.
+     * @see #visitUnitsInRectangle(int, int, int, int, UnitVisitor)
+     */
+    public boolean visitUnitsWithin(ImmutablePoint center, int radius, UnitVisitor visitor) {
+        radius = clampRadius(center, radius);
+        return visitUnitsInRectangle(center.getX() - radius, center.getY() - radius,
+                center.getX() + radius, center.getY() + radius, visitor);
+    }
+    /**
+     * Visits every unit whose gridwise (Manhattan) distance from the center 
+     * is at most the given radius. This is the diamond a unit with that much
+     * movement or weapon range covers on open ground.
+     * @param center  the center of the query. Must be non-null and within
+     * the map's dimensions (exclusive).
+     * @param radius  the greatest distance to include. Must not be negative.
+     * @param visitor  receives each unit found. Must be non-null.
+     * @return true if every unit was visited, or false if the visitor 
+     * stopped the query.
+     */
+    public boolean visitUnitsInDiamond(ImmutablePoint center, int radius, UnitVisitor visitor) {
+        radius = clampRadius(center, radius);
+        visitorCheck(visitor);
+        int firstRow = Math.max(0, center.getY() - radius);
+        int lastRow = Math.min(height - 1, center.getY() + radius);
+        for(int y = firstRow; y <= lastRow; y++) {
+            int reach = radius - Math.abs(y - center.getY());
+            int fromX = Math.max(0, center.getX() - reach);
+            int toX = Math.min(width - 1, center.getX() + reach);
+            if(fromX <= toX && !visitRow(y, fromX, toX, visitor)) {
+                return false;
+            }
+        }
+        return true;
     }
     
     // Unit and Terrain Mutators
@@ -191,18 +680,44 @@ public class Map {
      * the specified position.
      */
     public void addUnit(ImmutablePoint position, Unit unit) {
-        boundsCheck(position);
+        addUnit(indexOf(position), unit);
+    }
+    /**
+     * Adds the given unit to the map at the tile with the given index. 
+     * @param index the index of the tile to add the unit to. Must be a valid
+     * index for this map.
+     * @param unit the unit to add to the map. Must be non-null.
+     * @throws IllegalArgumentException if there is a unit already present at 
+     * the specified tile.
+     * @see #addUnit(ImmutablePoint, Unit)
+     */
+    public void addUnit(int index, Unit unit) {
+        indexCheck(index);
         nullCheck(unit);
-        if(unitAt(position)) {
+        if(unitIndex[index] != null) {
             throw new IllegalArgumentException("Attempting to add a unit to an "
-                    + "occupied position: Position: " + position + " Unit: " + unit);
+                    + "occupied position: Position: " + pointAt(index) + " Unit: " + unit);
         }
         
-        setUnitAt(position, unit);
+        setUnitAt(index, unit);
         unit.setMap(this);
+        markModified(index);
+        unitsModCount = modCount;
+        journal(JOURNAL_ADD, index, unit);
         
-        for(MapChangeListener mapChangeListener : getMapChangeListeners()) {
-            mapChangeListener.handleUnitAdded(new UnitAddedEvent(this, unit));
+        if(suppressingEvents) {
+            return;
+        }
+        if(batchDepth > 0) {
+            recordUnitOrigin(unit, null);
+            return;
+        }
+        MapChangeListener[] snapshot = listeners;
+        if(snapshot.length > 0) {
+            UnitAddedEvent event = new UnitAddedEvent(this, unit, pointAt(index));
+            for(MapChangeListener mapChangeListener : snapshot) {
+                mapChangeListener.handleUnitAdded(event);
+            }
         }
     }
     /**
@@ -218,11 +733,26 @@ public class Map {
         }
         
         ImmutablePoint position = getPositionOf(unit);
-        setUnitAt(position, null);
+        int index = indexOf(position);
+        clearUnitAt(index);
         unit.clearMap();
+        markModified(index);
+        unitsModCount = modCount;
+        journal(JOURNAL_REMOVE, index, unit);
         
-        for(MapChangeListener mapChangeListener : getMapChangeListeners()) {
-            mapChangeListener.handleUnitRemoved(new UnitRemovedEvent(this, unit));
+        if(suppressingEvents) {
+            return;
+        }
+        if(batchDepth > 0) {
+            recordUnitOrigin(unit, position);
+            return;
+        }
+        MapChangeListener[] snapshot = listeners;
+        if(snapshot.length > 0) {
+            UnitRemovedEvent event = new UnitRemovedEvent(this, unit, position);
+            for(MapChangeListener mapChangeListener : snapshot) {
+                mapChangeListener.handleUnitRemoved(event);
+            }
         }
     }
     /**
@@ -236,24 +766,52 @@ public class Map {
      * the specified position
      * @throws UnitNotFoundException if the unit is not present in the map.
      */
-    void moveUnitTo(ImmutablePoint position, Unit unit) {
-        boundsCheck(position);
+    public void moveUnitTo(ImmutablePoint position, Unit unit) {
+        moveUnitTo(indexOf(position), unit);
+    }
+    /**
+     * Moves the given unit to the tile with the given index. 
+     * @param index the index of the tile to move the unit to. Must be a valid
+     * index for this map.
+     * @param unit the unit to move. Must be non-null and present in the map.
+     * @throws IllegalArgumentException if there is a unit already present at
+     * the specified tile
+     * @throws UnitNotFoundException if the unit is not present in the map.
+     * @see #moveUnitTo(ImmutablePoint, Unit)
+     */
+    public void moveUnitTo(int index, Unit unit) {
+        indexCheck(index);
         nullCheck(unit);
-        if(unitAt(position)) {
+        if(unitIndex[index] != null) {
             throw new IllegalArgumentException("Attempting to move a unit to an"
-                    + " occupied position: Position: " + position + ", Unit: " 
-                    + unit + ", Blocking Unit: " + getUnitAt(position));
+                    + " occupied position: Position: " + pointAt(index) + ", Unit: " 
+                    + unit + ", Blocking Unit: " + unitIndex[index]);
         }
         if(!containsUnit(unit)) {
             throw new UnitNotFoundException(unit, "Attempting to move a unit not in the map.");
         }
         
         ImmutablePoint priorPosition = getPositionOf(unit);
-        setUnitAt(priorPosition, null);
-        setUnitAt(position, unit);
+        int priorIndex = indexOf(priorPosition);
+        clearUnitAt(priorIndex);
+        setUnitAt(index, unit);
+        markModified(priorIndex, index);
+        unitsModCount = modCount;
+        journal(JOURNAL_MOVE, priorIndex, unit);
         
-        for(MapChangeListener mapChangeListener : getMapChangeListeners()) {
-            mapChangeListener.handleUnitMoved(new UnitMovedEvent(this, unit, priorPosition, position));
+        if(suppressingEvents) {
+            return;
+        }
+        if(batchDepth > 0) {
+            recordUnitOrigin(unit, priorPosition);
+            return;
+        }
+        MapChangeListener[] snapshot = listeners;
+        if(snapshot.length > 0) {
+            UnitMovedEvent event = new UnitMovedEvent(this, unit, priorPosition, pointAt(index));
+            for(MapChangeListener mapChangeListener : snapshot) {
+                mapChangeListener.handleUnitMoved(event);
+            }
         }
     }
     /**
@@ -263,48 +821,626 @@ public class Map {
      * @param terrain the terrain to set at the given position. Must be non-null.
      */
     public void setTerrainAt(ImmutablePoint position, Terrain terrain) {
-        boundsCheck(position);
+        setTerrainAt(indexOf(position), terrain);
+    }
+    /**
+     * Sets the terrain of the tile with the given index to be the given terrain.
+     * @param index the index of the tile to set terrain at. Must be a valid
+     * index for this map.
+     * @param terrain the terrain to set at the given tile. Must be non-null.
+     * @see #setTerrainAt(ImmutablePoint, Terrain)
+     */
+    public void setTerrainAt(int index, Terrain terrain) {
+        indexCheck(index);
         if(terrain == null) {
             throw new IllegalArgumentException("Terrain must be non-null");
         }
         
-        Terrain priorTerrain = getTerrainAt(position);
-        terrainIndex[position.getX()][position.getY()] = terrain;
+        Terrain priorTerrain = getTerrainAt(index);
+        int terrainId = getTerrainId(terrain);
+        stateHash ^= Zobrist.placementKey(index, terrainKeys[terrainIndex[index] & 0xFFFF])
+                ^ Zobrist.placementKey(index, terrainKeys[terrainId]);
+        terrainIndex[index] = (short) terrainId;
+        markModified(index);
+        for(MovementGraph movementGraph : movementGraphs.values()) {
+            movementGraph.updateTile(index);
+        }
+        journal(JOURNAL_TERRAIN, index, priorTerrain);
+        
+        if(suppressingEvents) {
+            return;
+        }
+        if(batchDepth > 0) {
+            if(!batchTerrainOrigins.containsKey(index)) {
+                batchTerrainOrigins.put(index, priorTerrain);
+            }
+            return;
+        }
+        MapChangeListener[] snapshot = listeners;
+        if(snapshot.length > 0) {
+            TerrainChangedEvent event = new TerrainChangedEvent(this, pointAt(index), priorTerrain, terrain);
+            for(MapChangeListener mapChangeListener : snapshot) {
+                mapChangeListener.handleTerrainChanged(event);
+            }
+        }
+    }
+    
+    // Modification Tracking
+    /**
+     * Returns the number of modifications that have been made to this map.
+     * Adding, removing or moving a unit and setting terrain each count as a
+     * modification, even within a batch, so two calls that return the same 
+     * value bracket a period in which the map did not change.
+     * @return the modification count of this map.
+     */
+    public long getModCount() {
+        return modCount;
+    }
+    /**
+     * Returns the modification count as of the most recent modification to
+     * any tile in the given rectangle, or 0 if none of them has been modified.
+     * Modifications are tracked per {@link #REGION_SIZE} square region, so 
+     * modifications to tiles just outside the rectangle may also be counted.
+     * The rectangle is clipped to the map.
+     * @param minX  the left edge of the rectangle, inclusive.
+     * @param minY  the top edge of the rectangle, inclusive.
+     * @param maxX  the right edge of the rectangle, inclusive.
+     * @param maxY  the bottom edge of the rectangle, inclusive.
+     * @return the modification count of the last change in the rectangle.
+     */
+    public long getLastModified(int minX, int minY, int maxX, int maxY) {
+        int firstColumn = Math.max(0, minX) / REGION_SIZE;
+        int firstRow = Math.max(0, minY) / REGION_SIZE;
+        int lastColumn = Math.min(width - 1, maxX) / REGION_SIZE;
+        int lastRow = Math.min(height - 1, maxY) / REGION_SIZE;
+        long lastModified = 0;
+        for(int row = firstRow; row <= lastRow; row++) {
+            for(int column = firstColumn; column <= lastColumn; column++) {
+                lastModified = Math.max(lastModified, regionStamps[row * regionColumns + column]);
+            }
+        }
+        return lastModified;
+    }
+    
+    // State Hashing
+    /**
+     * Returns a 64-bit Zobrist hash of the terrain and units on this map. 
+     * The hash is kept up to date by every mutation in constant time, so 
+     * this is free to call. Maps in equal states have equal hashes, however
+     * they got there; units are told apart by identity, and terrains by name.
+     * @return the state hash of this map.
+     * @see #recomputeStateHash()
+     */
+    @Override
+    public long stateHash() {
+        return stateHash;
+    }
+    /**
+     * Computes the state hash of this map from scratch by scanning every 
+     * tile. It always equals {@link #stateHash()}; it exists to check that.
+     * @return the state hash of this map, recomputed.
+     */
+    public long recomputeStateHash() {
+        long hash = 0;
+        for(int index = 0; index < terrainIndex.length; index++) {
+            hash ^= Zobrist.placementKey(index, terrainKeys[terrainIndex[index] & 0xFFFF]);
+            Unit unit = unitIndex[index];
+            if(unit != null) {
+                hash ^= Zobrist.placementKey(index, unit.getHashKey());
+            }
+        }
+        return hash;
+    }
+    
+    // Snapshots
+    /**
+     * Returns an immutable copy of the current terrain and unit placement of
+     * this map. Only regions modified since the previous snapshot are 
+     * copied; the rest are shared with it. If the map has not been modified
+     * since the previous snapshot, that snapshot is returned.
+     * <p>
+     * Like every other method that reads this map, this must be called from
+     * the thread that modifies it. The returned snapshot may then be read 
+     * from any thread.
+     * @return a snapshot of this map's current state.
+     */
+    public MapSnapshot snapshot() {
+        MapSnapshot previous = lastSnapshot;
+        if(previous != null && previous.getModCount() == modCount) {
+            return previous;
+        }
+        
+        short[][] terrainChunks = new short[regionStamps.length][];
+        Unit[][] unitChunks = new Unit[regionStamps.length][];
+        for(int region = 0; region < regionStamps.length; region++) {
+            if(previous != null && regionStamps[region] <= previous.getModCount()) {
+                terrainChunks[region] = previous.getTerrainChunk(region);
+                unitChunks[region] = previous.getUnitChunk(region);
+            }
+            else {
+                terrainChunks[region] = new short[REGION_SIZE * REGION_SIZE];
+                unitChunks[region] = new Unit[REGION_SIZE * REGION_SIZE];
+                copyRegion(region, terrainChunks[region], unitChunks[region]);
+            }
+        }
+        
+        Terrain[] palette;
+        if(previous != null && previous.getPaletteSize() == terrainPalette.size()) {
+            palette = previous.getPalette();
+        }
+        else {
+            palette = terrainPalette.toArray(new Terrain[terrainPalette.size()]);
+        }
+        java.util.Map<Unit, ImmutablePoint> positions;
+        if(previous != null && unitsModCount <= previous.getModCount()) {
+            positions = previous.getUnitPositions();
+        }
+        else {
+            positions = Collections.unmodifiableMap(new LinkedHashMap<>(unitPositions));
+        }
+        
+        // sharing pointChunks races our lazy fills on purpose: points have only
+        // final fields, and a snapshot that misses one makes an equal point
+        MapSnapshot snapshot = new MapSnapshot(width, height, modCount, stateHash, pointChunks, 
+                palette, terrainChunks, unitChunks, positions);
+        lastSnapshot = snapshot;
+        return snapshot;
+    }
+    /**
+     * Returns the most recent snapshot taken of this map, or null if none has
+     * been taken. Unlike the rest of this class, this may be called from any
+     * thread, which makes it a simple way to hand the writer's latest state
+     * to readers.
+     * @return the latest snapshot of this map. May be null.
+     */
+    public MapSnapshot getLastSnapshot() {
+        return lastSnapshot;
+    }
+    
+    // Batches
+    /**
+     * Begins a batch of changes. Until the matching call to {@link #endBatch()},
+     * changes to this map take effect immediately but no events are sent. 
+     * When the outermost batch ends, listeners are sent a single 
+     * {@link MapBatchEvent} describing the net effect of every change made 
+     * during it. Batches may be nested.
+     * <p>
+     * Callers should end the batch in a finally block, since events for the 
+     * whole batch are withheld until it ends.
+     */
+    public void beginBatch() {
+        batchDepth++;
+    }
+    /**
+     * Ends the innermost open batch. If this ends the outermost batch and 
+     * the batch changed the map, listeners are sent its {@link MapBatchEvent}.
+     * @throws IllegalStateException if no batch is open.
+     */
+    public void endBatch() {
+        if(batchDepth == 0) {
+            throw new IllegalStateException("Attempting to end a batch that was never begun.");
+        }
+        batchDepth--;
+        if(batchDepth > 0) {
+            return;
+        }
         
-        for(MapChangeListener mapChangeListener : getMapChangeListeners()) {
-            mapChangeListener.handleTerrainChanged(new TerrainChangedEvent(this, position, priorTerrain, terrain));
+        MapChangeListener[] snapshot = listeners;
+        try {
+            if(snapshot.length > 0) {
+                MapBatchEvent event = createBatchEvent();
+                if(!event.isEmpty()) {
+                    for(MapChangeListener mapChangeListener : snapshot) {
+                        mapChangeListener.handleBatch(event);
+                    }
+                }
+            }
+        } finally {
+            // a throwing listener must not leak this batch into the next one
+            batchUnitOrigins.clear();
+            batchTerrainOrigins.clear();
         }
     }
+    /**
+     * Returns whether a batch is open on this map.
+     * @return true if changes are currently being batched.
+     */
+    public boolean isBatching() {
+        return batchDepth > 0;
+    }
+    
+    // Undo Journal
+    /**
+     * Opens a checkpoint that the map can later be rolled back to. While any
+     * checkpoint is open, every change to the map is recorded in an undo 
+     * journal as the change that would reverse it, so rolling back costs 
+     * time proportional to the number of changes undone rather than the size
+     * of the map. Checkpoints nest; each one is identified by its depth.
+     * <p>
+     * This lets an AI explore a sequence of moves on the real map and undo 
+     * them, instead of copying the map for every position it looks at, and 
+     * lets a player take back their last move.
+     * @return the checkpoint, to pass to {@link #rollbackTo(int)} or
+     * {@link #releaseCheckpoint(int)}.
+     */
+    public int checkpoint() {
+        if(checkpointDepth == checkpoints.length) {
+            checkpoints = Arrays.copyOf(checkpoints, checkpointDepth * 2);
+        }
+        checkpoints[checkpointDepth++] = journalSize;
+        return checkpointDepth;
+    }
+    /**
+     * Undoes every change made since the given checkpoint was opened, newest
+     * first, and closes it along with any checkpoints opened after it. The 
+     * undoing changes notify listeners like any others, unless events are 
+     * being suppressed.
+     * @param checkpoint  an open checkpoint, as returned by 
+     * {@link #checkpoint()}.
+     * @throws IllegalArgumentException if the checkpoint is not open.
+     */
+    public void rollbackTo(int checkpoint) {
+        checkpointCheck(checkpoint);
+        int target = checkpoints[checkpoint - 1];
+        rollingBack = true;
+        try {
+            while(journalSize > target) {
+                journalSize--;
+                int tile = journalTiles[journalSize];
+                Object subject = journalSubjects[journalSize];
+                journalSubjects[journalSize] = null;
+                switch(journalKinds[journalSize]) {
+                    case JOURNAL_ADD:
+                        removeUnit((Unit) subject);
+                        break;
+                    case JOURNAL_REMOVE:
+                        addUnit(tile, (Unit) subject);
+                        break;
+                    case JOURNAL_MOVE:
+                        moveUnitTo(tile, (Unit) subject);
+                        break;
+                    default:
+                        setTerrainAt(tile, (Terrain) subject);
+                }
+            }
+        } finally {
+            rollingBack = false;
+        }
+        checkpointDepth = checkpoint - 1;
+        if(checkpointDepth == 0) {
+            clearJournal();
+        }
+    }
+    /**
+     * Closes the given checkpoint and any opened after it, keeping the 
+     * changes made since. The changes can still be undone by rolling back to
+     * an enclosing checkpoint. Once the outermost checkpoint is closed, the 
+     * journal is emptied and changes stop being recorded.
+     * @param checkpoint  an open checkpoint, as returned by 
+     * {@link #checkpoint()}.
+     * @throws IllegalArgumentException if the checkpoint is not open.
+     */
+    public void releaseCheckpoint(int checkpoint) {
+        checkpointCheck(checkpoint);
+        checkpointDepth = checkpoint - 1;
+        if(checkpointDepth == 0) {
+            clearJournal();
+        }
+    }
+    /**
+     * Returns the number of checkpoints currently open.
+     * @return the checkpoint depth, 0 if changes are not being journaled.
+     */
+    public int getCheckpointDepth() {
+        return checkpointDepth;
+    }
+    /**
+     * Returns the number of changes recorded in the undo journal.
+     * @return the size of the undo journal.
+     */
+    public int getJournalSize() {
+        return journalSize;
+    }
+    
+    /**
+     * Sets whether changes to this map notify listeners. While events are 
+     * suppressed, changes are neither sent nor held for a batch, which makes
+     * trying out moves during an AI search as cheap as possible.
+     * <p>
+     * Listeners miss every change made while events are suppressed, so the 
+     * map must be rolled back to the state its listeners last saw before 
+     * events are turned back on. Modification tracking and the state hash 
+     * are unaffected.
+     * @param suppressingEvents  true to stop notifying listeners.
+     */
+    public void setSuppressingEvents(boolean suppressingEvents) {
+        this.suppressingEvents = suppressingEvents;
+    }
+    /**
+     * Returns whether changes to this map are currently kept from listeners.
+     * @return true if events are suppressed.
+     */
+    public boolean isSuppressingEvents() {
+        return suppressingEvents;
+    }
     
     // Listener Accessors and Mutators
     /**
      * Registers the given listener to receive events when the map is altered.
+     * Listeners are notified in the order they were registered. A listener 
+     * registered more than once is notified once per registration. Null 
+     * listeners are ignored.
      * @param listener the listener to register.
      */
-    public void addMapChangeListener(MapChangeListener listener) {
-        listeners.add(MapChangeListener.class, listener);
+    public synchronized void addMapChangeListener(MapChangeListener listener) {
+        if(listener == null) {
+            return;
+        }
+        MapChangeListener[] snapshot = listeners;
+        MapChangeListener[] updated = Arrays.copyOf(snapshot, snapshot.length + 1);
+        updated[snapshot.length] = listener;
+        listeners = updated;
     }
     /**
      * Unregisters the given listener from receiving events when the map is altered.
+     * If the listener was registered more than once, only its most recent 
+     * registration is removed.
      * @param listener the listener to unregister.
      */
-    public void removeMapChangeListener(MapChangeListener listener) {
-        listeners.remove(MapChangeListener.class, listener);
+    public synchronized void removeMapChangeListener(MapChangeListener listener) {
+        MapChangeListener[] snapshot = listeners;
+        for(int i = snapshot.length - 1; i >= 0; i--) {
+            if(snapshot[i] == listener) {
+                MapChangeListener[] updated = new MapChangeListener[snapshot.length - 1];
+                System.arraycopy(snapshot, 0, updated, 0, i);
+                System.arraycopy(snapshot, i + 1, updated, i, updated.length - i);
+                listeners = updated.length == 0 ? NO_LISTENERS : updated;
+                return;
+            }
+        }
     }
+    
     /**
-     * Returns an array of this Map's MapChangeListeners. 
-     * @return  this map's MapChangeListeners.
+     * Counts a modification to the tile with the given index.
      */
-    private MapChangeListener[] getMapChangeListeners() {
-        return listeners.getListeners(MapChangeListener.class);
+    private void markModified(int index) {
+        modCount++;
+        stampRegionOf(index);
     }
-    
-    private void setUnitAt(ImmutablePoint position, Unit unit) {
-        boundsCheck(position);
+    /**
+     * Counts a single modification to the tiles with the given indices.
+     */
+    private void markModified(int firstIndex, int secondIndex) {
+        modCount++;
+        stampRegionOf(firstIndex);
+        stampRegionOf(secondIndex);
+    }
+    /**
+     * Records a change in the undo journal if a checkpoint is open.
+     */
+    private void journal(byte kind, int tile, Object subject) {
+        if(checkpointDepth == 0 || rollingBack) {
+            return;
+        }
+        if(journalSize == journalKinds.length) {
+            int capacity = journalSize * 2;
+            journalKinds = Arrays.copyOf(journalKinds, capacity);
+            journalTiles = Arrays.copyOf(journalTiles, capacity);
+            journalSubjects = Arrays.copyOf(journalSubjects, capacity);
+        }
+        journalKinds[journalSize] = kind;
+        journalTiles[journalSize] = tile;
+        journalSubjects[journalSize] = subject;
+        journalSize++;
+    }
+    private void clearJournal() {
+        Arrays.fill(journalSubjects, 0, journalSize, null);
+        journalSize = 0;
+    }
+    /**
+     * Copies the tiles of the given region into snapshot chunks.
+     */
+    private void copyRegion(int region, short[] terrainChunk, Unit[] unitChunk) {
+        int regionX = (region % regionColumns) * REGION_SIZE;
+        int regionY = (region / regionColumns) * REGION_SIZE;
+        int rowLength = Math.min(REGION_SIZE, width - regionX);
+        int rowCount = Math.min(REGION_SIZE, height - regionY);
+        for(int row = 0; row < rowCount; row++) {
+            int from = (regionY + row) * width + regionX;
+            System.arraycopy(terrainIndex, from, terrainChunk, row * REGION_SIZE, rowLength);
+            System.arraycopy(unitIndex, from, unitChunk, row * REGION_SIZE, rowLength);
+        }
+    }
+    private void stampRegionOf(int index) {
+        int column = (index % width) / REGION_SIZE;
+        int row = (index / width) / REGION_SIZE;
+        regionStamps[row * regionColumns + column] = modCount;
+    }
+    /**
+     * Records where the given unit was before the current batch, unless it 
+     * has already been changed in this batch.
+     */
+    private void recordUnitOrigin(Unit unit, ImmutablePoint origin) {
+        if(!batchUnitOrigins.containsKey(unit)) {
+            batchUnitOrigins.put(unit, origin);
+        }
+    }
+    /**
+     * Compares the state of every unit and tile changed in the current batch
+     * against its state at the start of the batch.
+     */
+    private MapBatchEvent createBatchEvent() {
+        List<UnitAddedEvent> unitsAdded = new ArrayList<>();
+        List<UnitRemovedEvent> unitsRemoved = new ArrayList<>();
+        List<UnitMovedEvent> unitsMoved = new ArrayList<>();
+        for(java.util.Map.Entry<Unit, ImmutablePoint> entry : batchUnitOrigins.entrySet()) {
+            Unit unit = entry.getKey();
+            ImmutablePoint origin = entry.getValue();
+            ImmutablePoint position = unitPositions.get(unit);
+            if(origin == null && position != null) {
+                unitsAdded.add(new UnitAddedEvent(this, unit, position));
+            }
+            else if(origin != null && position == null) {
+                unitsRemoved.add(new UnitRemovedEvent(this, unit, origin));
+            }
+            else if(origin != null && !origin.equals(position)) {
+                unitsMoved.add(new UnitMovedEvent(this, unit, origin, position));
+            }
+        }
+        List<TerrainChangedEvent> terrainChanges = new ArrayList<>();
+        for(java.util.Map.Entry<Integer, Terrain> entry : batchTerrainOrigins.entrySet()) {
+            int index = entry.getKey();
+            Terrain priorTerrain = entry.getValue();
+            Terrain terrain = getTerrainAt(index);
+            if(!priorTerrain.equals(terrain)) {
+                terrainChanges.add(new TerrainChangedEvent(this, pointAt(index), priorTerrain, terrain));
+            }
+        }
+        return new MapBatchEvent(this, unitsAdded, unitsRemoved, unitsMoved, terrainChanges);
+    }
+    /**
+     * Places the given unit at the tile with the given index, keeping the 
+     * position index in sync. The unit must not already be on the map.
+     */
+    private void setUnitAt(int index, Unit unit) {
         if(containsUnit(unit)) {
             throw new IllegalArgumentException("Attempting to set a unit at multiple positions.");
         }
-        unitIndex[position.getX()][position.getY()] = unit;
+        unitIndex[index] = unit;
+        stateHash ^= Zobrist.placementKey(index, unit.getHashKey());
+        int word = occupancyWordOf(index);
+        long bit = 1L << (index % width);
+        occupancy[word] |= bit;
+        factionOccupancy[unit.getFaction().ordinal()][word] |= bit;
+        unitPositions.put(unit, pointAt(index));
+        factionMembers.get(unit.getFaction()).add(unit);
+    }
+    /**
+     * Removes whatever unit is at the tile with the given index, keeping the 
+     * position index in sync.
+     */
+    private void clearUnitAt(int index) {
+        Unit unit = unitIndex[index];
+        if(unit != null) {
+            unitIndex[index] = null;
+            stateHash ^= Zobrist.placementKey(index, unit.getHashKey());
+            int word = occupancyWordOf(index);
+            long bit = 1L << (index % width);
+            occupancy[word] &= ~bit;
+            factionOccupancy[unit.getFaction().ordinal()][word] &= ~bit;
+            unitPositions.remove(unit);
+            factionMembers.get(unit.getFaction()).remove(unit);
+        }
+    }
+    /**
+     * Returns the palette id of the given terrain, adding it to the palette
+     * if this is the first time it has been placed on the map.
+     */
+    private int getTerrainId(Terrain terrain) {
+        Integer terrainId = terrainIds.get(terrain);
+        if(terrainId == null) {
+            if(terrainPalette.size() >= MAX_PALETTE_SIZE) {
+                throw new IllegalStateException("Map terrain palette is full: "
+                        + "a map may contain at most " + MAX_PALETTE_SIZE 
+                        + " distinct terrains.");
+            }
+            terrainId = terrainPalette.size();
+            terrainPalette.add(terrain);
+            if(terrainId == terrainKeys.length) {
+                terrainKeys = Arrays.copyOf(terrainKeys, terrainId * 2);
+            }
+            terrainKeys[terrainId] = Zobrist.terrainKey(terrain);
+            terrainIds.put(terrain, terrainId);
+        }
+        return terrainId;
+    }
+    /**
+     * Returns the canonical point of the tile with the given index, which
+     * must be valid, creating it and its chunk if need be.
+     */
+    private ImmutablePoint pointAt(int index) {
+        int x = index % width;
+        int y = index / width;
+        int region = (y / REGION_SIZE) * regionColumns + x / REGION_SIZE;
+        ImmutablePoint[] chunk = pointChunks[region];
+        if(chunk == null) {
+            chunk = new ImmutablePoint[REGION_SIZE * REGION_SIZE];
+            pointChunks[region] = chunk;
+        }
+        int cell = (y % REGION_SIZE) * REGION_SIZE + x % REGION_SIZE;
+        ImmutablePoint point = chunk[cell];
+        if(point == null) {
+            point = new ImmutablePoint(x, y);
+            chunk[cell] = point;
+        }
+        return point;
+    }
+    /**
+     * Returns the word of occupancy holding the bit of the given tile. The
+     * bit within the word is the tile's x coordinate, modulo 64.
+     */
+    private int occupancyWordOf(int index) {
+        return (index / width) * occupancyStride + (index % width) / Long.SIZE;
+    }
+    /**
+     * Visits the units in a single row between the given x coordinates, 
+     * inclusive, which must be within the map.
+     * @return false if the visitor stopped the query.
+     */
+    private boolean visitRow(int y, int fromX, int toX, UnitVisitor visitor) {
+        int rowStart = y * width;
+        int firstWord = fromX / Long.SIZE;
+        int lastWord = toX / Long.SIZE;
+        for(int word = firstWord; word <= lastWord; word++) {
+            long bits = occupancy[y * occupancyStride + word];
+            if(word == firstWord) {
+                bits &= -1L << fromX;
+            }
+            if(word == lastWord) {
+                bits &= -1L >>> (Long.SIZE - 1 - toX % Long.SIZE);
+            }
+            while(bits != 0) {
+                int index = rowStart + word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                if(!visitor.visit(unitIndex[index], index)) {
+                    return false;
+                }
+                bits &= bits - 1;
+            }
+        }
+        return true;
+    }
+    /**
+     * Checks the arguments of a radius query, and shrinks radii too large to
+     * matter so that center +/- radius cannot overflow.
+     */
+    private int clampRadius(ImmutablePoint center, int radius) {
+        boundsCheck(center);
+        if(radius < 0) {
+            throw new IllegalArgumentException("Radius must not be negative: " + radius);
+        }
+        return Math.min(radius, width + height);
+    }
+    private void checkpointCheck(int checkpoint) {
+        if(checkpoint < 1 || checkpoint > checkpointDepth) {
+            throw new IllegalArgumentException("Checkpoint is not open: "
+                    + "Checkpoint: " + checkpoint + ", Depth: " + checkpointDepth);
+        }
+    }
+    private void factionCheck(Faction faction) {
+        if(faction == null) {
+            throw new IllegalArgumentException("Faction must be non-null");
+        }
+    }
+    private void visitorCheck(UnitVisitor visitor) {
+        if(visitor == null) {
+            throw new IllegalArgumentException("Visitor must be non-null");
+        }
+    }
+    private void indexCheck(int index) {
+        if(index < 0 || index >= unitIndex.length) {
+            throw new IllegalArgumentException("Tile index out of bounds: "
+                    + "Index: " + index + ", Tile Count: " + unitIndex.length);
+        }
     }
     private void boundsCheck(ImmutablePoint position) {
         if(position == null) {
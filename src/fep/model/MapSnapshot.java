@@ -0,0 +1,240 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.model;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * An immutable copy of the terrain and unit placement of a {@link Map} at
+ * one point in time, taken by {@link Map#snapshot()}.
+ * <p>
+ * A snapshot stores the map in {@link Map#REGION_SIZE} square chunks. When
+ * a map is snapshotted again, every chunk whose region has not been modified
+ * since the previous snapshot is shared with it rather than copied, so the
+ * cost of a snapshot is proportional to the number of changed regions
+ * rather than to the size of the map.
+ * <p>
+ * Since nothing in a snapshot changes after it is created, a snapshot may be
+ * read from any number of threads while the map it came from goes on being
+ * modified. Only the placement of units is captured, however: the units
+ * themselves are shared with the map.
+ * @author Kyle Buzsaki
+ */
+public final class MapSnapshot implements MapView {
+
+    private final int width;
+    private final int height;
+    private final int regionColumns;
+    private final long modCount;
+    private final long stateHash;
+    /**
+     * The canonical points of the map this snapshot was taken from, by 
+     * region. Shared with the map, which fills them in lazily, so this 
+     * snapshot only ever reads them.
+     */
+    private final ImmutablePoint[][] pointChunks;
+    /**
+     * The map's terrain palette as of this snapshot.
+     */
+    private final Terrain[] palette;
+    /**
+     * The palette ids of each region's tiles, by region. Each chunk holds
+     * REGION_SIZE rows of REGION_SIZE tiles; cells past the edge of the map
+     * are unused.
+     */
+    private final short[][] terrainChunks;
+    /**
+     * The units in each region, laid out like terrainChunks.
+     */
+    private final Unit[][] unitChunks;
+    /**
+     * The position of every unit on the map. Unmodifiable.
+     */
+    private final java.util.Map<Unit, ImmutablePoint> unitPositions;
+    private final Set<Unit> units;
+
+    MapSnapshot(int width, int height, long modCount, long stateHash, ImmutablePoint[][] pointChunks,
+            Terrain[] palette, short[][] terrainChunks, Unit[][] unitChunks,
+            java.util.Map<Unit, ImmutablePoint> unitPositions) {
+        this.width = width;
+        this.height = height;
+        this.regionColumns = (width + Map.REGION_SIZE - 1) / Map.REGION_SIZE;
+        this.modCount = modCount;
+        this.stateHash = stateHash;
+        this.pointChunks = pointChunks;
+        this.palette = palette;
+        this.terrainChunks = terrainChunks;
+        this.unitChunks = unitChunks;
+        this.unitPositions = unitPositions;
+        this.units = Collections.unmodifiableSet(unitPositions.keySet());
+    }
+
+    // Dimension Accessors
+    @Override
+    public int getWidth() {
+        return width;
+    }
+    @Override
+    public int getHeight() {
+        return height;
+    }
+    @Override
+    public int getTileCount() {
+        return width * height;
+    }
+    @Override
+    public int indexOf(int x, int y) {
+        if(x < 0 || x >= width || y < 0 || y >= height) {
+            throw new IllegalArgumentException("Position out of bounds: "
+                    + "Position: " + new ImmutablePoint(x, y) + ", Width: "
+                    + width + ", Height: " + height);
+        }
+        return y * width + x;
+    }
+    @Override
+    public int indexOf(ImmutablePoint position) {
+        if(position == null) {
+            throw new IllegalArgumentException("Position must be non-null");
+        }
+        return indexOf(position.getX(), position.getY());
+    }
+    /**
+     * Returns the point of the tile with the given index. This is the map's
+     * canonical point if the map had created it when it was last looked at,
+     * and an equal new point otherwise.
+     * @param index a tile index. Must be a valid index for the map.
+     * @return the point of the tile.
+     */
+    @Override
+    public ImmutablePoint getPoint(int index) {
+        indexCheck(index);
+        int x = index % width;
+        int y = index / width;
+        ImmutablePoint[] chunk = pointChunks[chunkOf(x, y)];
+        ImmutablePoint point = chunk != null ? chunk[cellOf(x, y)] : null;
+        return point != null ? point : new ImmutablePoint(x, y);
+    }
+    /**
+     * Returns the modification count of the map when this snapshot was taken.
+     * Two snapshots of the same map with the same count are identical.
+     * @return the modification count of the map as of this snapshot.
+     */
+    @Override
+    public long getModCount() {
+        return modCount;
+    }
+    /**
+     * Returns the state hash the map had when this snapshot was taken.
+     * @return the state hash of the map as of this snapshot.
+     */
+    @Override
+    public long stateHash() {
+        return stateHash;
+    }
+
+    // Tile Accessors
+    @Override
+    public Unit getUnitAt(int index) {
+        indexCheck(index);
+        int x = index % width;
+        int y = index / width;
+        return unitChunks[chunkOf(x, y)][cellOf(x, y)];
+    }
+    @Override
+    public Unit getUnitAt(ImmutablePoint position) {
+        return getUnitAt(indexOf(position));
+    }
+    @Override
+    public Terrain getTerrainAt(int index) {
+        return palette[getTerrainIdAt(index)];
+    }
+    @Override
+    public Terrain getTerrainAt(ImmutablePoint position) {
+        return getTerrainAt(indexOf(position));
+    }
+    /**
+     * Returns the palette id of the terrain at the tile with the given index.
+     * Ids are those of the map this snapshot was taken from.
+     * @param index a tile index. Must be a valid index for this map.
+     * @return the palette id of the terrain at the given tile.
+     * @see Map#getTerrainIdAt(int)
+     */
+    public int getTerrainIdAt(int index) {
+        indexCheck(index);
+        int x = index % width;
+        int y = index / width;
+        return terrainChunks[chunkOf(x, y)][cellOf(x, y)] & 0xFFFF;
+    }
+    /**
+     * Returns the terrain with the given palette id.
+     * @param terrainId a palette id. Must be less than the palette size.
+     * @return the terrain with the given palette id.
+     * @throws IndexOutOfBoundsException if the id is not in the palette.
+     */
+    public Terrain getPaletteTerrain(int terrainId) {
+        return palette[terrainId];
+    }
+    /**
+     * Returns the number of distinct terrains on the map as of this snapshot.
+     * @return the size of the terrain palette.
+     */
+    public int getPaletteSize() {
+        return palette.length;
+    }
+
+    // Unit Accessors
+    @Override
+    public Set<Unit> getUnits() {
+        return units;
+    }
+    @Override
+    public boolean containsUnit(Unit unit) {
+        return unit != null && unitPositions.containsKey(unit);
+    }
+    @Override
+    public ImmutablePoint getPositionOf(Unit unit) {
+        if(unit == null) {
+            throw new IllegalArgumentException("Unit must be non-null");
+        }
+        ImmutablePoint position = unitPositions.get(unit);
+        if(position == null) {
+            throw new UnitNotFoundException(unit, "Attempting to get the position of a unit not in the snapshot.");
+        }
+        return position;
+    }
+
+    // Structural Sharing
+    /*
+     * These give Map.snapshot() access to the previous snapshot's parts so
+     * that unchanged ones can be shared with the next.
+     */
+    short[] getTerrainChunk(int region) {
+        return terrainChunks[region];
+    }
+    Unit[] getUnitChunk(int region) {
+        return unitChunks[region];
+    }
+    Terrain[] getPalette() {
+        return palette;
+    }
+    java.util.Map<Unit, ImmutablePoint> getUnitPositions() {
+        return unitPositions;
+    }
+
+    // Private Implementation Methods
+    private int chunkOf(int x, int y) {
+        return (y / Map.REGION_SIZE) * regionColumns + x / Map.REGION_SIZE;
+    }
+    private static int cellOf(int x, int y) {
+        return (y % Map.REGION_SIZE) * Map.REGION_SIZE + x % Map.REGION_SIZE;
+    }
+    private void indexCheck(int index) {
+        if(index < 0 || index >= getTileCount()) {
+            throw new IllegalArgumentException("Tile index out of bounds: "
+                    + "Index: " + index + ", Tile Count: " + getTileCount());
+        }
+    }
+
+}
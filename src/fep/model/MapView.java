@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.model;
+
+import java.util.Set;
+
+/**
+ * Read-only access to the terrain and units of a map. Implemented both by
+ * the live, mutable {@link Map} and by its immutable {@link MapSnapshot}s, so
+ * code that only reads a map can be run against either.
+ * <p>
+ * Tiles are indexed in row-major order, so the index of (x, y) is
+ * {@code y * width + x}.
+ * @author Kyle Buzsaki
+ */
+public interface MapView {
+
+    /**
+     * Returns the width of the map in tiles.
+     * @return the width of the map in tiles
+     */
+    public int getWidth();
+    /**
+     * Returns the height of the map in tiles.
+     * @return the height of the map in tiles
+     */
+    public int getHeight();
+    /**
+     * Returns the number of tiles in the map. Valid tile indices range from
+     * 0 (inclusive) to this value (exclusive).
+     * @return the width of the map multiplied by its height.
+     */
+    public int getTileCount();
+    /**
+     * Returns the tile index of the given coordinates.
+     * @param x the x coordinate. Must be within the map's width (exclusive).
+     * @param y the y coordinate. Must be within the map's height (exclusive).
+     * @return the index of the tile at the given coordinates.
+     */
+    public int indexOf(int x, int y);
+    /**
+     * Returns the tile index of the given position.
+     * @param position the position to index. Must be non-null and within
+     * the map's dimensions (exclusive).
+     * @return the index of the tile at the given position.
+     */
+    public int indexOf(ImmutablePoint position);
+    /**
+     * Returns the point of the tile with the given index.
+     * @param index a tile index. Must be a valid index for this map.
+     * @return the point of the tile.
+     */
+    public ImmutablePoint getPoint(int index);
+    /**
+     * Returns the unit at the tile with the given index. Returns null if no
+     * unit is present.
+     * @param index a tile index. Must be a valid index for this map.
+     * @return the unit at the given tile. May be null.
+     */
+    public Unit getUnitAt(int index);
+    /**
+     * Returns the unit at the given position. Returns null if no unit is
+     * present.
+     * @param position the position to check. Must be non-null and within
+     * the map's dimensions (exclusive).
+     * @return the unit at the given position. May be null.
+     */
+    public Unit getUnitAt(ImmutablePoint position);
+    /**
+     * Returns the terrain at the tile with the given index. Guaranteed to be
+     * non-null.
+     * @param index a tile index. Must be a valid index for this map.
+     * @return the terrain at the given tile.
+     */
+    public Terrain getTerrainAt(int index);
+    /**
+     * Returns the terrain at the given position. Guaranteed to be non-null.
+     * @param position the position to check. Must be non-null and within
+     * the map's dimensions (exclusive).
+     * @return the terrain at the given position.
+     */
+    public Terrain getTerrainAt(ImmutablePoint position);
+    /**
+     * Returns all of the units on the map. Guaranteed to be non-null, have
+     * no null elements and be unmodifiable.
+     * @return the units on the map.
+     */
+    public Set<Unit> getUnits();
+    /**
+     * Returns whether or not the given unit is present in the map.
+     * In the case of a null unit, always returns false.
+     * @param unit the unit to check for. May be null.
+     * @return true if the unit is present in the map.
+     */
+    public boolean containsUnit(Unit unit);
+    /**
+     * Returns the position of the given unit on the map.
+     * Guaranteed to be non-null.
+     * @param unit the unit to check the position of. Must be non-null.
+     * @return the position of the given unit on the map.
+     * @throws UnitNotFoundException if the unit is not present in the map.
+     */
+    public ImmutablePoint getPositionOf(Unit unit);
+    /**
+     * Returns the number of modifications that had been made to the map as
+     * of the state this view shows.
+     * @return the modification count of the map.
+     */
+    public long getModCount();
+    /**
+     * Returns a 64-bit hash of the terrain and units of the map as of the
+     * state this view shows. Views of equal states have equal hashes, 
+     * whatever order the changes that led to them were made in, and views
+     * of different states have different hashes with overwhelming 
+     * probability.
+     * @return the state hash of the map.
+     */
+    public long stateHash();
+
+}
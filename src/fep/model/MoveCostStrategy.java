@@ -11,6 +11,13 @@ import java.util.List;
  * @author Kyle Buzsaki
  */
 public interface MoveCostStrategy {
+    
+    /**
+     * The cost returned for terrain that cannot be moved over at all.
+     * Callers summing costs must check for this value (or compare against 
+     * their remaining budget) rather than adding it, since it would overflow.
+     */
+    int IMPASSABLE = Integer.MAX_VALUE;
 
     // NOTE: potentially switch to operating on Tile and List<Tile>? 
     // would allow for movement cost that changes depending on the angle of approach
@@ -0,0 +1,446 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The set of tiles a unit can reach from a starting position with a given
+ * movement budget, along with the cheapest way to reach each of them.
+ * A MoveRange is computed once by {@link #calculate(Map, ImmutablePoint,
+ * MoveCostStrategy, int, AllegianceStrategy) calculate} and records the
+ * predecessor of every reachable tile, so the {@link Path} to any reachable
+ * tile can be rebuilt without searching again.
+ * <p>
+ * Occupied tiles are handled as in FE: the moving unit may pass through tiles
+ * held by its allies (as decided by an {@link AllegianceStrategy}), but not
+ * end its move on them. Tiles held by non-allies block movement entirely.
+ * <p>
+ * This class is immutable. It reflects the state of the map at the time it
+ * was calculated, and is not updated when the map changes.
+ * @author Kyle Buzsaki
+ */
+public final class MoveRange {
+
+    /**
+     * Marks a window cell that has not been reached.
+     */
+    private static final int UNREACHED = -1;
+
+    private final Map map;
+    /**
+     * The state of the map the search read: the map itself, or a snapshot
+     * of it.
+     */
+    private final MapView view;
+    private final ImmutablePoint origin;
+    private final int movement;
+
+    /*
+     * Searches are confined to the square window of tiles within movement
+     * of the origin (clipped to the map), since every step costs at least 1.
+     * All per-tile arrays below are indexed by window cell rather than by map
+     * tile index to keep them small.
+     */
+    private final int windowX;
+    private final int windowY;
+    private final int windowWidth;
+    private final int windowHeight;
+    /**
+     * The cheapest known cost to reach each window cell, or UNREACHED.
+     */
+    private final int[] costs;
+    /**
+     * The window cell each reached cell was entered from, or UNREACHED for
+     * the origin and unreached cells.
+     */
+    private final int[] predecessors;
+    /**
+     * Whether the moving unit may end its move at each window cell.
+     */
+    private final boolean[] endable;
+    /**
+     * The map tile indices of every reachable tile, in order of increasing cost.
+     */
+    private final int[] reachableTiles;
+
+    private MoveRange(MapView view, MovementGraph movementGraph, ImmutablePoint origin,
+            int movement, int windowX, int windowY, int windowWidth, int windowHeight,
+            AllegianceStrategy allegianceStrategy) {
+        this.map = movementGraph.getMap();
+        this.view = view;
+        this.origin = origin;
+        this.movement = movement;
+        this.windowX = windowX;
+        this.windowY = windowY;
+        this.windowWidth = windowWidth;
+        this.windowHeight = windowHeight;
+
+        int cellCount = windowWidth * windowHeight;
+        this.costs = new int[cellCount];
+        this.predecessors = new int[cellCount];
+        this.endable = new boolean[cellCount];
+        Arrays.fill(costs, UNREACHED);
+        Arrays.fill(predecessors, UNREACHED);
+
+        int[] reachable = new int[cellCount];
+        int reachableCount = search(reachable, movementGraph, allegianceStrategy);
+        this.reachableTiles = Arrays.copyOf(reachable, reachableCount);
+    }
+
+    /**
+     * Calculates the tiles reachable from the given origin. The unit at the
+     * origin, if any, is treated as the moving unit: its allies can be passed
+     * through and all other units block. If there is no unit at the origin,
+     * units never block but may still not be ended on.
+     * @param map  the map to move on. Must be non-null.
+     * @param origin  the starting position. Must be non-null and within the
+     * map's dimensions (exclusive).
+     * @param moveCostStrategy  determines the cost of entering each tile.
+     * Must be non-null. Costs below 1 are treated as 1, and costs above
+     * {@link MovementGraph#MAX_ENTRY_COST} as impassable.
+     * @param movement  the total movement cost that may be spent. Must not
+     * be negative.
+     * @param allegianceStrategy  decides which occupants can be passed
+     * through. Must be non-null.
+     * @return  the move range from the given origin.
+     */
+    public static MoveRange calculate(Map map, ImmutablePoint origin,
+            MoveCostStrategy moveCostStrategy, int movement,
+            AllegianceStrategy allegianceStrategy) {
+        if(map == null) {
+            throw new IllegalArgumentException("Map must be non-null");
+        }
+        if(moveCostStrategy == null) {
+            throw new IllegalArgumentException("Strategies must be non-null");
+        }
+        return calculate(map, map.getMovementGraph(moveCostStrategy), origin,
+                movement, allegianceStrategy);
+    }
+
+    /**
+     * Calculates the tiles reachable from the given origin on a view of a
+     * map, such as a {@link MapSnapshot}, using an already compiled movement
+     * graph. Nothing but the view and the graph is read, so a range can be
+     * calculated on a snapshot and a {@link MovementGraph#copy() copy} of a
+     * graph from any thread while the map itself goes on changing.
+     * @param view  the state of the map to move on. Must be non-null.
+     * @param movementGraph  the terrain of the view compiled for the moving
+     * unit. Must be non-null and compiled from a map with the view's
+     * dimensions.
+     * @param origin  the starting position. Must be non-null and within the
+     * view's dimensions (exclusive).
+     * @param movement  the total movement cost that may be spent. Must not
+     * be negative.
+     * @param allegianceStrategy  decides which occupants can be passed
+     * through. Must be non-null.
+     * @return  the move range from the given origin.
+     * @see #calculate(Map, ImmutablePoint, MoveCostStrategy, int, AllegianceStrategy)
+     */
+    public static MoveRange calculate(MapView view, MovementGraph movementGraph,
+            ImmutablePoint origin, int movement, AllegianceStrategy allegianceStrategy) {
+        if(view == null || movementGraph == null) {
+            throw new IllegalArgumentException("View and movement graph must be non-null");
+        }
+        Map graphMap = movementGraph.getMap();
+        if(graphMap.getWidth() != view.getWidth() || graphMap.getHeight() != view.getHeight()) {
+            throw new IllegalArgumentException("Movement graph does not match the view's dimensions");
+        }
+        view.indexOf(origin); // bounds checks the origin
+        if(allegianceStrategy == null) {
+            throw new IllegalArgumentException("Strategies must be non-null");
+        }
+        if(movement < 0) {
+            throw new IllegalArgumentException("Movement must not be negative: " + movement);
+        }
+
+        // clamp first so that origin +/- radius cannot overflow
+        int radius = Math.min(movement, Math.max(view.getWidth(), view.getHeight()));
+        int minX = Math.max(0, origin.getX() - radius);
+        int minY = Math.max(0, origin.getY() - radius);
+        int maxX = Math.min(view.getWidth() - 1, origin.getX() + radius);
+        int maxY = Math.min(view.getHeight() - 1, origin.getY() + radius);
+
+        return new MoveRange(view, movementGraph, origin, movement, minX, minY,
+                maxX - minX + 1, maxY - minY + 1, allegianceStrategy);
+    }
+
+    /**
+     * Calculates the tiles reachable by the given unit from its current
+     * position.
+     * @param unit  the unit to move. Must be non-null and on a map.
+     * @param moveCostStrategy  determines the cost of entering each tile.
+     * Must be non-null.
+     * @param movement  the total movement cost that may be spent. Must not
+     * be negative.
+     * @param allegianceStrategy  decides which occupants can be passed
+     * through. Must be non-null.
+     * @return  the unit's move range.
+     * @see #calculate(Map, ImmutablePoint, MoveCostStrategy, int, AllegianceStrategy)
+     */
+    public static MoveRange calculate(Unit unit, MoveCostStrategy moveCostStrategy,
+            int movement, AllegianceStrategy allegianceStrategy) {
+        if(unit == null) {
+            throw new IllegalArgumentException("Unit must be non-null");
+        }
+        return calculate(unit.getMap(), unit.getPosition(), moveCostStrategy,
+                movement, allegianceStrategy);
+    }
+
+    // Metadata Accessors
+    /**
+     * Returns the map this range was calculated on. For a range calculated
+     * on a snapshot, this is the map the snapshot was taken from.
+     * @return the map this range was calculated on.
+     */
+    public Map getMap() {
+        return map;
+    }
+    /**
+     * Returns the position this range was calculated from.
+     * @return the origin of this range.
+     */
+    public ImmutablePoint getOrigin() {
+        return origin;
+    }
+    /**
+     * Returns the movement budget this range was calculated with.
+     * @return the movement budget of this range.
+     */
+    public int getMovement() {
+        return movement;
+    }
+
+    // Point Accessors
+    /**
+     * Returns true if the given position can be reached within the movement
+     * budget. Reachable tiles include those occupied by allies, which can be
+     * moved through but not ended on.
+     * @param position  the position to check. Must be non-null and within
+     * the map's dimensions (exclusive).
+     * @return  true if the position is reachable.
+     */
+    public boolean isReachable(ImmutablePoint position) {
+        return isReachable(view.indexOf(position));
+    }
+    /**
+     * Returns true if the tile with the given index can be reached within the
+     * movement budget.
+     * @param tileIndex  a tile index of the map this range was calculated on.
+     * @return  true if the tile is reachable.
+     * @see #isReachable(ImmutablePoint)
+     */
+    public boolean isReachable(int tileIndex) {
+        int cell = toCell(tileIndex);
+        return cell != UNREACHED && costs[cell] != UNREACHED;
+    }
+    /**
+     * Returns true if the moving unit may end its move at the given position.
+     * This is true for reachable tiles that are empty or held by the moving
+     * unit itself.
+     * @param position  the position to check. Must be non-null and within
+     * the map's dimensions (exclusive).
+     * @return  true if the moving unit may end its move at the position.
+     */
+    public boolean canEndAt(ImmutablePoint position) {
+        return canEndAt(view.indexOf(position));
+    }
+    /**
+     * Returns true if the moving unit may end its move at the tile with the
+     * given index.
+     * @param tileIndex  a tile index of the map this range was calculated on.
+     * @return  true if the moving unit may end its move at the tile.
+     * @see #canEndAt(ImmutablePoint)
+     */
+    public boolean canEndAt(int tileIndex) {
+        int cell = toCell(tileIndex);
+        return cell != UNREACHED && endable[cell];
+    }
+    /**
+     * Returns the cheapest cost of moving from the origin to the given
+     * position, or {@link MoveCostStrategy#IMPASSABLE} if it is not reachable.
+     * @param position  the position to check. Must be non-null and within
+     * the map's dimensions (exclusive).
+     * @return  the cost of reaching the position.
+     */
+    public int getCostTo(ImmutablePoint position) {
+        return getCostTo(view.indexOf(position));
+    }
+    /**
+     * Returns the cheapest cost of moving from the origin to the tile with the
+     * given index, or {@link MoveCostStrategy#IMPASSABLE} if it is not reachable.
+     * @param tileIndex  a tile index of the map this range was calculated on.
+     * @return  the cost of reaching the tile.
+     */
+    public int getCostTo(int tileIndex) {
+        int cell = toCell(tileIndex);
+        if(cell == UNREACHED || costs[cell] == UNREACHED) {
+            return MoveCostStrategy.IMPASSABLE;
+        }
+        return costs[cell];
+    }
+    /**
+     * Returns the tile index of the tile that the cheapest path to the given
+     * tile passes through just before reaching it. Returns -1 for the origin
+     * and for unreachable tiles.
+     * @param tileIndex  a tile index of the map this range was calculated on.
+     * @return  the tile index of the given tile's predecessor, or -1.
+     */
+    public int getPredecessorOf(int tileIndex) {
+        int cell = toCell(tileIndex);
+        if(cell == UNREACHED || predecessors[cell] == UNREACHED) {
+            return -1;
+        }
+        return toTileIndex(predecessors[cell]);
+    }
+    /**
+     * Returns the cheapest path from the origin to the given position. The
+     * path starts at the origin and ends at the given position.
+     * @param position  the destination. Must be reachable.
+     * @return  the cheapest path to the destination.
+     * @throws IllegalArgumentException if the position is not reachable.
+     */
+    public Path getPathTo(ImmutablePoint position) {
+        int tileIndex = view.indexOf(position);
+        if(!isReachable(tileIndex)) {
+            throw new IllegalArgumentException("Attempting to get a path to an "
+                    + "unreachable position: " + position);
+        }
+
+        int length = 0;
+        for(int cell = toCell(tileIndex); cell != UNREACHED; cell = predecessors[cell]) {
+            length++;
+        }
+        ImmutablePoint[] points = new ImmutablePoint[length];
+        for(int cell = toCell(tileIndex); cell != UNREACHED; cell = predecessors[cell]) {
+            points[--length] = view.getPoint(toTileIndex(cell));
+        }
+        return Path.createPath(Arrays.asList(points));
+    }
+
+    // Collection Accessors
+    /**
+     * Returns the number of reachable tiles, including the origin.
+     * @return the number of reachable tiles.
+     */
+    public int getReachableCount() {
+        return reachableTiles.length;
+    }
+    /**
+     * Returns the tile indices of every reachable tile, ordered by increasing
+     * cost. The returned array is a copy.
+     * @return the tile indices of every reachable tile.
+     */
+    public int[] getReachableTiles() {
+        return reachableTiles.clone();
+    }
+    /**
+     * Returns the positions of every reachable tile, ordered by increasing
+     * cost. The returned list is unmodifiable.
+     * @return the positions of every reachable tile.
+     */
+    public List<ImmutablePoint> getReachablePoints() {
+        List<ImmutablePoint> points = new ArrayList<>(reachableTiles.length);
+        for(int tileIndex : reachableTiles) {
+            points.add(view.getPoint(tileIndex));
+        }
+        return Collections.unmodifiableList(points);
+    }
+
+    // Private Implementation Methods
+    /**
+     * Runs Dial's algorithm outward from the origin, filling in costs,
+     * predecessors and endable. Settled tile indices are written to reachable
+     * in order, and the number settled is returned.
+     */
+    private int search(int[] reachable, MovementGraph movementGraph,
+            AllegianceStrategy allegianceStrategy) {
+        int originIndex = view.indexOf(origin);
+        Unit mover = view.getUnitAt(originIndex);
+        int mapWidth = view.getWidth();
+        BucketQueue queue = new BucketQueue(movementGraph.getMaxEntryCost(movement));
+        int settledCount = 0;
+
+        int originCell = toCell(originIndex);
+        costs[originCell] = 0;
+        queue.add(originCell, 0);
+
+        while(!queue.isEmpty()) {
+            int cell = queue.poll();
+            int cost = queue.getCurrentPriority();
+            if(cost != costs[cell]) {
+                // stale entry; the cell was settled more cheaply already
+                continue;
+            }
+            int cellX = cell % windowWidth;
+            int cellY = cell / windowWidth;
+            int tileIndex = (windowY + cellY) * mapWidth + windowX + cellX;
+
+            Unit occupant = view.getUnitAt(tileIndex);
+            endable[cell] = occupant == null || occupant == mover;
+            reachable[settledCount++] = tileIndex;
+
+            for(int direction = 0; direction < MovementGraph.DIRECTION_COUNT; direction++) {
+                int neighborTile = movementGraph.getNeighbor(tileIndex, direction);
+                if(neighborTile == -1) {
+                    continue;
+                }
+                int neighborX = cellX + MovementGraph.NEIGHBOR_X[direction];
+                int neighborY = cellY + MovementGraph.NEIGHBOR_Y[direction];
+                if(neighborX < 0 || neighborX >= windowWidth
+                        || neighborY < 0 || neighborY >= windowHeight) {
+                    continue;
+                }
+                int neighborCell = neighborY * windowWidth + neighborX;
+
+                int stepCost = movementGraph.getEntryCost(neighborTile);
+                // compare against the remaining budget so IMPASSABLE can't overflow
+                if(stepCost > movement - cost) {
+                    continue;
+                }
+                int neighborCost = cost + stepCost;
+                int knownCost = costs[neighborCell];
+                if(knownCost != UNREACHED && knownCost <= neighborCost) {
+                    continue;
+                }
+
+                Unit neighborOccupant = view.getUnitAt(neighborTile);
+                if(neighborOccupant != null && mover != null && neighborOccupant != mover
+                        && !allegianceStrategy.areAllied(mover, neighborOccupant)) {
+                    continue;
+                }
+
+                costs[neighborCell] = neighborCost;
+                predecessors[neighborCell] = cell;
+                queue.add(neighborCell, neighborCost);
+            }
+        }
+
+        return settledCount;
+    }
+
+    /**
+     * Converts a map tile index to a window cell, or UNREACHED if the tile
+     * lies outside the window.
+     */
+    private int toCell(int tileIndex) {
+        if(tileIndex < 0 || tileIndex >= view.getTileCount()) {
+            throw new IllegalArgumentException("Tile index out of bounds: "
+                    + "Index: " + tileIndex + ", Tile Count: " + view.getTileCount());
+        }
+        int x = tileIndex % view.getWidth() - windowX;
+        int y = tileIndex / view.getWidth() - windowY;
+        if(x < 0 || x >= windowWidth || y < 0 || y >= windowHeight) {
+            return UNREACHED;
+        }
+        return y * windowWidth + x;
+    }
+    private int toTileIndex(int cell) {
+        return view.indexOf(windowX + cell % windowWidth, windowY + cell / windowWidth);
+    }
+
+}
@@ -6,9 +6,6 @@ package fep.model;
 import java.util.List;
 import static fep.model.DefaultTerrainBehavior.*;
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
 
 /**
  * Enumerates the types of unit movement in FEP. Each unit movement type is a
@@ -31,30 +28,28 @@ public enum MoveType implements MoveCostStrategy {
     MAGE,
     FLYER;
     
-    private static final int IMPASSABLE = Integer.MAX_VALUE;
-    private static final java.util.Map<MoveType, java.util.Map<TerrainBehavior, Integer>> moveCostTable;
+    /**
+     * Dense table of move costs, indexed first by MoveType ordinal and then by
+     * DefaultTerrainBehavior ordinal. Looking up a cost is two array loads
+     * with no hashing or unboxing.
+     */
+    private static final int[][] moveCostTable;
     
-    private static void setMapEntries(java.util.Map<MoveType, java.util.Map<TerrainBehavior, Integer>> map,
-            TerrainBehavior terrain, int value, MoveType... moveTypes) {
+    private static void setMapEntries(int[][] table, DefaultTerrainBehavior terrain, 
+            int value, MoveType... moveTypes) {
         for(MoveType moveType : moveTypes) {
-            map.get(moveType).put(terrain, value);
+            table[moveType.ordinal()][terrain.ordinal()] = value;
         }
     }
     static {
         // Collections of move types and terrain types for convenience
         MoveType[] moveTypes = MoveType.values();
-        Collection<DefaultTerrainBehavior> terrainTypes = 
-                Collections.unmodifiableCollection(
-                Arrays.asList(DefaultTerrainBehavior.values()));
+        int terrainTypeCount = DefaultTerrainBehavior.values().length;
         
-        java.util.Map<MoveType, java.util.Map<TerrainBehavior, Integer>> table = new HashMap<>();
+        int[][] table = new int[moveTypes.length][terrainTypeCount];
         // initialize it to default impassable for everything
-        for(MoveType moveType : moveTypes) {
-            java.util.Map<TerrainBehavior, Integer> moveTypeCosts = new HashMap<>();
-            for(TerrainBehavior terrainBehavior : terrainTypes) {
-                moveTypeCosts.put(terrainBehavior, IMPASSABLE);
-            }
-            table.put(moveType, moveTypeCosts);
+        for(int[] moveTypeCosts : table) {
+            Arrays.fill(moveTypeCosts, IMPASSABLE);
         }
         
         // fill in move costs for different terrain
@@ -114,28 +109,48 @@ public enum MoveType implements MoveCostStrategy {
         // Fence -- default impassable | flyers 1
         setMapEntries(table, FENCE_BEHAVIOR, IMPASSABLE, moveTypes);
         // set all terrain for flyers to be 1 (except walls)
-        for(TerrainBehavior terrainBehavior : table.get(FLYER).keySet()) {
-            table.get(FLYER).put(terrainBehavior, 1);
-        }
+        Arrays.fill(table[FLYER.ordinal()], 1);
         
         // Wall -- impassable by everything
         setMapEntries(table, WALL_BEHAVIOR, IMPASSABLE, moveTypes);
         
-        moveCostTable = Collections.unmodifiableMap(table);
+        moveCostTable = table;
     }
 
+    /**
+     * {@inheritDoc}
+     * Costs are only defined for the built-in {@link DefaultTerrainBehavior}
+     * values. Any other TerrainBehavior is treated as impassable.
+     */
     @Override
     public int getCostOf(TerrainBehavior terrainBehavior) {
-        return moveCostTable.get(this).get(terrainBehavior);
+        if(terrainBehavior instanceof DefaultTerrainBehavior) {
+            return moveCostTable[ordinal()][((DefaultTerrainBehavior) terrainBehavior).ordinal()];
+        }
+        else if(terrainBehavior == null) {
+            throw new IllegalArgumentException("Terrain behavior must be non-null");
+        }
+        else {
+            return IMPASSABLE;
+        }
     }
 
     // should be a default method of MoveCostStrategy
+    /**
+     * {@inheritDoc}
+     * Returns {@link #IMPASSABLE} if any terrain after the first is impassable.
+     */
     @Override
     public int getCostOf(List<TerrainBehavior> path) {
         int totalCost = 0;
         // do not count the first point in move cost
         for(int i = 1; i < path.size(); i++) {
-            totalCost += getCostOf(path.get(i));
+            int cost = getCostOf(path.get(i));
+            // saturate rather than overflow into a negative total
+            if(cost > IMPASSABLE - totalCost) {
+                return IMPASSABLE;
+            }
+            totalCost += cost;
         }
         return totalCost;
     }
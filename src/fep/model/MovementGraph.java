@@ -0,0 +1,307 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.model;
+
+import fep.model.event.MapBatchEvent;
+import fep.model.event.MapChangeListener;
+import fep.model.event.TerrainChangedEvent;
+import fep.model.event.UnitAddedEvent;
+import fep.model.event.UnitMovedEvent;
+import fep.model.event.UnitRemovedEvent;
+import java.util.Arrays;
+
+/**
+ * The terrain of a {@link Map} compiled down to primitives for a single
+ * {@link MoveCostStrategy}: the cost of entering every tile, and for every
+ * tile the index of each neighbor that can be entered. Range and path
+ * searches walk this graph instead of going through Terrain, TerrainBehavior
+ * and the strategy for every step, and instead of allocating neighbor points.
+ * <p>
+ * Entry costs are stored in a byte per tile. Costs below 1 are treated as 1,
+ * and costs above {@link #MAX_ENTRY_COST} are treated as impassable.
+ * Impassable tiles never appear in the neighbor table.
+ * <p>
+ * A MovementGraph only depends on terrain, so units never affect it. The
+ * graphs handed out by {@link Map#getMovementGraph(MoveCostStrategy)} are
+ * kept up to date by their map; a graph constructed directly must be
+ * registered as a listener on its map to stay current.
+ * @author Kyle Buzsaki
+ */
+public final class MovementGraph implements MapChangeListener {
+
+    /**
+     * The highest entry cost a tile can have before it is treated as
+     * impassable.
+     */
+    public static final int MAX_ENTRY_COST = 0xFF;
+    /**
+     * The number of neighbors each tile has in the neighbor table.
+     */
+    public static final int DIRECTION_COUNT = 4;
+    /**
+     * The x and y offsets of the neighbor in each direction, in the order
+     * used by {@link #getNeighbor(int, int)}.
+     */
+    static final int[] NEIGHBOR_X = {0, 0, -1, 1};
+    static final int[] NEIGHBOR_Y = {1, -1, 0, 0};
+    /**
+     * The direction opposite to each direction.
+     */
+    private static final int[] OPPOSITE = {1, 0, 3, 2};
+    /**
+     * The stored entry cost of impassable tiles. Real costs are at least 1.
+     */
+    private static final byte IMPASSABLE_ENTRY = 0;
+
+    private final Map map;
+    private final MoveCostStrategy moveCostStrategy;
+    /**
+     * The entry cost of every tile, as an unsigned byte, or IMPASSABLE_ENTRY.
+     */
+    private final byte[] entryCosts;
+    /**
+     * The tile index of each tile's passable neighbor in each direction, or
+     * -1 if that neighbor is off the map or impassable. The neighbor of tile
+     * t in direction d is at {@code t * DIRECTION_COUNT + d}.
+     */
+    private final int[] neighbors;
+    /**
+     * The number of tiles with each entry cost, so that the cheapest and
+     * most expensive costs on the map are known without scanning it.
+     */
+    private final int[] costCounts;
+    /**
+     * The entry cost of each terrain in the map's palette, looked up lazily
+     * as terrains are added to the palette. 0 marks ids not yet looked up.
+     */
+    private int[] paletteCosts;
+
+    /**
+     * Compiles the terrain of the given map for the given strategy.
+     * @param map  the map to compile. Must be non-null.
+     * @param moveCostStrategy  determines the cost of entering each tile.
+     * Must be non-null, and must always return the same cost for the same
+     * terrain behavior.
+     */
+    public MovementGraph(Map map, MoveCostStrategy moveCostStrategy) {
+        if(map == null) {
+            throw new IllegalArgumentException("Map must be non-null");
+        }
+        if(moveCostStrategy == null) {
+            throw new IllegalArgumentException("Move cost strategy must be non-null");
+        }
+        this.map = map;
+        this.moveCostStrategy = moveCostStrategy;
+
+        int tileCount = map.getTileCount();
+        entryCosts = new byte[tileCount];
+        neighbors = new int[tileCount * DIRECTION_COUNT];
+        costCounts = new int[MAX_ENTRY_COST + 1];
+        paletteCosts = new int[map.getPaletteSize()];
+
+        for(int tile = 0; tile < tileCount; tile++) {
+            byte entryCost = lookUpEntryCost(tile);
+            entryCosts[tile] = entryCost;
+            costCounts[entryCost & 0xFF]++;
+        }
+        int width = map.getWidth();
+        int height = map.getHeight();
+        for(int tile = 0; tile < tileCount; tile++) {
+            int x = tile % width;
+            int y = tile / width;
+            for(int direction = 0; direction < DIRECTION_COUNT; direction++) {
+                int neighborX = x + NEIGHBOR_X[direction];
+                int neighborY = y + NEIGHBOR_Y[direction];
+                int neighbor = -1;
+                if(neighborX >= 0 && neighborX < width && neighborY >= 0 && neighborY < height) {
+                    neighbor = neighborY * width + neighborX;
+                    if(entryCosts[neighbor] == IMPASSABLE_ENTRY) {
+                        neighbor = -1;
+                    }
+                }
+                neighbors[tile * DIRECTION_COUNT + direction] = neighbor;
+            }
+        }
+    }
+
+    /**
+     * Copies the arrays of the given graph.
+     */
+    private MovementGraph(MovementGraph original) {
+        this.map = original.map;
+        this.moveCostStrategy = original.moveCostStrategy;
+        this.entryCosts = original.entryCosts.clone();
+        this.neighbors = original.neighbors.clone();
+        this.costCounts = original.costCounts.clone();
+        this.paletteCosts = original.paletteCosts.clone();
+    }
+
+    /**
+     * Returns a copy of this graph as it is now. The copy is not registered
+     * with the map, so it keeps describing the terrain as of this call while
+     * the map changes. Like the map, this graph must only be copied from the
+     * thread that modifies the map; the copy may then be read from any
+     * thread.
+     * @return an unregistered copy of this graph.
+     */
+    public MovementGraph copy() {
+        return new MovementGraph(this);
+    }
+
+    /**
+     * Returns the map this graph was compiled from.
+     * @return this graph's map.
+     */
+    public Map getMap() {
+        return map;
+    }
+    /**
+     * Returns the strategy this graph's costs come from.
+     * @return this graph's move cost strategy.
+     */
+    public MoveCostStrategy getMoveCostStrategy() {
+        return moveCostStrategy;
+    }
+
+    /**
+     * Returns the cost of entering the tile with the given index, or
+     * {@link MoveCostStrategy#IMPASSABLE} if it cannot be entered.
+     * @param tile  a tile index. Must be a valid index for the map.
+     * @return the cost of entering the tile.
+     */
+    public int getEntryCost(int tile) {
+        int entryCost = entryCosts[tile] & 0xFF;
+        return entryCost == IMPASSABLE_ENTRY ? MoveCostStrategy.IMPASSABLE : entryCost;
+    }
+    /**
+     * Returns whether the tile with the given index can be entered at all.
+     * @param tile  a tile index. Must be a valid index for the map.
+     * @return true if the tile is passable.
+     */
+    public boolean isPassable(int tile) {
+        return entryCosts[tile] != IMPASSABLE_ENTRY;
+    }
+    /**
+     * Returns the index of the neighbor of the given tile in the given
+     * direction, or -1 if that neighbor is off the map or impassable.
+     * Directions 0 through 3 are down, up, left and right.
+     * @param tile  a tile index. Must be a valid index for the map.
+     * @param direction  a direction from 0 (inclusive) to
+     * {@link #DIRECTION_COUNT} (exclusive).
+     * @return the index of the passable neighbor, or -1.
+     */
+    public int getNeighbor(int tile, int direction) {
+        return neighbors[tile * DIRECTION_COUNT + direction];
+    }
+    /**
+     * Returns the lowest entry cost of any passable tile, or
+     * {@link MoveCostStrategy#IMPASSABLE} if no tile is passable.
+     * @return the cheapest entry cost on the map.
+     */
+    public int getMinEntryCost() {
+        for(int cost = 1; cost <= MAX_ENTRY_COST; cost++) {
+            if(costCounts[cost] > 0) {
+                return cost;
+            }
+        }
+        return MoveCostStrategy.IMPASSABLE;
+    }
+    /**
+     * Returns the highest entry cost of any passable tile that is no greater
+     * than the given limit, or 0 if there is none.
+     * @param limit  the greatest cost of interest.
+     * @return the most expensive entry cost on the map up to limit.
+     */
+    public int getMaxEntryCost(int limit) {
+        for(int cost = Math.min(limit, MAX_ENTRY_COST); cost >= 1; cost--) {
+            if(costCounts[cost] > 0) {
+                return cost;
+            }
+        }
+        return 0;
+    }
+
+    // MapChangeListener Methods
+    /**
+     * Recompiles the changed tile and the neighbor entries that lead into it.
+     * @param event  a terrain change on this graph's map.
+     */
+    @Override
+    public void handleTerrainChanged(TerrainChangedEvent event) {
+        if(event.getMap() != map) {
+            throw new IllegalArgumentException("Terrain changed on a different map");
+        }
+        updateTile(map.indexOf(event.getPointChanged()));
+    }
+    /**
+     * Recompiles the tiles whose terrain changed during the batch.
+     * @param event  a batch of changes on this graph's map.
+     */
+    @Override
+    public void handleBatch(MapBatchEvent event) {
+        if(event.getMap() != map) {
+            throw new IllegalArgumentException("Batch applied to a different map");
+        }
+        for(TerrainChangedEvent terrainChange : event.getTerrainChanges()) {
+            updateTile(map.indexOf(terrainChange.getPointChanged()));
+        }
+    }
+    @Override
+    public void handleUnitAdded(UnitAddedEvent event) {
+    }
+    @Override
+    public void handleUnitRemoved(UnitRemovedEvent event) {
+    }
+    @Override
+    public void handleUnitMoved(UnitMovedEvent event) {
+    }
+
+    // Private Implementation Methods
+    /**
+     * Brings the given tile's entry cost, and its neighbors' entries pointing
+     * at it, in line with the map's current terrain.
+     */
+    void updateTile(int tile) {
+        byte entryCost = lookUpEntryCost(tile);
+        byte priorCost = entryCosts[tile];
+        if(entryCost == priorCost) {
+            return;
+        }
+        entryCosts[tile] = entryCost;
+        costCounts[priorCost & 0xFF]--;
+        costCounts[entryCost & 0xFF]++;
+
+        int target = entryCost == IMPASSABLE_ENTRY ? -1 : tile;
+        int width = map.getWidth();
+        int height = map.getHeight();
+        int x = tile % width;
+        int y = tile / width;
+        for(int direction = 0; direction < DIRECTION_COUNT; direction++) {
+            int neighborX = x + NEIGHBOR_X[direction];
+            int neighborY = y + NEIGHBOR_Y[direction];
+            if(neighborX < 0 || neighborX >= width || neighborY < 0 || neighborY >= height) {
+                continue;
+            }
+            int neighbor = neighborY * width + neighborX;
+            // the neighbor reaches this tile by stepping back the other way
+            neighbors[neighbor * DIRECTION_COUNT + OPPOSITE[direction]] = target;
+        }
+    }
+
+    private byte lookUpEntryCost(int tile) {
+        int terrainId = map.getTerrainIdAt(tile);
+        if(terrainId >= paletteCosts.length) {
+            paletteCosts = Arrays.copyOf(paletteCosts, map.getPaletteSize());
+        }
+        int entryCost = paletteCosts[terrainId];
+        if(entryCost == 0) {
+            entryCost = moveCostStrategy.getCostOf(
+                    map.getPaletteTerrain(terrainId).getTerrainBehavior());
+            entryCost = entryCost > MAX_ENTRY_COST ? -1 : Math.max(1, entryCost);
+            paletteCosts[terrainId] = entryCost;
+        }
+        return entryCost == -1 ? IMPASSABLE_ENTRY : (byte) entryCost;
+    }
+
+}
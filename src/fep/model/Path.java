@@ -5,7 +5,6 @@ package fep.model;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -15,28 +14,44 @@ import java.util.NoSuchElementException;
  * Each point in the path is guaranteed to be adjacent to the points preceding
  * and following it in the path, as specified by ImmutablePoint.isAdjacentTo().
  * This class is immutable.
+ * <p>
+ * Paths are stored as persistent linked lists from the end of the path back to
+ * its start, so a path and the paths concatenated from it share their points.
+ * Each node caches its depth and the hash code of the path ending at it, so
+ * size, getEnd and hashCode are constant time. Each node also holds a jump
+ * pointer to a farther ancestor, so get and truncating concats take
+ * logarithmic time, and a persistent hash trie of the index each point in
+ * the path ending at it first appears at, so contains takes time
+ * logarithmic in the path's size with a base of 32. Appending a point copies
+ * only the trie nodes along one key's route and shares the rest with the
+ * previous node, and nothing reachable from a path is ever modified, so
+ * related paths may be read and extended from any number of threads.
  * @author Kyle Buzsaki
  */
 public final class Path implements Iterable<ImmutablePoint> { 
-    private static final Path EMPTY_PATH = new Path(Collections.<ImmutablePoint>emptyList());
+    private static final Path EMPTY_PATH = new Path(null);
+    /**
+     * The hash code of the empty path, and the seed for every other path's.
+     */
+    private static final int EMPTY_HASH_CODE = 1;
     
     /**
-     * An ImmutableList of the ImmutablePoint objects making up this path.
-     * Each point in the list is guaranteed to be adjacent to the points preceding
-     * and following it in the list, as specified by ImmutablePoint.isAdjacentTo().
+     * The last point in this path, linked back to the points before it.
+     * Null if and only if this path is empty.
+     * Each point is guaranteed to be adjacent to the point preceding it, as 
+     * specified by ImmutablePoint.isAdjacentTo().
      */
-    private final List<ImmutablePoint> points;
+    private final Node end;
     
     /**
-     * Constructs a path with the specified points. This constructor is private
-     * and performs no validation. It should not be called except by the
-     * {@link #createPathInternal(java.util.List)} factory method.<br>
+     * Constructs a path ending at the specified node. This constructor is 
+     * private and performs no validation. 
      * New paths should be created with the {@link #createPath(java.util.List)} 
-     * and {@link #createPathInternal(java.util.List)} factory methods instead.
-     * @param points  the points for the new path.
+     * factory method or by concatenation instead.
+     * @param end  the last node of the new path.
      */
-    private Path(List<ImmutablePoint> points) {
-        this.points = points;
+    private Path(Node end) {
+        this.end = end;
     }
     
     /**
@@ -82,19 +97,17 @@ public final class Path implements Iterable<ImmutablePoint> {
             throw new IllegalArgumentException("Invalid path supplied. "
                     + "Points must be sequential and non-null.");
         }
+        else if(unvalidatedPoints.isEmpty()) {
+            return EMPTY_PATH;
+        }
         else {
-            return createPathInternal(unvalidatedPoints);
+            Node node = null;
+            for(ImmutablePoint point : unvalidatedPoints) {
+                node = new Node(point, node);
+            }
+            return new Path(node);
         }
     }
-    /**
-     * Creates a path with the specified points. Assumes that the list of points
-     * is valid and has already been defensively copied.
-     * @param validPoints  the points used to construct the path.
-     * @return a path representing the specified points.
-     */
-    private static Path createPathInternal(List<ImmutablePoint> validPoints) {
-        return new Path(Collections.unmodifiableList(validPoints));
-    }
     
     // Positional Accessors
     /**
@@ -110,7 +123,7 @@ public final class Path implements Iterable<ImmutablePoint> {
             throw new IndexOutOfBoundsException("Index: " + index + " Path Size: " + size());
         }
         else {
-            return points.get(index);
+            return nodeAt(index).point;
         }
     } 
     /**
@@ -122,7 +135,19 @@ public final class Path implements Iterable<ImmutablePoint> {
         if(isEmpty()) {
             throw new NoSuchElementException("Attemping to get tip of empty path.");
         }
-        return get(points.size() - 1);
+        return end.point;
+    }
+    /**
+     * Returns the point at the specified index in the path, packed into a 
+     * long. 
+     * @param index  the index of the point to be returned. Must be greater than
+     * or equal to 0 and less than the total size of the path.
+     * @return the packed coordinates of the point at the given index.
+     * @throws IndexOutOfBoundsException if the index is out of range
+     * @see ImmutablePoint#pack(int, int)
+     */
+    public long getPacked(int index) {
+        return get(index).toPacked();
     }
     
     // Metadata Accessors
@@ -131,7 +156,7 @@ public final class Path implements Iterable<ImmutablePoint> {
      * @return the number of points in the path.
      */
     public int size() {
-        return points.size();
+        return end == null ? 0 : end.depth + 1;
     }
     /**
      * Returns <tt>true</tt> if the path contains no points. This is logically
@@ -152,7 +177,7 @@ public final class Path implements Iterable<ImmutablePoint> {
      * @return  <tt>true</tt> if this path contains the specified point.
      */
     public boolean contains(ImmutablePoint point) {
-        return points.contains(point);
+        return indexOf(point) >= 0;
     }
     /**
      * Returns a path with this path's data and the supplied point appended.
@@ -169,20 +194,24 @@ public final class Path implements Iterable<ImmutablePoint> {
             throw new IllegalArgumentException("Added point must be non-null.");
         }
         // if the point is already in the path, simplify the path by removing all points following it
-        if(contains(point)) {
+        int index = indexOf(point);
+        if(index >= 0) {
             // logging code in case of weird behavior. 
             // Technically legal, but probably shouldn't happen.
             if(getEnd().equals(point)) {
                 System.err.println("Warning: concating with point equal to end "
                         + "of path. (path: " + this + ")");
+                return this;
             }
-            // index + 1 because sublist's range is [begin, end)
-            return createPathInternal(points.subList(0, points.indexOf(point) + 1)); 
+            return new Path(nodeAt(index));
         }
         // the point can be added if it only if it is adjacent to the tip
         // if there is no tip, it can be added anyways
-        else if(isEmpty() || point.isAdjacentTo(getEnd())) {
-            return createPathInternal(catList(points, point)); 
+        else if(isEmpty()) {
+            return new Path(new Node(point, null));
+        }
+        else if(point.isAdjacentTo(getEnd())) {
+            return new Path(new Node(point, end));
         }
         else {
             throw new IllegalArgumentException("Added points must be in the"
@@ -196,9 +225,10 @@ public final class Path implements Iterable<ImmutablePoint> {
     public String toString() {
         StringBuilder sb = new StringBuilder();
         
-        for(int i = 0; i < size(); i++) {
-            sb.append(get(i));
-            if(i < (size() - 1)) {
+        ImmutablePoint[] points = toArray();
+        for(int i = 0; i < points.length; i++) {
+            sb.append(points[i]);
+            if(i < (points.length - 1)) {
                 sb.append(", ");
             }
         }
@@ -209,7 +239,17 @@ public final class Path implements Iterable<ImmutablePoint> {
     public boolean equals(Object obj) {
         if(obj instanceof Path) {
             Path path = (Path) obj;
-            return points.equals(path.points);
+            if(size() != path.size() || hashCode() != path.hashCode()) {
+                return false;
+            }
+            // walk back until the paths converge on a shared node
+            for(Node node = end, other = path.end; node != other; 
+                    node = node.previous, other = other.previous) {
+                if(!node.point.equals(other.point)) {
+                    return false;
+                }
+            }
+            return true;
         }
         else {
             return super.equals(obj); 
@@ -217,11 +257,7 @@ public final class Path implements Iterable<ImmutablePoint> {
     }
     @Override
     public int hashCode() {
-        int hashCode = 1;
-        for (ImmutablePoint point : this) {
-            hashCode = 17*hashCode + point.hashCode();
-        }
-        return hashCode;
+        return end == null ? EMPTY_HASH_CODE : end.hashCode;
     }
     
     // Convenience methods for iteration.
@@ -232,7 +268,34 @@ public final class Path implements Iterable<ImmutablePoint> {
      * @return and ordered list of the points in the path.
      */
     public List<ImmutablePoint> toList() {
-        return new ArrayList<>(points);
+        return new ArrayList<>(Arrays.asList(toArray()));
+    }
+    /**
+     * Returns the points in the path packed into longs, in order. 
+     * @return the packed coordinates of each point in the path.
+     * @see ImmutablePoint#pack(int, int)
+     */
+    public long[] toPackedArray() {
+        long[] packedPoints = new long[size()];
+        for(Node node = end; node != null; node = node.previous) {
+            packedPoints[node.depth] = node.point.toPacked();
+        }
+        return packedPoints;
+    }
+    /**
+     * Returns the tile index of each point in the path on the given map, in 
+     * order.
+     * @param map  the map the path is on. Must be non-null, and every point 
+     * in the path must be within its dimensions.
+     * @return the tile index of each point in the path.
+     * @see Map#indexOf(ImmutablePoint)
+     */
+    public int[] toIndexArray(Map map) {
+        int[] indices = new int[size()];
+        for(Node node = end; node != null; node = node.previous) {
+            indices[node.depth] = map.indexOf(node.point);
+        }
+        return indices;
     }
     
     /**
@@ -250,16 +313,20 @@ public final class Path implements Iterable<ImmutablePoint> {
      * Does not allow modifications to the Path.
      */ 
     private class PathIterator implements Iterator<ImmutablePoint> {
+    private final ImmutablePoint[] points = toArray();
     private int cursor = 0;
     
     @Override
     public boolean hasNext() {
-        return cursor != size();
+        return cursor != points.length;
     }
     
     @Override
     public ImmutablePoint next() {
-        return get(cursor++);
+        if(!hasNext()) {
+            throw new NoSuchElementException("No more points in path.");
+        }
+        return points[cursor++];
     }
     
     /**
@@ -272,7 +339,233 @@ public final class Path implements Iterable<ImmutablePoint> {
     }
 }
     
+    /**
+     * A single point in a path, linked to the point before it. Nodes are 
+     * immutable and shared between every path that passes through them.
+     */
+    private static final class Node {
+        private final ImmutablePoint point;
+        private final Node previous;
+        /**
+         * The index of this node's point in any path containing this node.
+         */
+        private final int depth;
+        /**
+         * The hash code of the path ending at this node.
+         */
+        private final int hashCode;
+        /**
+         * An ancestor of this node, chosen so that any ancestor can be
+         * reached in a logarithmic number of jumps and steps back. Null for
+         * the first node of a path.
+         */
+        private final Node jump;
+        /**
+         * The index each point of the path ending at this node first appears
+         * at.
+         */
+        private final DepthTrie firstDepths;
+        
+        private Node(ImmutablePoint point, Node previous) {
+            this.point = point;
+            this.previous = previous;
+            this.depth = previous == null ? 0 : previous.depth + 1;
+            int previousHashCode = previous == null ? EMPTY_HASH_CODE : previous.hashCode;
+            this.hashCode = 17*previousHashCode + point.hashCode();
+            if(previous == null) {
+                this.jump = null;
+                this.firstDepths = DepthTrie.EMPTY.with(DepthTrie.keyOf(point), 0, 0);
+            }
+            else {
+                // skew binary jumps: jump twice as far once two equal jumps line up
+                Node previousJump = previous.jump;
+                if(previousJump != null && previousJump.jump != null
+                        && previous.depth - previousJump.depth 
+                        == previousJump.depth - previousJump.jump.depth) {
+                    this.jump = previousJump.jump;
+                }
+                else {
+                    this.jump = previous;
+                }
+                this.firstDepths = previous.firstDepths.with(DepthTrie.keyOf(point), depth, 0);
+            }
+        }
+        
+        /**
+         * Returns the node at the given depth on the way back from this one.
+         */
+        private Node ancestorAt(int targetDepth) {
+            Node node = this;
+            while(node.depth != targetDepth) {
+                node = node.jump.depth >= targetDepth ? node.jump : node.previous;
+            }
+            return node;
+        }
+    }
+    
+    /**
+     * A persistent hash trie from the packed coordinates of a point to the
+     * depth the point first appears at. Each level is indexed by 5 bits of a
+     * bijective mix of the key, and stores its entries inline and its
+     * subtries in separate compressed arrays, as in a CHAMP trie. Since the
+     * mix is a bijection, two distinct keys always part within the 64 bits,
+     * so there are no collision nodes. Tries are immutable: adding a key
+     * copies the levels along its route and shares everything else.
+     */
+    private static final class DepthTrie {
+        private static final DepthTrie EMPTY = new DepthTrie(0, 0, 
+                new long[0], new int[0], new DepthTrie[0]);
+        private static final int BITS = 5;
+        private static final int MASK = (1 << BITS) - 1;
+        
+        private final int entryMap;
+        private final int subtrieMap;
+        private final long[] keys;
+        private final int[] depths;
+        private final DepthTrie[] subtries;
+        
+        private DepthTrie(int entryMap, int subtrieMap, long[] keys, int[] depths, 
+                DepthTrie[] subtries) {
+            this.entryMap = entryMap;
+            this.subtrieMap = subtrieMap;
+            this.keys = keys;
+            this.depths = depths;
+            this.subtries = subtries;
+        }
+        
+        private static long keyOf(ImmutablePoint point) {
+            long hash = point.toPacked() * 0x9E3779B97F4A7C15L;
+            return hash ^ (hash >>> 32);
+        }
+        
+        /**
+         * Returns the depth stored for the given key, or -1 if it is absent.
+         */
+        private int depthOf(long key) {
+            DepthTrie trie = this;
+            for(int shift = 0; ; shift += BITS) {
+                int bit = 1 << ((int) (key >>> shift) & MASK);
+                if((trie.entryMap & bit) != 0) {
+                    int entry = Integer.bitCount(trie.entryMap & (bit - 1));
+                    return trie.keys[entry] == key ? trie.depths[entry] : -1;
+                }
+                if((trie.subtrieMap & bit) == 0) {
+                    return -1;
+                }
+                trie = trie.subtries[Integer.bitCount(trie.subtrieMap & (bit - 1))];
+            }
+        }
+        
+        /**
+         * Returns a trie with the given key mapped to the given depth, or
+         * this trie if the key is already present.
+         */
+        private DepthTrie with(long key, int depth, int shift) {
+            int bit = 1 << ((int) (key >>> shift) & MASK);
+            if((entryMap & bit) != 0) {
+                int entry = Integer.bitCount(entryMap & (bit - 1));
+                if(keys[entry] == key) {
+                    return this;
+                }
+                // push both entries down into a new subtrie
+                DepthTrie merged = merge(keys[entry], depths[entry], key, depth, shift + BITS);
+                int subtrie = Integer.bitCount(subtrieMap & (bit - 1));
+                return new DepthTrie(entryMap ^ bit, subtrieMap | bit,
+                        removeAt(keys, entry), removeAt(depths, entry),
+                        insertAt(subtries, subtrie, merged));
+            }
+            if((subtrieMap & bit) != 0) {
+                int subtrie = Integer.bitCount(subtrieMap & (bit - 1));
+                DepthTrie updated = subtries[subtrie].with(key, depth, shift + BITS);
+                if(updated == subtries[subtrie]) {
+                    return this;
+                }
+                DepthTrie[] newSubtries = subtries.clone();
+                newSubtries[subtrie] = updated;
+                return new DepthTrie(entryMap, subtrieMap, keys, depths, newSubtries);
+            }
+            int entry = Integer.bitCount(entryMap & (bit - 1));
+            return new DepthTrie(entryMap | bit, subtrieMap, insertAt(keys, entry, key),
+                    insertAt(depths, entry, depth), subtries);
+        }
+        
+        private static DepthTrie merge(long firstKey, int firstDepth, 
+                long secondKey, int secondDepth, int shift) {
+            int firstFragment = (int) (firstKey >>> shift) & MASK;
+            int secondFragment = (int) (secondKey >>> shift) & MASK;
+            if(firstFragment == secondFragment) {
+                DepthTrie merged = merge(firstKey, firstDepth, secondKey, secondDepth, shift + BITS);
+                return new DepthTrie(0, 1 << firstFragment, EMPTY.keys, EMPTY.depths, 
+                        new DepthTrie[] {merged});
+            }
+            int entryMap = (1 << firstFragment) | (1 << secondFragment);
+            if(firstFragment < secondFragment) {
+                return new DepthTrie(entryMap, 0, new long[] {firstKey, secondKey},
+                        new int[] {firstDepth, secondDepth}, EMPTY.subtries);
+            }
+            return new DepthTrie(entryMap, 0, new long[] {secondKey, firstKey},
+                    new int[] {secondDepth, firstDepth}, EMPTY.subtries);
+        }
+        
+        private static long[] insertAt(long[] array, int index, long value) {
+            long[] result = new long[array.length + 1];
+            System.arraycopy(array, 0, result, 0, index);
+            result[index] = value;
+            System.arraycopy(array, index, result, index + 1, array.length - index);
+            return result;
+        }
+        private static int[] insertAt(int[] array, int index, int value) {
+            int[] result = new int[array.length + 1];
+            System.arraycopy(array, 0, result, 0, index);
+            result[index] = value;
+            System.arraycopy(array, index, result, index + 1, array.length - index);
+            return result;
+        }
+        private static DepthTrie[] insertAt(DepthTrie[] array, int index, DepthTrie value) {
+            DepthTrie[] result = new DepthTrie[array.length + 1];
+            System.arraycopy(array, 0, result, 0, index);
+            result[index] = value;
+            System.arraycopy(array, index, result, index + 1, array.length - index);
+            return result;
+        }
+        private static long[] removeAt(long[] array, int index) {
+            long[] result = new long[array.length - 1];
+            System.arraycopy(array, 0, result, 0, index);
+            System.arraycopy(array, index + 1, result, index, result.length - index);
+            return result;
+        }
+        private static int[] removeAt(int[] array, int index) {
+            int[] result = new int[array.length - 1];
+            System.arraycopy(array, 0, result, 0, index);
+            System.arraycopy(array, index + 1, result, index, result.length - index);
+            return result;
+        }
+    }
+    
     // Private Implementation Methods
+    /**
+     * Returns the node of this path at the given index, which must be valid.
+     */
+    private Node nodeAt(int index) {
+        return end.ancestorAt(index);
+    }
+    /**
+     * Returns the index that the given point first appears at, or -1 if it is
+     * not in the path.
+     */
+    private int indexOf(ImmutablePoint point) {
+        if(point == null || isEmpty()) {
+            return -1;
+        }
+        return end.firstDepths.depthOf(DepthTrie.keyOf(point));
+    }
+    private ImmutablePoint[] toArray() {
+        ImmutablePoint[] points = new ImmutablePoint[size()];
+        for(Node node = end; node != null; node = node.previous) {
+            points[node.depth] = node.point;
+        }
+        return points;
+    }
     private static boolean isValidPath(List<ImmutablePoint> points) {
         // first ensure no null points
         for(ImmutablePoint p : points) {
@@ -288,10 +581,5 @@ public final class Path implements Iterable<ImmutablePoint> {
         }
         return true;
     }
-    private static <E> List<E> catList(List<E> list, E el) {
-        List<E> catList = new ArrayList<>(list);
-        catList.add(el);
-        return catList;
-    }
     
 }
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.model;
+
+import java.util.Arrays;
+
+/**
+ * Finds the cheapest {@link Path} between two points on a {@link Map} using
+ * A* search, with the gridwise distance of {@link
+ * ImmutablePoint#distanceGrid(ImmutablePoint)} as the heuristic.
+ * <p>
+ * A Pathfinder is bound to a single map and keeps its search state in
+ * primitive arrays sized to that map, which are reused from one query to the
+ * next. Queries therefore allocate little beyond the returned path, but a
+ * Pathfinder must not be shared between threads.
+ * @author Kyle Buzsaki
+ */
+public final class Pathfinder {
+
+    private static final int INITIAL_HEAP_CAPACITY = 64;
+
+    private final Map map;
+
+    /*
+     * Per-tile search state. Rather than clearing these between queries,
+     * each query gets a new generation number, and a tile's state is only
+     * valid if its stamp matches the current generation.
+     */
+    private int generation;
+    /**
+     * The generation in which each tile was last reached.
+     */
+    private final int[] seenStamps;
+    /**
+     * The generation in which each tile was last expanded.
+     */
+    private final int[] closedStamps;
+    /**
+     * The cheapest known cost to reach each tile.
+     */
+    private final int[] costs;
+    /**
+     * The tile each reached tile was entered from, or -1 for the start.
+     */
+    private final int[] parents;
+
+    /**
+     * Binary min-heap of open tiles. Each entry packs the tile's estimated
+     * total cost into the high 32 bits and its index into the low 32 bits,
+     * so entries order by estimate. Stale entries are skipped when polled.
+     */
+    private long[] heap;
+    private int heapSize;
+
+    /**
+     * Constructs a Pathfinder that finds paths on the given map.
+     * @param map  the map to find paths on. Must be non-null.
+     */
+    public Pathfinder(Map map) {
+        if(map == null) {
+            throw new IllegalArgumentException("Map must be non-null");
+        }
+        this.map = map;
+        int tileCount = map.getTileCount();
+        seenStamps = new int[tileCount];
+        closedStamps = new int[tileCount];
+        costs = new int[tileCount];
+        parents = new int[tileCount];
+        heap = new long[INITIAL_HEAP_CAPACITY];
+    }
+
+    /**
+     * Returns the map this Pathfinder finds paths on.
+     * @return this Pathfinder's map.
+     */
+    public Map getMap() {
+        return map;
+    }
+
+    /**
+     * Finds the cheapest path between two points, ignoring units.
+     * @param start  the first point of the path. Must be non-null and within
+     * the map's dimensions (exclusive).
+     * @param goal  the last point of the path. Must be non-null and within
+     * the map's dimensions (exclusive).
+     * @param moveCostStrategy  determines the cost of entering each tile.
+     * Must be non-null.
+     * @return  the cheapest path from start to goal, or null if there is none.
+     */
+    public Path findPath(ImmutablePoint start, ImmutablePoint goal,
+            MoveCostStrategy moveCostStrategy) {
+        return findPath(start, goal, moveCostStrategy,
+                MoveCostStrategy.IMPASSABLE - 1, DefaultAllegiance.ALL_ALLIED);
+    }
+
+    /**
+     * Finds the cheapest path between two points that costs at most maxCost.
+     * The unit at the start, if any, is treated as the moving unit: tiles
+     * held by its allies may be passed through, and tiles held by anyone else
+     * block it, as with {@link MoveRange}.
+     * @param start  the first point of the path. Must be non-null and within
+     * the map's dimensions (exclusive).
+     * @param goal  the last point of the path. Must be non-null and within
+     * the map's dimensions (exclusive).
+     * @param moveCostStrategy  determines the cost of entering each tile.
+     * Must be non-null. Costs below 1 are treated as 1, and costs above
+     * {@link MovementGraph#MAX_ENTRY_COST} as impassable.
+     * @param maxCost  the greatest total cost allowed. Must not be negative.
+     * @param allegianceStrategy  decides which occupants can be passed
+     * through. Must be non-null.
+     * @return  the cheapest path from start to goal, or null if there is no
+     * path costing at most maxCost.
+     */
+    public Path findPath(ImmutablePoint start, ImmutablePoint goal,
+            MoveCostStrategy moveCostStrategy, int maxCost,
+            AllegianceStrategy allegianceStrategy) {
+        int startIndex = map.indexOf(start);
+        int goalIndex = map.indexOf(goal);
+        if(moveCostStrategy == null || allegianceStrategy == null) {
+            throw new IllegalArgumentException("Strategies must be non-null");
+        }
+        if(maxCost < 0) {
+            throw new IllegalArgumentException("Max cost must not be negative: " + maxCost);
+        }
+
+        if(!search(startIndex, goalIndex, moveCostStrategy, maxCost, allegianceStrategy)) {
+            return null;
+        }
+
+        int length = 0;
+        for(int tile = goalIndex; tile != -1; tile = parents[tile]) {
+            length++;
+        }
+        ImmutablePoint[] points = new ImmutablePoint[length];
+        for(int tile = goalIndex; tile != -1; tile = parents[tile]) {
+            points[--length] = map.getPoint(tile);
+        }
+        return Path.createPath(Arrays.asList(points));
+    }
+
+    // Private Implementation Methods
+    /**
+     * Runs A* from startIndex, returning true if goalIndex was reached within
+     * maxCost. On success, parents holds the path back from the goal.
+     */
+    private boolean search(int startIndex, int goalIndex,
+            MoveCostStrategy moveCostStrategy, int maxCost,
+            AllegianceStrategy allegianceStrategy) {
+        nextGeneration();
+        heapSize = 0;
+
+        int mapWidth = map.getWidth();
+        int goalX = goalIndex % mapWidth;
+        int goalY = goalIndex / mapWidth;
+        Unit mover = map.getUnitAt(startIndex);
+
+        MovementGraph movementGraph = map.getMovementGraph(moveCostStrategy);
+        // scaling by the cheapest step keeps the heuristic admissible
+        int heuristicScale = Math.min(movementGraph.getMinEntryCost(), MovementGraph.MAX_ENTRY_COST);
+
+        seenStamps[startIndex] = generation;
+        costs[startIndex] = 0;
+        parents[startIndex] = -1;
+        push(estimate(startIndex % mapWidth, startIndex / mapWidth, goalX, goalY, heuristicScale), startIndex);
+
+        while(heapSize > 0) {
+            int tile = (int) pop();
+            if(closedStamps[tile] == generation) {
+                continue;
+            }
+            if(tile == goalIndex) {
+                return true;
+            }
+            closedStamps[tile] = generation;
+
+            int cost = costs[tile];
+            int tileX = tile % mapWidth;
+            int tileY = tile / mapWidth;
+            for(int direction = 0; direction < MovementGraph.DIRECTION_COUNT; direction++) {
+                int neighbor = movementGraph.getNeighbor(tile, direction);
+                if(neighbor == -1 || closedStamps[neighbor] == generation) {
+                    continue;
+                }
+                int neighborX = tileX + MovementGraph.NEIGHBOR_X[direction];
+                int neighborY = tileY + MovementGraph.NEIGHBOR_Y[direction];
+
+                int stepCost = movementGraph.getEntryCost(neighbor);
+                // compare against the remaining budget so IMPASSABLE can't overflow
+                if(stepCost > maxCost - cost) {
+                    continue;
+                }
+                int neighborCost = cost + stepCost;
+                if(seenStamps[neighbor] == generation && costs[neighbor] <= neighborCost) {
+                    continue;
+                }
+
+                Unit occupant = map.getUnitAt(neighbor);
+                if(occupant != null && mover != null && occupant != mover
+                        && !allegianceStrategy.areAllied(mover, occupant)) {
+                    continue;
+                }
+
+                long estimate = neighborCost + estimate(neighborX, neighborY, goalX, goalY, heuristicScale);
+                if(estimate > maxCost) {
+                    continue;
+                }
+
+                seenStamps[neighbor] = generation;
+                costs[neighbor] = neighborCost;
+                parents[neighbor] = tile;
+                push(estimate, neighbor);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the heuristic estimate of the cost from (x, y) to the goal:
+     * the gridwise distance scaled by the cheapest possible step.
+     */
+    private static long estimate(int x, int y, int goalX, int goalY, int heuristicScale) {
+        return (long) (Math.abs(x - goalX) + Math.abs(y - goalY)) * heuristicScale;
+    }
+
+    private void nextGeneration() {
+        generation++;
+        if(generation == 0) {
+            // stamps from 2^32 queries ago could now look current
+            Arrays.fill(seenStamps, 0);
+            Arrays.fill(closedStamps, 0);
+            generation = 1;
+        }
+    }
+
+    private void push(long estimate, int tile) {
+        if(heapSize == heap.length) {
+            heap = Arrays.copyOf(heap, heapSize * 2);
+        }
+        long entry = (estimate << 32) | tile;
+        int index = heapSize++;
+        while(index > 0) {
+            int parent = (index - 1) >>> 1;
+            if(heap[parent] <= entry) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = entry;
+    }
+
+    /**
+     * Removes the heap entry with the lowest estimate and returns its tile.
+     */
+    private long pop() {
+        long top = heap[0];
+        long last = heap[--heapSize];
+        int index = 0;
+        int half = heapSize >>> 1;
+        while(index < half) {
+            int child = 2 * index + 1;
+            if(child + 1 < heapSize && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if(last <= heap[child]) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = last;
+        return top & 0xFFFFFFFFL;
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.model;
+
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The set of offsets whose gridwise distance from a tile lies between a
+ * minimum and maximum range, inclusive: a Manhattan diamond, with a hole in
+ * the middle when the minimum range is above 0. The stencil is stored as the
+ * inner and outer horizontal reach of each of its rows, so applying it to a
+ * tile costs one or two range operations per row rather than one per tile.
+ * <p>
+ * Stencils are immutable and shared: {@link #of(int, int)} returns the same
+ * instance for the same range pair.
+ * @author Kyle Buzsaki
+ */
+final class RangeStencil {
+
+    private static final ConcurrentMap<Long, RangeStencil> stencils = new ConcurrentHashMap<>();
+
+    private final int maxRange;
+    /**
+     * The least horizontal offset included in each row, indexed by vertical
+     * offset plus maxRange. Offsets from -outer to -inner and from inner to
+     * outer are included.
+     */
+    private final int[] innerReach;
+    /**
+     * The greatest horizontal offset included in each row, indexed like
+     * innerReach.
+     */
+    private final int[] outerReach;
+
+    private RangeStencil(int minRange, int maxRange) {
+        this.maxRange = maxRange;
+        innerReach = new int[2 * maxRange + 1];
+        outerReach = new int[2 * maxRange + 1];
+        for(int row = 0; row < innerReach.length; row++) {
+            int yOffset = Math.abs(row - maxRange);
+            innerReach[row] = Math.max(0, minRange - yOffset);
+            outerReach[row] = maxRange - yOffset;
+        }
+    }
+
+    /**
+     * Returns the stencil of every offset at least minRange and at most
+     * maxRange tiles away.
+     * @param minRange  the least distance included. Must not be negative.
+     * @param maxRange  the greatest distance included. Must not be less than
+     * minRange.
+     * @return the stencil for the range pair.
+     */
+    static RangeStencil of(int minRange, int maxRange) {
+        if(minRange < 0 || maxRange < minRange) {
+            throw new IllegalArgumentException("Invalid range: Min: " + minRange
+                    + ", Max: " + maxRange);
+        }
+        Long key = ImmutablePoint.pack(minRange, maxRange);
+        RangeStencil stencil = stencils.get(key);
+        if(stencil == null) {
+            stencil = new RangeStencil(minRange, maxRange);
+            RangeStencil existing = stencils.putIfAbsent(key, stencil);
+            if(existing != null) {
+                stencil = existing;
+            }
+        }
+        return stencil;
+    }
+
+    /**
+     * Sets the bit of every tile of a map with the given dimensions that
+     * this stencil covers when centered on (x, y). Bits are tile indices.
+     */
+    void stamp(BitSet tiles, int x, int y, int width, int height) {
+        int firstRow = Math.max(0, y - maxRange);
+        int lastRow = Math.min(height - 1, y + maxRange);
+        for(int tileY = firstRow; tileY <= lastRow; tileY++) {
+            int row = tileY - y + maxRange;
+            int inner = innerReach[row];
+            int outer = outerReach[row];
+            int rowStart = tileY * width;
+            if(inner == 0) {
+                setSpan(tiles, rowStart, x - outer, x + outer, width);
+            }
+            else {
+                setSpan(tiles, rowStart, x - outer, x - inner, width);
+                setSpan(tiles, rowStart, x + inner, x + outer, width);
+            }
+        }
+    }
+
+    private static void setSpan(BitSet tiles, int rowStart, int fromX, int toX, int width) {
+        int clippedFrom = Math.max(0, fromX);
+        int clippedTo = Math.min(width - 1, toX);
+        if(clippedFrom <= clippedTo) {
+            tiles.set(rowStart + clippedFrom, rowStart + clippedTo + 1);
+        }
+    }
+
+}
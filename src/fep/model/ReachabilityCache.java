@@ -0,0 +1,266 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.model;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A size bounded, least recently used cache of {@link MoveRange}s on a single
+ * map. The same move range tends to be asked for many times a turn (hovering,
+ * selecting, AI evaluation, danger zones), so repeated queries are answered
+ * from the cache as long as nothing that could change the answer has changed.
+ * <p>
+ * Entries are keyed on origin, move cost strategy, movement and allegiance
+ * strategy. The moving unit is the unit at the origin, so which units it may
+ * pass through is fixed by the key together with the origin tile's contents.
+ * <p>
+ * Rather than listening to the map, each entry records the map's modification
+ * count when it was calculated and is checked against the map's per-region
+ * modification stamps when it is looked up. A move range only depends on the
+ * tiles within movement of its origin, so an entry is only invalidated by
+ * changes to the regions under that diamond's bounding box; changes elsewhere
+ * on the map leave it valid.
+ * <p>
+ * This class is not thread safe.
+ * @author Kyle Buzsaki
+ * @see Map#getLastModified(int, int, int, int)
+ */
+public final class ReachabilityCache {
+
+    private final Map map;
+    private final int capacity;
+    private final LinkedHashMap<Key, Entry> entries;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long invalidationCount;
+
+    /**
+     * The parameters of a move range query.
+     */
+    private static final class Key {
+        private final int originIndex;
+        private final MoveCostStrategy moveCostStrategy;
+        private final int movement;
+        private final AllegianceStrategy allegianceStrategy;
+
+        private Key(int originIndex, MoveCostStrategy moveCostStrategy, int movement,
+                AllegianceStrategy allegianceStrategy) {
+            this.originIndex = originIndex;
+            this.moveCostStrategy = moveCostStrategy;
+            this.movement = movement;
+            this.allegianceStrategy = allegianceStrategy;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return originIndex == other.originIndex && movement == other.movement
+                    && moveCostStrategy.equals(other.moveCostStrategy)
+                    && allegianceStrategy.equals(other.allegianceStrategy);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = originIndex;
+            hash = 31 * hash + movement;
+            hash = 31 * hash + moveCostStrategy.hashCode();
+            hash = 31 * hash + allegianceStrategy.hashCode();
+            return hash;
+        }
+    }
+
+    /**
+     * A cached move range and the area of the map it depends on.
+     */
+    private static final class Entry {
+        private final MoveRange moveRange;
+        private final long modCount;
+        private final int minX;
+        private final int minY;
+        private final int maxX;
+        private final int maxY;
+
+        private Entry(MoveRange moveRange, long modCount) {
+            this.moveRange = moveRange;
+            this.modCount = modCount;
+            Map map = moveRange.getMap();
+            ImmutablePoint origin = moveRange.getOrigin();
+            // clamp first so that origin +/- radius cannot overflow
+            int radius = Math.min(moveRange.getMovement(), Math.max(map.getWidth(), map.getHeight()));
+            minX = origin.getX() - radius;
+            minY = origin.getY() - radius;
+            maxX = origin.getX() + radius;
+            maxY = origin.getY() + radius;
+        }
+
+        private boolean isValid(Map map) {
+            return map.getModCount() == modCount
+                    || map.getLastModified(minX, minY, maxX, maxY) <= modCount;
+        }
+    }
+
+    /**
+     * Creates an empty cache for the given map.
+     * @param map  the map whose move ranges are cached. Must be non-null.
+     * @param capacity  the most move ranges to hold at once. Must be positive.
+     */
+    public ReachabilityCache(Map map, int capacity) {
+        if(map == null) {
+            throw new IllegalArgumentException("Map must be non-null");
+        }
+        if(capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.map = map;
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns the move range from the given origin, calculating it only if
+     * there is no valid cached copy. The result is the same as that of
+     * {@link MoveRange#calculate(Map, ImmutablePoint, MoveCostStrategy, int,
+     * AllegianceStrategy) MoveRange.calculate} on this cache's map.
+     * @param origin  the starting position. Must be non-null and within the
+     * map's dimensions (exclusive).
+     * @param moveCostStrategy  determines the cost of entering each tile.
+     * Must be non-null.
+     * @param movement  the total movement cost that may be spent. Must not
+     * be negative.
+     * @param allegianceStrategy  decides which occupants can be passed
+     * through. Must be non-null.
+     * @return the move range from the given origin.
+     */
+    public MoveRange getMoveRange(ImmutablePoint origin, MoveCostStrategy moveCostStrategy,
+            int movement, AllegianceStrategy allegianceStrategy) {
+        int originIndex = map.indexOf(origin);
+        if(moveCostStrategy == null || allegianceStrategy == null) {
+            throw new IllegalArgumentException("Strategies must be non-null");
+        }
+        Key key = new Key(originIndex, moveCostStrategy, movement, allegianceStrategy);
+        Entry entry = entries.get(key);
+        if(entry != null) {
+            if(entry.isValid(map)) {
+                hitCount++;
+                return entry.moveRange;
+            }
+            entries.remove(key);
+            invalidationCount++;
+        }
+        missCount++;
+
+        MoveRange moveRange = MoveRange.calculate(map, origin, moveCostStrategy,
+                movement, allegianceStrategy);
+        entries.put(key, new Entry(moveRange, map.getModCount()));
+        if(entries.size() > capacity) {
+            Iterator<Entry> eldest = entries.values().iterator();
+            eldest.next();
+            eldest.remove();
+            evictionCount++;
+        }
+        return moveRange;
+    }
+
+    /**
+     * Returns the move range of the given unit from its current position.
+     * @param unit  the unit to move. Must be non-null and on this cache's map.
+     * @param moveCostStrategy  determines the cost of entering each tile.
+     * Must be non-null.
+     * @param movement  the total movement cost that may be spent. Must not
+     * be negative.
+     * @param allegianceStrategy  decides which occupants can be passed
+     * through. Must be non-null.
+     * @return the unit's move range.
+     * @see #getMoveRange(ImmutablePoint, MoveCostStrategy, int, AllegianceStrategy)
+     */
+    public MoveRange getMoveRange(Unit unit, MoveCostStrategy moveCostStrategy,
+            int movement, AllegianceStrategy allegianceStrategy) {
+        if(unit == null) {
+            throw new IllegalArgumentException("Unit must be non-null");
+        }
+        if(unit.getMap() != map) {
+            throw new IllegalArgumentException("Unit is not on this cache's map");
+        }
+        return getMoveRange(unit.getPosition(), moveCostStrategy, movement, allegianceStrategy);
+    }
+
+    /**
+     * Discards every cached move range. Statistics are kept.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    // Accessors
+    /**
+     * Returns the map this cache calculates move ranges on.
+     * @return this cache's map.
+     */
+    public Map getMap() {
+        return map;
+    }
+    /**
+     * Returns the most move ranges this cache holds at once.
+     * @return the capacity of this cache.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+    /**
+     * Returns the number of move ranges currently held, including any that
+     * have gone stale but not yet been looked up.
+     * @return the size of this cache.
+     */
+    public int getSize() {
+        return entries.size();
+    }
+
+    // Statistics
+    /**
+     * Returns the number of queries answered from the cache.
+     * @return the hit count.
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+    /**
+     * Returns the number of queries that had to be calculated, whether
+     * because nothing was cached or because the cached range was stale.
+     * @return the miss count.
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+    /**
+     * Returns the number of cached move ranges dropped to stay within capacity.
+     * @return the eviction count.
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+    /**
+     * Returns the number of cached move ranges found to be stale when looked
+     * up. Each of these is also counted as a miss.
+     * @return the invalidation count.
+     */
+    public long getInvalidationCount() {
+        return invalidationCount;
+    }
+    /**
+     * Returns the fraction of queries answered from the cache, or 0 if there
+     * have been no queries.
+     * @return the hit rate, between 0 and 1.
+     */
+    public double getHitRate() {
+        long queries = hitCount + missCount;
+        return queries == 0 ? 0 : (double) hitCount / queries;
+    }
+
+}
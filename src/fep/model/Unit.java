@@ -16,7 +16,6 @@ public class Unit {
      *  - UnitClass
      *  - Stats
      *  - Inventory
-     *  - Faction?
      * 
      * Methods:
      *  - Stat Getters:
@@ -26,14 +25,63 @@ public class Unit {
      *  - Apply Effect
      */
     
+    private final Faction faction;
+    /**
+     * This unit's key in the Zobrist hash of the maps it is placed on.
+     */
+    private final long hashKey;
     private Map map;
     
-    public Unit() {}
+    /**
+     * Constructs a {@link Faction#NEUTRAL neutral} unit.
+     */
+    public Unit() {
+        this(Faction.NEUTRAL);
+    }
+    
+    /**
+     * Constructs a unit belonging to the given faction. A unit's faction
+     * never changes, so that the maps it is placed on can index units by
+     * faction.
+     * @param faction  the unit's faction. Must be non-null.
+     */
+    public Unit(Faction faction) {
+        if(faction == null) {
+            throw new IllegalArgumentException("Faction must be non-null");
+        }
+        this.faction = faction;
+        this.hashKey = Zobrist.nextUnitKey();
+    }
+    
+    /**
+     * Returns the faction this unit fights for. Guaranteed to be non-null.
+     * @return this unit's faction.
+     */
+    public Faction getFaction() {
+        return faction;
+    }
     
     public boolean isOnMap() {
         return map != null;
     }
     
+    /**
+     * Returns the map this unit is on, or null if it is not on a map.
+     * @return this unit's map. May be null.
+     */
+    public Map getMap() {
+        return map;
+    }
+    
+    /**
+     * Returns the key this unit contributes to the state hash of its map.
+     * @return this unit's Zobrist key.
+     * @see Map#stateHash()
+     */
+    long getHashKey() {
+        return hashKey;
+    }
+    
     public ImmutablePoint getPosition() {
         if(map != null) {
             return map.getPositionOf(this);
@@ -0,0 +1,20 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.model;
+
+/**
+ * Represents a rule for selecting a subset of units, such as the units of a
+ * particular side.
+ * @author Kyle Buzsaki
+ */
+public interface UnitFilter {
+    
+    /**
+     * Determines whether the given unit is selected by this filter.
+     * @param unit  the unit to check. Must be non-null.
+     * @return  true if the unit is selected.
+     */
+    boolean accept(Unit unit);
+    
+}
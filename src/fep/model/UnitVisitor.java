@@ -0,0 +1,24 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.model;
+
+/**
+ * Receives the units found by one of the spatial queries of {@link Map}, 
+ * such as {@link Map#visitUnitsInDiamond(ImmutablePoint, int, UnitVisitor)}.
+ * Units are visited in row-major order of their positions.
+ * <p>
+ * A visitor must not modify the map it is visiting.
+ * @author Kyle Buzsaki
+ */
+public interface UnitVisitor {
+    
+    /**
+     * Visits a single unit found by a query.
+     * @param unit  the unit found. Never null.
+     * @param tileIndex  the tile index of the unit's position.
+     * @return  true to continue the query, or false to stop it.
+     */
+    boolean visit(Unit unit, int tileIndex);
+    
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The keys behind the Zobrist hash of a map's state. The hash is the XOR of
+ * a key for every (tile, terrain) pair and every (tile, unit) pair on the
+ * map, so each change to the map updates it with one or two XORs.
+ * <p>
+ * Rather than storing a table of random keys per tile, the key of a pair is
+ * derived by mixing a key for the terrain or unit with the tile index.
+ * Terrains are keyed by name, so a map's hash does not depend on the order
+ * its palette was built in or on the run of the program. Units are keyed in
+ * the order they are created.
+ * @author Kyle Buzsaki
+ */
+final class Zobrist {
+
+    /**
+     * The 64-bit golden ratio, which spreads consecutive inputs across the
+     * whole range before mixing.
+     */
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final long TERRAIN_SALT = 0x5DEECE66DL;
+    private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    private static final AtomicLong unitSequence = new AtomicLong();
+
+    private Zobrist() {}
+
+    /**
+     * Returns a fresh key for a newly created unit.
+     */
+    static long nextUnitKey() {
+        return mix(unitSequence.incrementAndGet() * GOLDEN_GAMMA);
+    }
+
+    /**
+     * Returns the key of the given terrain, derived from its name.
+     */
+    static long terrainKey(Terrain terrain) {
+        String name = terrain.getName();
+        long hash = FNV_OFFSET;
+        for(int i = 0; i < name.length(); i++) {
+            hash = (hash ^ name.charAt(i)) * FNV_PRIME;
+        }
+        return mix(hash ^ TERRAIN_SALT);
+    }
+
+    /**
+     * Returns the key of the terrain or unit with the given key placed on the
+     * tile with the given index.
+     */
+    static long placementKey(int index, long key) {
+        return mix(key + (index + 1) * GOLDEN_GAMMA);
+    }
+
+    /**
+     * The SplitMix64 finalizer: a bijection on longs whose every output bit
+     * depends on every input bit.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.model.event;
+
+import fep.model.ImmutablePoint;
+import fep.model.Map;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EventObject;
+import java.util.List;
+
+/**
+ * Represents the net effect of a batch of changes made to a map between
+ * {@link Map#beginBatch()} and {@link Map#endBatch()}.
+ * <p>
+ * Changes are coalesced: a unit that was added and then moved appears only
+ * as added, at its final position; a unit moved several times appears as a
+ * single move from where it started to where it ended; and changes that were
+ * undone within the batch do not appear at all. Each list is ordered by when
+ * its unit or tile was first changed in the batch.
+ * <p>
+ * The dirty region is the smallest rectangle containing every position
+ * named by the changes in this event.
+ * @author Kyle Buzsaki
+ */
+public class MapBatchEvent extends EventObject {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Map map;
+    private final List<UnitAddedEvent> unitsAdded;
+    private final List<UnitRemovedEvent> unitsRemoved;
+    private final List<UnitMovedEvent> unitsMoved;
+    private final List<TerrainChangedEvent> terrainChanges;
+    private final int dirtyMinX;
+    private final int dirtyMinY;
+    private final int dirtyMaxX;
+    private final int dirtyMaxY;
+
+    /**
+     * Constructs a MapBatchEvent representing the given net changes to the
+     * given map. The lists are copied.
+     * @param map  the map that was changed.
+     * @param unitsAdded  the units that are on the map now but were not before.
+     * @param unitsRemoved  the units that were on the map before but are not now.
+     * @param unitsMoved  the units that are on the map at a new position.
+     * @param terrainChanges  the tiles whose terrain is now different.
+     */
+    public MapBatchEvent(Map map, List<UnitAddedEvent> unitsAdded,
+            List<UnitRemovedEvent> unitsRemoved, List<UnitMovedEvent> unitsMoved,
+            List<TerrainChangedEvent> terrainChanges) {
+        super(map);
+        this.map = map;
+        this.unitsAdded = Collections.unmodifiableList(new ArrayList<>(unitsAdded));
+        this.unitsRemoved = Collections.unmodifiableList(new ArrayList<>(unitsRemoved));
+        this.unitsMoved = Collections.unmodifiableList(new ArrayList<>(unitsMoved));
+        this.terrainChanges = Collections.unmodifiableList(new ArrayList<>(terrainChanges));
+
+        int[] bounds = {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+        for(UnitAddedEvent event : unitsAdded) {
+            include(bounds, event.getPosition());
+        }
+        for(UnitRemovedEvent event : unitsRemoved) {
+            include(bounds, event.getPriorPosition());
+        }
+        for(UnitMovedEvent event : unitsMoved) {
+            include(bounds, event.getPriorPosition());
+            include(bounds, event.getNewPosition());
+        }
+        for(TerrainChangedEvent event : terrainChanges) {
+            include(bounds, event.getPointChanged());
+        }
+        dirtyMinX = bounds[0];
+        dirtyMinY = bounds[1];
+        dirtyMaxX = bounds[2];
+        dirtyMaxY = bounds[3];
+    }
+
+    /**
+     * Returns the map that was changed during this batch.
+     * @return the map changed.
+     */
+    public Map getMap() {
+        return map;
+    }
+
+    /**
+     * Returns the units added to the map during this batch, along with the
+     * positions they ended the batch at.
+     * @return an unmodifiable list of the units added.
+     */
+    public List<UnitAddedEvent> getUnitsAdded() {
+        return unitsAdded;
+    }
+
+    /**
+     * Returns the units removed from the map during this batch, along with
+     * the positions they started the batch at.
+     * @return an unmodifiable list of the units removed.
+     */
+    public List<UnitRemovedEvent> getUnitsRemoved() {
+        return unitsRemoved;
+    }
+
+    /**
+     * Returns the units that stayed on the map but ended the batch somewhere
+     * other than where they started it.
+     * @return an unmodifiable list of the units moved.
+     */
+    public List<UnitMovedEvent> getUnitsMoved() {
+        return unitsMoved;
+    }
+
+    /**
+     * Returns the tiles whose terrain at the end of the batch differs from
+     * their terrain at the start.
+     * @return an unmodifiable list of the terrain changes.
+     */
+    public List<TerrainChangedEvent> getTerrainChanges() {
+        return terrainChanges;
+    }
+
+    /**
+     * Returns whether this batch made no net changes to the map.
+     * @return true if every change in the batch was undone within it.
+     */
+    public boolean isEmpty() {
+        return dirtyMinX > dirtyMaxX;
+    }
+
+    /**
+     * Returns the x coordinate of the left edge of the dirty region.
+     * Undefined if this event is empty.
+     * @return the lowest x coordinate changed.
+     */
+    public int getDirtyX() {
+        return dirtyMinX;
+    }
+
+    /**
+     * Returns the y coordinate of the top edge of the dirty region.
+     * Undefined if this event is empty.
+     * @return the lowest y coordinate changed.
+     */
+    public int getDirtyY() {
+        return dirtyMinY;
+    }
+
+    /**
+     * Returns the width of the dirty region in tiles, or 0 if this event is
+     * empty.
+     * @return the width of the dirty region.
+     */
+    public int getDirtyWidth() {
+        return isEmpty() ? 0 : dirtyMaxX - dirtyMinX + 1;
+    }
+
+    /**
+     * Returns the height of the dirty region in tiles, or 0 if this event is
+     * empty.
+     * @return the height of the dirty region.
+     */
+    public int getDirtyHeight() {
+        return isEmpty() ? 0 : dirtyMaxY - dirtyMinY + 1;
+    }
+
+    /**
+     * Returns whether the given point lies within the dirty region.
+     * @param point  the point to check. Must be non-null.
+     * @return true if the point is within the dirty region.
+     */
+    public boolean isDirty(ImmutablePoint point) {
+        int x = point.getX();
+        int y = point.getY();
+        return x >= dirtyMinX && x <= dirtyMaxX && y >= dirtyMinY && y <= dirtyMaxY;
+    }
+
+    private static void include(int[] bounds, ImmutablePoint point) {
+        bounds[0] = Math.min(bounds[0], point.getX());
+        bounds[1] = Math.min(bounds[1], point.getY());
+        bounds[2] = Math.max(bounds[2], point.getX());
+        bounds[3] = Math.max(bounds[3], point.getY());
+    }
+
+}
@@ -6,7 +6,10 @@ package fep.model.event;
 import java.util.EventListener;
 
 /**
- *
+ * Receives notification of changes made to a {@link fep.model.Map}.
+ * Each change is described by a single immutable event object, which the map
+ * hands to every registered listener in turn. Changes made during a batch are
+ * described together by a single {@link MapBatchEvent}.
  * @author Kyle Buzsaki
  */
 public interface MapChangeListener extends EventListener {
@@ -17,4 +20,12 @@ public interface MapChangeListener extends EventListener {
     
     public void handleTerrainChanged(TerrainChangedEvent event);
     
+    /**
+     * Called once at the end of a batch of changes, in place of the 
+     * individual events for each change made during the batch.
+     * @param event  the net changes made during the batch.
+     * @see fep.model.Map#beginBatch()
+     */
+    public void handleBatch(MapBatchEvent event);
+    
 }
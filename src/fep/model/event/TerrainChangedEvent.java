@@ -68,6 +68,13 @@ public class TerrainChangedEvent extends EventObject {
         return newTerrain;
     }
     
-    
-    
+    /**
+     * Returns the tile index of the point that was changed during this event, as given by 
+     * {@link Map#indexOf(ImmutablePoint)}.
+     * @return the tile index of the point changed.
+     */
+    public int getIndexChanged() {
+        return map.indexOf(pointAltered);
+    }
+
 }
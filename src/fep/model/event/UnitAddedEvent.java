@@ -3,6 +3,7 @@
  */
 package fep.model.event;
 
+import fep.model.ImmutablePoint;
 import fep.model.Map;
 import fep.model.Unit;
 import java.util.EventObject;
@@ -15,17 +16,20 @@ public class UnitAddedEvent extends EventObject {
     
     private final Map map;
     private final Unit unitAdded;
+    private final ImmutablePoint position;
 
     /**
      * Constructs a UnitAddedEvent representing the addition of the given unit
      * to the given map.
      * @param map  the map added to.
      * @param unitAdded  the unit added.
+     * @param position  the position the unit was added at.
      */
-    public UnitAddedEvent(Map map, Unit unitAdded) {
+    public UnitAddedEvent(Map map, Unit unitAdded, ImmutablePoint position) {
         super(map);
         this.map = map;
         this.unitAdded = unitAdded;
+        this.position = position;
     }
     
     /**
@@ -44,4 +48,21 @@ public class UnitAddedEvent extends EventObject {
         return unitAdded;
     }
     
+    /**
+     * Returns the position the unit was added at during this event.
+     * @return the position the unit was added at.
+     */
+    public ImmutablePoint getPosition() {
+        return position;
+    }
+    
+    /**
+     * Returns the tile index of the position the unit was added at, as given by 
+     * {@link Map#indexOf(ImmutablePoint)}.
+     * @return the tile index of the position added at.
+     */
+    public int getIndex() {
+        return map.indexOf(position);
+    }
+
 }
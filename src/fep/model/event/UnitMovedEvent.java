@@ -67,4 +67,22 @@ public class UnitMovedEvent extends EventObject {
         return priorPosition;
     }
     
+    /**
+     * Returns the tile index of the point that the unit was moved to, as given by 
+     * {@link Map#indexOf(ImmutablePoint)}.
+     * @return the tile index of the point moved to.
+     */
+    public int getNewIndex() {
+        return map.indexOf(newPosition);
+    }
+    
+    /**
+     * Returns the tile index of the point that the unit was moved from, as given by 
+     * {@link Map#indexOf(ImmutablePoint)}.
+     * @return the tile index of the point moved from.
+     */
+    public int getPriorIndex() {
+        return map.indexOf(priorPosition);
+    }
+
 }
@@ -3,6 +3,7 @@
  */
 package fep.model.event;
 
+import fep.model.ImmutablePoint;
 import fep.model.Map;
 import fep.model.Unit;
 import java.awt.event.ActionEvent;
@@ -16,17 +17,20 @@ public class UnitRemovedEvent extends EventObject {
     
     private final Map map;
     private final Unit unitRemoved;
+    private final ImmutablePoint priorPosition;
 
     /**
      * Constructs a UnitRemovedEvent representing the removal of the given unit
      * from the given map.
      * @param map  the map removed from.
      * @param unitRemoved  the unit removed.
+     * @param priorPosition  the position the unit was removed from.
      */
-    public UnitRemovedEvent(Map map, Unit unitRemoved) {
+    public UnitRemovedEvent(Map map, Unit unitRemoved, ImmutablePoint priorPosition) {
         super(map);
         this.map = map;
         this.unitRemoved = unitRemoved;
+        this.priorPosition = priorPosition;
     }
     
     /**
@@ -45,4 +49,21 @@ public class UnitRemovedEvent extends EventObject {
         return unitRemoved;
     }
     
+    /**
+     * Returns the position the unit was removed from during this event.
+     * @return the position the unit was removed from.
+     */
+    public ImmutablePoint getPriorPosition() {
+        return priorPosition;
+    }
+    
+    /**
+     * Returns the tile index of the position the unit was removed from, as given by 
+     * {@link Map#indexOf(ImmutablePoint)}.
+     * @return the tile index of the position removed from.
+     */
+    public int getPriorIndex() {
+        return map.indexOf(priorPosition);
+    }
+
 }
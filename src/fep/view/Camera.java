@@ -0,0 +1,283 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.view;
+
+import fep.model.ImmutablePoint;
+import fep.model.Map;
+import java.awt.Graphics;
+import java.awt.image.BufferStrategy;
+
+/**
+ * A screen-sized window onto a map that scrolls smoothly to follow a target,
+ * usually the cursor. Like FE's camera, it only scrolls when the target gets
+ * within a margin of the edge of the screen, and it glides there a few pixels
+ * per tick rather than jumping.
+ * <p>
+ * The camera draws through a {@link MapRenderer} whose view is the screen
+ * plus one more row and column of tiles, so that the partly visible tiles at
+ * the edges are already drawn while scrolling between tile boundaries. Only
+ * the visible tiles are ever drawn, and when the camera crosses a tile
+ * boundary the renderer shifts what it has already drawn and draws only the
+ * newly exposed row or column. The cost of a frame therefore depends on the
+ * size of the screen and how far it scrolled, not on the size of the map.
+ * <p>
+ * Like the renderer, a camera must only be used from the thread that
+ * modifies the map.
+ * @author Kyle Buzsaki
+ */
+public class Camera {
+
+    private final MapRenderer renderer;
+    private final int tileSize;
+    private final int screenWidth;
+    private final int screenHeight;
+    private final int maxX;
+    private final int maxY;
+    private int edgeMargin;
+    private int scrollSpeed;
+    /**
+     * The pixel position of the top left corner of the screen on the map.
+     */
+    private int x;
+    private int y;
+    /**
+     * The pixel position the camera is scrolling towards.
+     */
+    private int targetX;
+    private int targetY;
+    /**
+     * Whether the screen has moved since it was last shown.
+     */
+    private boolean moved;
+
+    private Camera(MapRenderer renderer, int screenWidth, int screenHeight) {
+        this.renderer = renderer;
+        this.tileSize = renderer.getTileSize();
+        this.screenWidth = screenWidth;
+        this.screenHeight = screenHeight;
+        Map map = renderer.getMap();
+        this.maxX = (map.getWidth() - screenWidth) * tileSize;
+        this.maxY = (map.getHeight() - screenHeight) * tileSize;
+        this.edgeMargin = Math.min(2, (Math.min(screenWidth, screenHeight) - 1) / 2);
+        this.scrollSpeed = Math.max(1, tileSize / 4);
+        this.moved = true;
+    }
+
+    /**
+     * Creates a camera showing the given map, with its screen at the top
+     * left corner of the map.
+     * @param map  the map to show. Must be non-null.
+     * @param atlas  the sprites to draw tiles with. Must be non-null.
+     * @param screenWidth  the width of the screen in tiles. Must be positive;
+     * screens wider than the map are narrowed to fit it.
+     * @param screenHeight  the height of the screen in tiles. Must be
+     * positive; screens taller than the map are shortened to fit it.
+     * @return the camera, whose renderer is listening to the map.
+     */
+    public static Camera attach(Map map, TileAtlas atlas, int screenWidth, int screenHeight) {
+        if(map == null || atlas == null) {
+            throw new IllegalArgumentException("Map and atlas must be non-null");
+        }
+        if(screenWidth <= 0 || screenHeight <= 0) {
+            throw new IllegalArgumentException("Screen dimensions must be positive: "
+                    + "Width: " + screenWidth + ", Height: " + screenHeight);
+        }
+        int width = Math.min(screenWidth, map.getWidth());
+        int height = Math.min(screenHeight, map.getHeight());
+        // one tile of margin for the partly visible tiles while scrolling
+        MapRenderer renderer = MapRenderer.attach(map, atlas, width + 1, height + 1);
+        return new Camera(renderer, width, height);
+    }
+
+    /**
+     * Stops the camera's renderer listening to the map.
+     */
+    public void detach() {
+        renderer.detach();
+    }
+
+    // Accessors
+    /**
+     * Returns the renderer that draws the camera's tiles, for setting the
+     * cursor and highlights.
+     * @return this camera's renderer.
+     */
+    public MapRenderer getRenderer() {
+        return renderer;
+    }
+    /**
+     * Returns the x position of the left edge of the screen on the map.
+     * @return the x position of the screen, in pixels.
+     */
+    public int getX() {
+        return x;
+    }
+    /**
+     * Returns the y position of the top edge of the screen on the map.
+     * @return the y position of the screen, in pixels.
+     */
+    public int getY() {
+        return y;
+    }
+    /**
+     * Returns the width of the screen in pixels.
+     * @return the screen width.
+     */
+    public int getScreenWidth() {
+        return screenWidth * tileSize;
+    }
+    /**
+     * Returns the height of the screen in pixels.
+     * @return the screen height.
+     */
+    public int getScreenHeight() {
+        return screenHeight * tileSize;
+    }
+    /**
+     * Returns true if the camera has not yet reached its target.
+     * @return whether the camera is scrolling.
+     */
+    public boolean isScrolling() {
+        return x != targetX || y != targetY;
+    }
+
+    // Settings
+    /**
+     * Sets how close, in tiles, the target may get to the edge of the
+     * screen before the camera scrolls. Margins too large for the screen are
+     * reduced to keep the target on screen.
+     * @param edgeMargin  the margin in tiles. Must not be negative.
+     */
+    public void setEdgeMargin(int edgeMargin) {
+        if(edgeMargin < 0) {
+            throw new IllegalArgumentException("Edge margin must not be negative: " + edgeMargin);
+        }
+        this.edgeMargin = edgeMargin;
+    }
+    /**
+     * Sets how many pixels the camera scrolls each tick.
+     * @param scrollSpeed  the scroll speed in pixels per tick. Must be
+     * positive.
+     */
+    public void setScrollSpeed(int scrollSpeed) {
+        if(scrollSpeed <= 0) {
+            throw new IllegalArgumentException("Scroll speed must be positive: " + scrollSpeed);
+        }
+        this.scrollSpeed = scrollSpeed;
+    }
+
+    // Scrolling
+    /**
+     * Sets the camera to scroll as needed to keep the given position at
+     * least the edge margin away from the edges of the screen. The camera
+     * moves towards it on later ticks.
+     * @param target  the position to follow. Must be non-null.
+     */
+    public void follow(ImmutablePoint target) {
+        int marginX = Math.min(edgeMargin, (screenWidth - 1) / 2);
+        int marginY = Math.min(edgeMargin, (screenHeight - 1) / 2);
+        int targetLeft = targetX / tileSize;
+        int targetTop = targetY / tileSize;
+        if(target.getX() < targetLeft + marginX) {
+            targetLeft = target.getX() - marginX;
+        }
+        else if(target.getX() >= targetLeft + screenWidth - marginX) {
+            targetLeft = target.getX() - screenWidth + marginX + 1;
+        }
+        if(target.getY() < targetTop + marginY) {
+            targetTop = target.getY() - marginY;
+        }
+        else if(target.getY() >= targetTop + screenHeight - marginY) {
+            targetTop = target.getY() - screenHeight + marginY + 1;
+        }
+        targetX = clamp(targetLeft * tileSize, maxX);
+        targetY = clamp(targetTop * tileSize, maxY);
+    }
+    /**
+     * Moves the screen straight to the given pixel position, without
+     * scrolling.
+     * @param x  the x position of the left edge of the screen.
+     * @param y  the y position of the top edge of the screen.
+     */
+    public void jumpTo(int x, int y) {
+        targetX = clamp(x, maxX);
+        targetY = clamp(y, maxY);
+        moveTo(targetX, targetY);
+    }
+    /**
+     * Scrolls one tick's worth towards the target.
+     */
+    public void tick() {
+        if(isScrolling()) {
+            moveTo(step(x, targetX), step(y, targetY));
+        }
+    }
+
+    // Drawing
+    /**
+     * Brings the renderer up to date and draws the screen with its top left
+     * corner at the given pixel position.
+     * @param g  the graphics to draw with. Must be non-null.
+     * @param screenX  the x position to draw at, in pixels.
+     * @param screenY  the y position to draw at, in pixels.
+     */
+    public void paint(Graphics g, int screenX, int screenY) {
+        renderer.update();
+        Graphics clipped = g.create(screenX, screenY, getScreenWidth(), getScreenHeight());
+        try {
+            renderer.paint(clipped, renderer.getViewX() * tileSize - x,
+                    renderer.getViewY() * tileSize - y);
+        } finally {
+            clipped.dispose();
+        }
+        moved = false;
+    }
+    /**
+     * Shows the screen through the given buffer strategy. If no tile changed,
+     * the camera did not move and the strategy has not lost its contents, no
+     * frame is drawn.
+     * @param strategy  the strategy to draw through. Must be non-null.
+     * @return true if a frame was shown.
+     */
+    public boolean render(BufferStrategy strategy) {
+        if(renderer.getDirtyCount() == 0 && !moved
+                && !strategy.contentsLost() && !strategy.contentsRestored()) {
+            return false;
+        }
+        do {
+            do {
+                Graphics g = strategy.getDrawGraphics();
+                try {
+                    paint(g, 0, 0);
+                } finally {
+                    g.dispose();
+                }
+            } while(strategy.contentsRestored());
+            strategy.show();
+        } while(strategy.contentsLost());
+        return true;
+    }
+
+    // Private Implementation Methods
+    private void moveTo(int newX, int newY) {
+        if(newX != x || newY != y) {
+            x = newX;
+            y = newY;
+            moved = true;
+            renderer.setViewOrigin(x / tileSize, y / tileSize);
+        }
+    }
+
+    private int step(int from, int to) {
+        if(from < to) {
+            return Math.min(to, from + scrollSpeed);
+        }
+        return Math.max(to, from - scrollSpeed);
+    }
+
+    private static int clamp(int value, int max) {
+        return Math.max(0, Math.min(value, max));
+    }
+
+}
@@ -3,19 +3,51 @@
  */
 package fep.view;
 
+import java.awt.Canvas;
 import java.awt.Dimension;
+import java.awt.image.BufferStrategy;
 import javax.swing.JFrame;
 
 /**
- *
+ * The game's window. Holds a single canvas that is drawn to actively through
+ * a page flipping {@link BufferStrategy} rather than through Swing's repaint
+ * mechanism, so frames are drawn by the game loop and not on the event 
+ * dispatch thread.
  * @author Kyle Buzsaki
  */
 public class GameWindow extends JFrame {
     
+    /**
+     * The number of buffers to flip between.
+     */
+    private static final int BUFFER_COUNT = 2;
+    
+    private final Canvas canvas;
+    
+    /**
+     * Constructs a window whose canvas is the size of the GBA screen.
+     */
     public GameWindow() {
+        this(240, 160);
+    }
+    
+    /**
+     * Constructs a window whose canvas has the given size.
+     * @param width  the width of the canvas in pixels.
+     * @param height  the height of the canvas in pixels.
+     */
+    public GameWindow(int width, int height) {
         super("FEP GameWindow");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setFocusable(true);
+        setIgnoreRepaint(true);
+        
+        canvas = new Canvas();
+        canvas.setPreferredSize(new Dimension(width, height));
+        canvas.setIgnoreRepaint(true);
+        // keep keyboard focus on the window, where the key listeners are
+        canvas.setFocusable(false);
+        add(canvas);
     }
     
     public void start() {
@@ -26,6 +58,17 @@ public class GameWindow extends JFrame {
         
         pack();
         setVisible(true);
+        // the canvas must be displayable before it can have a strategy
+        canvas.createBufferStrategy(BUFFER_COUNT);
+    }
+    
+    /**
+     * Returns the strategy for drawing to the canvas. Null until the window
+     * has been started.
+     * @return the canvas's buffer strategy.
+     */
+    public BufferStrategy getCanvasStrategy() {
+        return canvas.getBufferStrategy();
     }
     
 }
@@ -0,0 +1,421 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.view;
+
+import fep.model.ImmutablePoint;
+import fep.model.Map;
+import fep.model.Unit;
+import fep.model.event.MapBatchEvent;
+import fep.model.event.MapChangeListener;
+import fep.model.event.TerrainChangedEvent;
+import fep.model.event.UnitAddedEvent;
+import fep.model.event.UnitMovedEvent;
+import fep.model.event.UnitRemovedEvent;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Draws a rectangular view of a map, one tile at a time from a
+ * {@link TileAtlas}, redrawing only the tiles that have changed.
+ * <p>
+ * The view is kept in an offscreen image. The renderer listens to its map
+ * and marks the tiles of every change dirty, as do changes to the cursor and
+ * the highlighted tiles; {@link #update()} redraws just those tiles into the
+ * image. A frame is then a single copy of the image to the screen, and when
+ * nothing has changed {@link #render(BufferStrategy)} skips the frame
+ * entirely. Moving the view shifts the image and draws only the tiles it
+ * exposes; see {@link Camera} for scrolling views.
+ * <p>
+ * A renderer reads the live map, so like the map it must only be used from
+ * the thread that modifies the map, normally the game loop thread.
+ * @author Kyle Buzsaki
+ */
+public class MapRenderer implements MapChangeListener {
+
+    private final Map map;
+    private final TileAtlas atlas;
+    private final int tileSize;
+    private final int viewWidth;
+    private final int viewHeight;
+    private int viewX;
+    private int viewY;
+    /**
+     * The view as of the last update, viewWidth by viewHeight tiles.
+     */
+    private final BufferedImage image;
+    /**
+     * The tiles that need to be redrawn, by map tile index. Only tiles
+     * within the view are marked.
+     */
+    private final BitSet dirtyTiles;
+    /**
+     * The atlas slot of each palette id of the map, or -1 if not looked up.
+     */
+    private int[] paletteSlots;
+    private ImmutablePoint cursor;
+    /**
+     * The tile index of the cursor, or -1 if it is hidden.
+     */
+    private int cursorIndex;
+    private BitSet highlightedTiles;
+    private long tilesDrawn;
+
+    private MapRenderer(Map map, TileAtlas atlas, int viewWidth, int viewHeight) {
+        this.map = map;
+        this.atlas = atlas;
+        this.tileSize = atlas.getTileSize();
+        this.viewWidth = Math.min(viewWidth, map.getWidth());
+        this.viewHeight = Math.min(viewHeight, map.getHeight());
+        this.image = new BufferedImage(this.viewWidth * tileSize, this.viewHeight * tileSize,
+                BufferedImage.TYPE_INT_RGB);
+        this.dirtyTiles = new BitSet(map.getTileCount());
+        this.paletteSlots = new int[0];
+        this.highlightedTiles = new BitSet();
+        this.cursorIndex = -1;
+        markAllDirty();
+    }
+
+    /**
+     * Creates a renderer for a view of the given map and starts listening to
+     * the map. The view starts at the top left corner of the map.
+     * @param map  the map to draw. Must be non-null.
+     * @param atlas  the sprites to draw tiles with. Must be non-null.
+     * @param viewWidth  the width of the view in tiles. Must be positive;
+     * views wider than the map are narrowed to fit it.
+     * @param viewHeight  the height of the view in tiles. Must be positive;
+     * views taller than the map are shortened to fit it.
+     * @return the renderer, registered as a listener on the map.
+     */
+    public static MapRenderer attach(Map map, TileAtlas atlas, int viewWidth, int viewHeight) {
+        if(map == null || atlas == null) {
+            throw new IllegalArgumentException("Map and atlas must be non-null");
+        }
+        if(viewWidth <= 0 || viewHeight <= 0) {
+            throw new IllegalArgumentException("View dimensions must be positive: "
+                    + "Width: " + viewWidth + ", Height: " + viewHeight);
+        }
+        MapRenderer renderer = new MapRenderer(map, atlas, viewWidth, viewHeight);
+        map.addMapChangeListener(renderer);
+        return renderer;
+    }
+
+    /**
+     * Stops listening to the map. The renderer will no longer notice changes
+     * to the map.
+     */
+    public void detach() {
+        map.removeMapChangeListener(this);
+    }
+
+    // Accessors
+    /**
+     * Returns the map this renderer draws.
+     * @return this renderer's map.
+     */
+    public Map getMap() {
+        return map;
+    }
+    /**
+     * Returns the offscreen image of the view. It is up to date as of the
+     * last call to {@link #update()}.
+     * @return the image of the view.
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+    /**
+     * Returns the width and height of each tile in pixels.
+     * @return the tile size.
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+    /**
+     * Returns the x coordinate of the tile at the top left of the view.
+     * @return the left edge of the view, in tiles.
+     */
+    public int getViewX() {
+        return viewX;
+    }
+    /**
+     * Returns the y coordinate of the tile at the top left of the view.
+     * @return the top edge of the view, in tiles.
+     */
+    public int getViewY() {
+        return viewY;
+    }
+    /**
+     * Returns the width of the view in tiles.
+     * @return the width of the view.
+     */
+    public int getViewWidth() {
+        return viewWidth;
+    }
+    /**
+     * Returns the height of the view in tiles.
+     * @return the height of the view.
+     */
+    public int getViewHeight() {
+        return viewHeight;
+    }
+    /**
+     * Returns the number of tiles waiting to be redrawn.
+     * @return the number of dirty tiles.
+     */
+    public int getDirtyCount() {
+        return dirtyTiles.cardinality();
+    }
+    /**
+     * Returns the number of tiles this renderer has drawn since it was
+     * created. Useful for checking how much redrawing is being avoided.
+     * @return the number of tiles drawn.
+     */
+    public long getTilesDrawn() {
+        return tilesDrawn;
+    }
+
+    // View State
+    /**
+     * Moves the view so that its top left corner is at the given tile. The
+     * view is clamped to the map. The part of the old view that is still in
+     * view is shifted across the image rather than redrawn, so only the
+     * newly exposed tiles are marked dirty.
+     * @param x  the x coordinate of the new top left tile.
+     * @param y  the y coordinate of the new top left tile.
+     */
+    public void setViewOrigin(int x, int y) {
+        int clampedX = Math.max(0, Math.min(x, map.getWidth() - viewWidth));
+        int clampedY = Math.max(0, Math.min(y, map.getHeight() - viewHeight));
+        int dx = clampedX - viewX;
+        int dy = clampedY - viewY;
+        if(dx == 0 && dy == 0) {
+            return;
+        }
+        viewX = clampedX;
+        viewY = clampedY;
+        if(Math.abs(dx) >= viewWidth || Math.abs(dy) >= viewHeight) {
+            // nothing left in view to keep
+            dirtyTiles.clear();
+            markAllDirty();
+            return;
+        }
+        
+        Graphics2D g = image.createGraphics();
+        try {
+            g.copyArea(Math.max(0, dx) * tileSize, Math.max(0, dy) * tileSize,
+                    (viewWidth - Math.abs(dx)) * tileSize, (viewHeight - Math.abs(dy)) * tileSize,
+                    -dx * tileSize, -dy * tileSize);
+        } finally {
+            g.dispose();
+        }
+        // dirty tiles that scrolled out of view no longer need drawing
+        for(int tile = dirtyTiles.nextSetBit(0); tile >= 0; tile = dirtyTiles.nextSetBit(tile + 1)) {
+            if(!inView(tile)) {
+                dirtyTiles.clear(tile);
+            }
+        }
+        int exposedLeft = dx < 0 ? 0 : viewWidth - dx;
+        int exposedRight = dx < 0 ? -dx : viewWidth;
+        int exposedTop = dy < 0 ? 0 : viewHeight - dy;
+        int exposedBottom = dy < 0 ? -dy : viewHeight;
+        int width = map.getWidth();
+        for(int row = 0; row < viewHeight; row++) {
+            int rowStart = (viewY + row) * width + viewX;
+            if(row >= exposedTop && row < exposedBottom) {
+                dirtyTiles.set(rowStart, rowStart + viewWidth);
+            }
+            else if(dx != 0) {
+                dirtyTiles.set(rowStart + exposedLeft, rowStart + exposedRight);
+            }
+        }
+    }
+    /**
+     * Moves the cursor to the given position, redrawing the tiles it leaves
+     * and enters.
+     * @param position  the new cursor position. May be null to hide the
+     * cursor.
+     */
+    public void setCursor(ImmutablePoint position) {
+        if(position == null ? cursor == null : position.equals(cursor)) {
+            return;
+        }
+        int index = position == null ? -1 : map.indexOf(position);
+        if(cursorIndex >= 0) {
+            markDirty(cursorIndex);
+        }
+        if(index >= 0) {
+            markDirty(index);
+        }
+        cursor = position;
+        cursorIndex = index;
+    }
+    /**
+     * Highlights the given tiles, as when showing a unit's move range. Only
+     * tiles whose highlighting changes are redrawn.
+     * @param tiles  the tiles to highlight, by tile index. May be null to
+     * clear the highlight. The bitset is copied.
+     */
+    public void setHighlightedTiles(BitSet tiles) {
+        BitSet highlighted = tiles == null ? new BitSet() : (BitSet) tiles.clone();
+        BitSet changed = (BitSet) highlighted.clone();
+        changed.xor(highlightedTiles);
+        for(int tile = changed.nextSetBit(0); tile >= 0; tile = changed.nextSetBit(tile + 1)) {
+            markDirty(tile);
+        }
+        highlightedTiles = highlighted;
+    }
+
+    // Dirty Tracking
+    /**
+     * Marks the tile with the given index to be redrawn on the next update.
+     * Tiles outside the view are ignored.
+     * @param tileIndex  a tile index of this renderer's map.
+     */
+    public void markDirty(int tileIndex) {
+        if(inView(tileIndex)) {
+            dirtyTiles.set(tileIndex);
+        }
+    }
+    /**
+     * Marks every tile in the view to be redrawn on the next update.
+     */
+    public void markAllDirty() {
+        int width = map.getWidth();
+        for(int y = viewY; y < viewY + viewHeight; y++) {
+            dirtyTiles.set(y * width + viewX, y * width + viewX + viewWidth);
+        }
+    }
+
+    // Drawing
+    /**
+     * Redraws every dirty tile into the offscreen image.
+     * @return true if any tile was redrawn.
+     */
+    public boolean update() {
+        if(dirtyTiles.isEmpty()) {
+            return false;
+        }
+        Graphics2D g = image.createGraphics();
+        try {
+            int width = map.getWidth();
+            for(int tile = dirtyTiles.nextSetBit(0); tile >= 0; tile = dirtyTiles.nextSetBit(tile + 1)) {
+                drawTile(g, tile, (tile % width - viewX) * tileSize, (tile / width - viewY) * tileSize);
+            }
+        } finally {
+            g.dispose();
+        }
+        tilesDrawn += dirtyTiles.cardinality();
+        dirtyTiles.clear();
+        return true;
+    }
+    /**
+     * Draws the view as of the last update with its top left corner at the
+     * given pixel position.
+     * @param g  the graphics to draw with. Must be non-null.
+     * @param x  the x position to draw at, in pixels.
+     * @param y  the y position to draw at, in pixels.
+     */
+    public void paint(Graphics g, int x, int y) {
+        g.drawImage(image, x, y, null);
+    }
+    /**
+     * Updates the view and shows it through the given buffer strategy. If no
+     * tile changed and the strategy has not lost its contents, no frame is
+     * drawn.
+     * @param strategy  the strategy to draw through. Must be non-null.
+     * @return true if a frame was shown.
+     */
+    public boolean render(BufferStrategy strategy) {
+        boolean changed = update();
+        if(!changed && !strategy.contentsLost() && !strategy.contentsRestored()) {
+            return false;
+        }
+        do {
+            do {
+                Graphics g = strategy.getDrawGraphics();
+                try {
+                    paint(g, 0, 0);
+                } finally {
+                    g.dispose();
+                }
+            } while(strategy.contentsRestored());
+            strategy.show();
+        } while(strategy.contentsLost());
+        return true;
+    }
+
+    // MapChangeListener Methods
+    @Override
+    public void handleUnitAdded(UnitAddedEvent event) {
+        markDirty(event.getIndex());
+    }
+    @Override
+    public void handleUnitRemoved(UnitRemovedEvent event) {
+        markDirty(event.getPriorIndex());
+    }
+    @Override
+    public void handleUnitMoved(UnitMovedEvent event) {
+        markDirty(event.getPriorIndex());
+        markDirty(event.getNewIndex());
+    }
+    @Override
+    public void handleTerrainChanged(TerrainChangedEvent event) {
+        markDirty(event.getIndexChanged());
+    }
+    @Override
+    public void handleBatch(MapBatchEvent event) {
+        for(UnitAddedEvent addition : event.getUnitsAdded()) {
+            handleUnitAdded(addition);
+        }
+        for(UnitRemovedEvent removal : event.getUnitsRemoved()) {
+            handleUnitRemoved(removal);
+        }
+        for(UnitMovedEvent move : event.getUnitsMoved()) {
+            handleUnitMoved(move);
+        }
+        for(TerrainChangedEvent terrainChange : event.getTerrainChanges()) {
+            handleTerrainChanged(terrainChange);
+        }
+    }
+
+    // Private Implementation Methods
+    private boolean inView(int tileIndex) {
+        int x = map.xOf(tileIndex);
+        int y = map.yOf(tileIndex);
+        return x >= viewX && x < viewX + viewWidth && y >= viewY && y < viewY + viewHeight;
+    }
+
+    private void drawTile(Graphics2D g, int tile, int x, int y) {
+        atlas.draw(g, getPaletteSlot(map.getTerrainIdAt(tile)), x, y);
+        if(highlightedTiles.get(tile)) {
+            atlas.draw(g, TileAtlas.HIGHLIGHT_SLOT, x, y);
+        }
+        Unit unit = map.getUnitAt(tile);
+        if(unit != null) {
+            atlas.draw(g, TileAtlas.UNIT_SLOT, x, y);
+        }
+        if(tile == cursorIndex) {
+            atlas.draw(g, TileAtlas.CURSOR_SLOT, x, y);
+        }
+    }
+
+    private int getPaletteSlot(int terrainId) {
+        if(terrainId >= paletteSlots.length) {
+            int oldLength = paletteSlots.length;
+            paletteSlots = Arrays.copyOf(paletteSlots, map.getPaletteSize());
+            Arrays.fill(paletteSlots, oldLength, paletteSlots.length, -1);
+        }
+        int slot = paletteSlots[terrainId];
+        if(slot < 0) {
+            slot = atlas.getSlotOf(map.getPaletteTerrain(terrainId));
+            paletteSlots[terrainId] = slot;
+        }
+        return slot;
+    }
+
+}
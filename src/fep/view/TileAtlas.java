@@ -0,0 +1,177 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.view;
+
+import fep.model.DefaultTerrain;
+import fep.model.Terrain;
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+
+/**
+ * A single sheet of pre-drawn tile images, one square slot per sprite. Each
+ * terrain is drawn into its own slot the first time it is asked for, so
+ * drawing a tile is a single image copy from the sheet no matter how
+ * complicated the sprite is to draw.
+ * <p>
+ * The first slots hold the sprites drawn over terrain: a unit, a move
+ * highlight and the cursor. These are translucent where the terrain should
+ * show through.
+ * @author Kyle Buzsaki
+ */
+public class TileAtlas {
+
+    /**
+     * The slot of the unit sprite.
+     */
+    public static final int UNIT_SLOT = 0;
+    /**
+     * The slot of the move highlight sprite.
+     */
+    public static final int HIGHLIGHT_SLOT = 1;
+    /**
+     * The slot of the cursor sprite.
+     */
+    public static final int CURSOR_SLOT = 2;
+    /**
+     * The number of slots used by overlay sprites, and so the slot of the
+     * first terrain.
+     */
+    private static final int OVERLAY_SLOTS = 3;
+
+    private final int tileSize;
+    private BufferedImage sheet;
+    private int slotCount;
+    private final java.util.Map<Terrain, Integer> terrainSlots;
+
+    /**
+     * Constructs an atlas of square sprites of the given size.
+     * @param tileSize  the width and height of each sprite in pixels. Must
+     * be at least 4.
+     */
+    public TileAtlas(int tileSize) {
+        if(tileSize < 4) {
+            throw new IllegalArgumentException("Tile size must be at least 4: " + tileSize);
+        }
+        this.tileSize = tileSize;
+        this.sheet = new BufferedImage(tileSize * 8, tileSize, BufferedImage.TYPE_INT_ARGB);
+        this.terrainSlots = new HashMap<>();
+        drawOverlays();
+        slotCount = OVERLAY_SLOTS;
+    }
+
+    /**
+     * Returns the width and height of each sprite in pixels.
+     * @return the tile size.
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Returns the slot holding the sprite of the given terrain, drawing it
+     * into the sheet first if this is the first time it is asked for.
+     * @param terrain  the terrain to look up. Must be non-null.
+     * @return the slot of the terrain's sprite.
+     */
+    public int getSlotOf(Terrain terrain) {
+        Integer slot = terrainSlots.get(terrain);
+        if(slot == null) {
+            if(terrain == null) {
+                throw new IllegalArgumentException("Terrain must be non-null");
+            }
+            slot = allocateSlot();
+            drawTerrain(terrain, slot);
+            terrainSlots.put(terrain, slot);
+        }
+        return slot;
+    }
+
+    /**
+     * Draws the sprite in the given slot with its top left corner at the
+     * given pixel position.
+     * @param g  the graphics to draw with. Must be non-null.
+     * @param slot  the slot of the sprite to draw.
+     * @param x  the x position to draw at, in pixels.
+     * @param y  the y position to draw at, in pixels.
+     */
+    public void draw(Graphics2D g, int slot, int x, int y) {
+        int sourceX = slot * tileSize;
+        g.drawImage(sheet, x, y, x + tileSize, y + tileSize,
+                sourceX, 0, sourceX + tileSize, tileSize, null);
+    }
+
+    // Private Implementation Methods
+    private int allocateSlot() {
+        if((slotCount + 1) * tileSize > sheet.getWidth()) {
+            BufferedImage grown = new BufferedImage(sheet.getWidth() * 2, tileSize,
+                    BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = grown.createGraphics();
+            g.drawImage(sheet, 0, 0, null);
+            g.dispose();
+            sheet = grown;
+        }
+        return slotCount++;
+    }
+
+    private void drawOverlays() {
+        Graphics2D g = sheet.createGraphics();
+        int inset = tileSize / 8;
+
+        g.setColor(new Color(0x20, 0x40, 0xD0));
+        g.fillOval(UNIT_SLOT * tileSize + inset, inset, tileSize - 2 * inset, tileSize - 2 * inset);
+        g.setColor(Color.WHITE);
+        g.drawOval(UNIT_SLOT * tileSize + inset, inset, tileSize - 2 * inset, tileSize - 2 * inset);
+
+        g.setComposite(AlphaComposite.Src);
+        g.setColor(new Color(0x40, 0x80, 0xFF, 0x70));
+        g.fillRect(HIGHLIGHT_SLOT * tileSize, 0, tileSize, tileSize);
+
+        g.setColor(new Color(0xFF, 0xE0, 0x20));
+        for(int i = 0; i < Math.max(1, tileSize / 16); i++) {
+            g.drawRect(CURSOR_SLOT * tileSize + i, i, tileSize - 1 - 2 * i, tileSize - 1 - 2 * i);
+        }
+        g.dispose();
+    }
+
+    private void drawTerrain(Terrain terrain, int slot) {
+        Graphics2D g = sheet.createGraphics();
+        int x = slot * tileSize;
+        int half = tileSize / 2;
+        if(terrain == DefaultTerrain.PLAINS) {
+            g.setColor(new Color(0x78, 0xC0, 0x50));
+            g.fillRect(x, 0, tileSize, tileSize);
+        }
+        else if(terrain == DefaultTerrain.FOREST) {
+            g.setColor(new Color(0x78, 0xC0, 0x50));
+            g.fillRect(x, 0, tileSize, tileSize);
+            g.setColor(new Color(0x20, 0x70, 0x30));
+            g.fillPolygon(new int[] {x + half, x + tileSize / 8, x + tileSize - tileSize / 8},
+                    new int[] {tileSize / 8, tileSize - tileSize / 4, tileSize - tileSize / 4}, 3);
+        }
+        else if(terrain == DefaultTerrain.PEAK) {
+            g.setColor(new Color(0xA0, 0x88, 0x60));
+            g.fillRect(x, 0, tileSize, tileSize);
+            g.setColor(new Color(0xE8, 0xE8, 0xE8));
+            g.fillPolygon(new int[] {x + half, x, x + tileSize},
+                    new int[] {0, tileSize, tileSize}, 3);
+        }
+        else if(terrain == DefaultTerrain.WALL) {
+            g.setColor(new Color(0x70, 0x70, 0x78));
+            g.fillRect(x, 0, tileSize, tileSize);
+            g.setColor(new Color(0x48, 0x48, 0x50));
+            g.drawLine(x, half, x + tileSize - 1, half);
+            g.drawLine(x + half, 0, x + half, half);
+        }
+        else {
+            // terrains without a drawing of their own get a color from their name
+            g.setColor(new Color(terrain.getName().hashCode() & 0xFFFFFF));
+            g.fillRect(x, 0, tileSize, tileSize);
+        }
+        g.dispose();
+    }
+
+}
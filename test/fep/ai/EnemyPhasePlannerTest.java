@@ -0,0 +1,211 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.ai;
+
+import fep.model.CombatProfile;
+import fep.model.DefaultTerrain;
+import fep.model.Faction;
+import fep.model.ImmutablePoint;
+import fep.model.Map;
+import fep.model.MoveCostStrategy;
+import fep.model.MoveType;
+import fep.model.Unit;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the EnemyPhasePlanner class.
+ * @author Kyle Buzsaki
+ */
+public class EnemyPhasePlannerTest {
+
+    public EnemyPhasePlannerTest() {
+    }
+
+    /**
+     * Every unit walks with 5 movement and attacks at range 1.
+     */
+    private static final CombatProfile PROFILE = new CombatProfile() {
+        @Override
+        public MoveCostStrategy getMoveCostStrategy(Unit unit) {
+            return MoveType.FOOT;
+        }
+        @Override
+        public int getMovement(Unit unit) {
+            return 5;
+        }
+        @Override
+        public int getMinRange(Unit unit) {
+            return 1;
+        }
+        @Override
+        public int getMaxRange(Unit unit) {
+            return 1;
+        }
+    };
+
+    /**
+     * Test of a single enemy attacking, of class EnemyPhasePlanner.
+     */
+    @Test
+    public void testAttack() {
+        System.out.println("attack");
+        Map map = new Map(10, 10);
+        Unit enemy = new Unit(Faction.ENEMY);
+        Unit player = new Unit(Faction.PLAYER);
+        Unit farPlayer = new Unit(Faction.PLAYER);
+        map.addUnit(new ImmutablePoint(0, 0), enemy);
+        map.addUnit(new ImmutablePoint(3, 0), player);
+        map.addUnit(new ImmutablePoint(9, 9), farPlayer);
+
+        EnemyPhasePlan plan = new EnemyPhasePlanner(PROFILE).plan(map, Faction.ENEMY);
+        assertEquals(1, plan.getActions().size());
+        PlannedAction action = plan.getActions().get(0);
+        assertEquals(enemy, action.getUnit());
+        assertTrue(action.isAttack());
+        assertEquals(player, action.getTarget());
+        // the least movement that reaches the player
+        assertEquals(new ImmutablePoint(2, 0), action.getDestination());
+
+        // out of reach, the enemy closes in instead
+        map.removeUnit(player);
+        action = new EnemyPhasePlanner(PROFILE).plan(map, Faction.ENEMY).getActions().get(0);
+        assertFalse(action.isAttack());
+        assertEquals(5, action.getDestination().distanceGrid(action.getOrigin()));
+        assertEquals(13, action.getDestination().distanceGrid(new ImmutablePoint(9, 9)));
+    }
+
+    /**
+     * Test of conflict resolution and determinism across pool sizes, of class
+     * EnemyPhasePlanner.
+     */
+    @Test
+    public void testDeterministicPlan() {
+        System.out.println("deterministicPlan");
+        Random random = new Random(25);
+        Map map = new Map(40, 40);
+        for(int i = 0; i < 150; i++) {
+            map.setTerrainAt(random.nextInt(map.getTileCount()), DefaultTerrain.WALL);
+        }
+        for(int i = 0; i < 120; i++) {
+            int tile = random.nextInt(map.getTileCount());
+            if(map.getUnitAt(tile) == null) {
+                map.addUnit(tile, new Unit(i % 3 == 0 ? Faction.PLAYER : Faction.ENEMY));
+            }
+        }
+        long hash = map.stateHash();
+
+        ForkJoinPool serialPool = new ForkJoinPool(1);
+        ForkJoinPool parallelPool = new ForkJoinPool(4);
+        EnemyPhasePlan serial;
+        EnemyPhasePlan parallel;
+        try {
+            serial = new EnemyPhasePlanner(PROFILE, serialPool).plan(map, Faction.ENEMY);
+            parallel = new EnemyPhasePlanner(PROFILE, parallelPool).plan(map, Faction.ENEMY);
+        } finally {
+            serialPool.shutdown();
+            parallelPool.shutdown();
+        }
+        assertEquals(hash, map.stateHash());
+        assertEquals(map.getUnits(Faction.ENEMY).size(), serial.getActions().size());
+        assertEquals(serial.getCandidateCount(), parallel.getCandidateCount());
+        List<PlannedAction> serialActions = serial.getActions();
+        List<PlannedAction> parallelActions = parallel.getActions();
+        Set<ImmutablePoint> destinations = new HashSet<>();
+        for(int i = 0; i < serialActions.size(); i++) {
+            PlannedAction expected = serialActions.get(i);
+            PlannedAction actual = parallelActions.get(i);
+            assertEquals(expected.getUnit(), actual.getUnit());
+            assertEquals(expected.getDestination(), actual.getDestination());
+            assertEquals(expected.getTarget(), actual.getTarget());
+            assertEquals(expected.getScore(), actual.getScore());
+            assertTrue(destinations.add(expected.getDestination()));
+            if(expected.isAttack()) {
+                assertEquals(1, expected.getTarget().getPosition().distanceGrid(expected.getDestination()));
+            }
+        }
+
+        serial.apply(map);
+        for(PlannedAction action : serialActions) {
+            assertEquals(action.getDestination(), action.getUnit().getPosition());
+        }
+    }
+
+    /**
+     * Test of planning with a profile that is neither thread safe nor
+     * stable, of class EnemyPhasePlanner.
+     */
+    @Test
+    public void testProfileReadOnPlanningThread() {
+        System.out.println("profileReadOnPlanningThread");
+        final Set<Thread> callers = new HashSet<>();
+        CombatProfile unstableProfile = new CombatProfile() {
+            private int calls;
+            @Override
+            public MoveCostStrategy getMoveCostStrategy(Unit unit) {
+                callers.add(Thread.currentThread());
+                return calls++ % 2 == 0 ? MoveType.FOOT : MoveType.FLYER;
+            }
+            @Override
+            public int getMovement(Unit unit) {
+                callers.add(Thread.currentThread());
+                return 5;
+            }
+            @Override
+            public int getMinRange(Unit unit) {
+                callers.add(Thread.currentThread());
+                return 1;
+            }
+            @Override
+            public int getMaxRange(Unit unit) {
+                callers.add(Thread.currentThread());
+                return 1;
+            }
+        };
+        Random random = new Random(11);
+        Map map = new Map(20, 20);
+        for(int i = 0; i < 40; i++) {
+            int tile = random.nextInt(map.getTileCount());
+            if(map.getUnitAt(tile) == null) {
+                map.addUnit(tile, new Unit(i % 4 == 0 ? Faction.PLAYER : Faction.ENEMY));
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        EnemyPhasePlan plan;
+        try {
+            plan = new EnemyPhasePlanner(unstableProfile, pool).plan(map, Faction.ENEMY);
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(map.getUnits(Faction.ENEMY).size(), plan.getActions().size());
+        assertEquals(1, callers.size());
+        assertTrue(callers.contains(Thread.currentThread()));
+    }
+
+    /**
+     * Test of apply on a map changed since planning, of class EnemyPhasePlan.
+     */
+    @Test
+    public void testApplyAfterChange() {
+        System.out.println("applyAfterChange");
+        Map map = new Map(10, 10);
+        Unit enemy = new Unit(Faction.ENEMY);
+        map.addUnit(new ImmutablePoint(0, 0), enemy);
+        map.addUnit(new ImmutablePoint(9, 9), new Unit(Faction.PLAYER));
+        EnemyPhasePlan plan = new EnemyPhasePlanner(PROFILE).plan(map, Faction.ENEMY);
+
+        map.addUnit(new ImmutablePoint(5, 5), new Unit(Faction.PLAYER));
+        try {
+            plan.apply(map);
+            fail("Successfully applied a plan to a map changed since planning.");
+        } catch (IllegalStateException ex) {}
+        assertEquals(new ImmutablePoint(0, 0), enemy.getPosition());
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.controller;
+
+import fep.model.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the GameLoop class.
+ * @author Kyle Buzsaki
+ */
+public class GameLoopTest {
+
+    public GameLoopTest() {
+    }
+
+    private static final int REPEAT_DELAY = 4;
+    private static final int REPEAT_INTERVAL = 2;
+
+    /**
+     * A Cursor that records the commands handed to it instead of acting on
+     * them.
+     */
+    private static class RecordingCursor extends Cursor {
+        private final List<Command> commands = new ArrayList<>();
+
+        RecordingCursor() {
+            super(new Map(5, 5), null);
+        }
+
+        @Override
+        public void handleCommand(Command command) {
+            commands.add(command);
+        }
+    }
+
+    private static GameLoop createLoop(Cursor cursor) {
+        return new GameLoop(cursor, 60, REPEAT_DELAY, REPEAT_INTERVAL);
+    }
+    private static void tick(GameLoop loop, int ticks) {
+        for(int i = 0; i < ticks; i++) {
+            loop.tick();
+        }
+    }
+
+    /**
+     * Test of a single press, of class GameLoop.
+     */
+    @Test
+    public void testSinglePress() {
+        System.out.println("singlePress");
+        RecordingCursor cursor = new RecordingCursor();
+        GameLoop loop = createLoop(cursor);
+        loop.press(Command.UP);
+        // nothing is handled until the loop ticks
+        assertTrue(cursor.commands.isEmpty());
+        loop.tick();
+        assertEquals(Arrays.asList(Command.UP), cursor.commands);
+
+        // released before the repeat delay, so it never repeats
+        tick(loop, REPEAT_DELAY - 2);
+        loop.release(Command.UP);
+        tick(loop, 10);
+        assertEquals(Arrays.asList(Command.UP), cursor.commands);
+        assertEquals(REPEAT_DELAY - 1 + 10, loop.getTickCount());
+    }
+
+    /**
+     * Test of holding a direction past the repeat delay, of class GameLoop.
+     */
+    @Test
+    public void testHeldRepeat() {
+        System.out.println("heldRepeat");
+        RecordingCursor cursor = new RecordingCursor();
+        GameLoop loop = createLoop(cursor);
+        loop.press(Command.RIGHT);
+        loop.tick();
+        assertEquals(1, cursor.commands.size());
+
+        // the first repeat comes once the button has been held for the delay
+        tick(loop, REPEAT_DELAY - 2);
+        assertEquals(1, cursor.commands.size());
+        loop.tick();
+        assertEquals(2, cursor.commands.size());
+        // then one every interval
+        for(int repeat = 1; repeat <= 3; repeat++) {
+            tick(loop, REPEAT_INTERVAL - 1);
+            assertEquals(1 + repeat, cursor.commands.size());
+            loop.tick();
+            assertEquals(2 + repeat, cursor.commands.size());
+        }
+        for(Command command : cursor.commands) {
+            assertEquals(Command.RIGHT, command);
+        }
+
+        // extra presses from keyboard auto-repeat neither add commands nor restart the delay
+        loop.press(Command.RIGHT);
+        tick(loop, REPEAT_INTERVAL);
+        assertEquals(6, cursor.commands.size());
+
+        // buttons other than directions never repeat
+        loop.press(Command.A);
+        tick(loop, REPEAT_DELAY * 3);
+        int aCount = 0;
+        for(Command command : cursor.commands) {
+            if(command == Command.A) {
+                aCount++;
+            }
+        }
+        assertEquals(1, aCount);
+    }
+
+    /**
+     * Test of a press and release queued within a single tick, of class
+     * GameLoop.
+     */
+    @Test
+    public void testTapWithinTick() {
+        System.out.println("tapWithinTick");
+        RecordingCursor cursor = new RecordingCursor();
+        GameLoop loop = createLoop(cursor);
+        loop.press(Command.DOWN);
+        loop.release(Command.DOWN);
+        loop.press(Command.LEFT);
+        loop.release(Command.LEFT);
+        loop.press(Command.DOWN);
+        loop.release(Command.DOWN);
+        loop.tick();
+        assertEquals(Arrays.asList(Command.DOWN, Command.LEFT, Command.DOWN), cursor.commands);
+
+        // nothing is left held
+        tick(loop, REPEAT_DELAY * 3);
+        assertEquals(3, cursor.commands.size());
+    }
+
+    /**
+     * Test of releasing a repeating direction, of class GameLoop.
+     */
+    @Test
+    public void testReleaseStopsRepeat() {
+        System.out.println("releaseStopsRepeat");
+        RecordingCursor cursor = new RecordingCursor();
+        GameLoop loop = createLoop(cursor);
+        loop.press(Command.LEFT);
+        tick(loop, REPEAT_DELAY + REPEAT_INTERVAL);
+        assertEquals(3, cursor.commands.size());
+
+        loop.release(Command.LEFT);
+        tick(loop, REPEAT_DELAY * 3);
+        assertEquals(3, cursor.commands.size());
+
+        // pressing again starts over, with a fresh repeat delay
+        loop.press(Command.LEFT);
+        loop.tick();
+        assertEquals(4, cursor.commands.size());
+        tick(loop, REPEAT_DELAY - 2);
+        assertEquals(4, cursor.commands.size());
+        loop.tick();
+        assertEquals(5, cursor.commands.size());
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.model;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the AttackRange class.
+ * @author Kyle Buzsaki
+ */
+public class AttackRangeTest {
+
+    public AttackRangeTest() {
+    }
+
+    /**
+     * Checks every tile of the attack range against a direct search of the
+     * move range for a tile within weapon range.
+     */
+    private static void assertMatchesMoveRange(AttackRange attackRange) {
+        MoveRange moveRange = attackRange.getMoveRange();
+        Map map = moveRange.getMap();
+        for(int target = 0; target < map.getTileCount(); target++) {
+            assertEquals(moveRange.canEndAt(target), attackRange.canMoveTo(target));
+            boolean inRange = false;
+            for(int tile = 0; tile < map.getTileCount() && !inRange; tile++) {
+                int distance = Math.abs(map.xOf(tile) - map.xOf(target))
+                        + Math.abs(map.yOf(tile) - map.yOf(target));
+                inRange = moveRange.canEndAt(tile) && distance >= attackRange.getMinRange()
+                        && distance <= attackRange.getMaxRange();
+            }
+            assertEquals(inRange, attackRange.canAttack(target));
+        }
+    }
+
+    /**
+     * Test of calculate on open terrain, of class AttackRange.
+     */
+    @Test
+    public void testCalculateOpenTerrain() {
+        System.out.println("calculateOpenTerrain");
+        Map map = new Map(15, 15);
+        ImmutablePoint origin = new ImmutablePoint(7, 7);
+        AttackRange range = AttackRange.calculate(map, origin, MoveType.FOOT, 2, 1, 1,
+                DefaultAllegiance.ALL_HOSTILE);
+
+        // a radius 2 diamond dilated by 1 is a radius 3 diamond
+        assertEquals(13, range.getMoveTileCount());
+        assertEquals(25, range.getAttackTileCount());
+        assertEquals(12, range.getAttackOnlyTiles().cardinality());
+        assertTrue(range.canMoveTo(origin));
+        assertTrue(range.canAttack(new ImmutablePoint(7, 10)));
+        assertFalse(range.canMoveTo(new ImmutablePoint(7, 10)));
+        assertFalse(range.canAttack(new ImmutablePoint(8, 10)));
+        assertMatchesMoveRange(range);
+
+        // a bow cannot hit adjacent tiles, but every tile in the move set is
+        // two away from another one
+        AttackRange bowRange = AttackRange.calculate(map, origin, MoveType.FOOT, 0, 2, 2,
+                DefaultAllegiance.ALL_HOSTILE);
+        assertEquals(1, bowRange.getMoveTileCount());
+        assertEquals(8, bowRange.getAttackTileCount());
+        assertFalse(bowRange.canAttack(origin));
+        assertFalse(bowRange.canAttack(new ImmutablePoint(7, 8)));
+        assertMatchesMoveRange(bowRange);
+    }
+
+    /**
+     * Test of calculate against a brute force search on random maps, of
+     * class AttackRange.
+     */
+    @Test
+    public void testCalculateRandomMaps() {
+        System.out.println("calculateRandomMaps");
+        Random random = new Random(13);
+        Terrain[] terrains = DefaultTerrain.values();
+        for(int trial = 0; trial < 20; trial++) {
+            Map map = new Map(4 + random.nextInt(10), 4 + random.nextInt(10));
+            for(int i = 0; i < map.getTileCount() / 3; i++) {
+                map.setTerrainAt(random.nextInt(map.getTileCount()),
+                        terrains[random.nextInt(terrains.length)]);
+            }
+            for(int i = 0; i < 3; i++) {
+                int tile = random.nextInt(map.getTileCount());
+                if(map.getUnitAt(tile) == null) {
+                    map.addUnit(tile, new Unit());
+                }
+            }
+            ImmutablePoint origin = map.getPoint(random.nextInt(map.getTileCount()));
+            int minRange = random.nextInt(3);
+            int maxRange = minRange + random.nextInt(3);
+            AttackRange range = AttackRange.calculate(map, origin, MoveType.KNIGHT_A,
+                    random.nextInt(8), minRange, maxRange, DefaultAllegiance.ALL_HOSTILE);
+            assertMatchesMoveRange(range);
+        }
+    }
+
+    /**
+     * Test of calculate with ranges reaching past the map, of class AttackRange.
+     */
+    @Test
+    public void testCalculateLongRange() {
+        System.out.println("calculateLongRange");
+        Map map = new Map(3, 2);
+        ImmutablePoint origin = new ImmutablePoint(0, 0);
+        AttackRange wholeMap = AttackRange.calculate(map, origin, MoveType.FOOT, 0, 0,
+                Integer.MAX_VALUE, DefaultAllegiance.ALL_HOSTILE);
+        assertEquals(map.getTileCount(), wholeMap.getAttackTileCount());
+
+        AttackRange tooFar = AttackRange.calculate(map, origin, MoveType.FOOT, 0, 10, 20,
+                DefaultAllegiance.ALL_HOSTILE);
+        assertEquals(0, tooFar.getAttackTileCount());
+
+        try {
+            AttackRange.calculate(map, origin, MoveType.FOOT, 0, 2, 1, DefaultAllegiance.ALL_HOSTILE);
+            fail("Calculated with a max range below the min range");
+        } catch (IllegalArgumentException ex) {}
+    }
+
+}
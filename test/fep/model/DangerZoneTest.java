@@ -0,0 +1,194 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.model;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the DangerZone class.
+ * @author Kyle Buzsaki
+ */
+public class DangerZoneTest {
+    
+    public DangerZoneTest() {
+    }
+    
+    /**
+     * Every unit moves like a knight with 4 movement and attacks at range 1-2.
+     */
+    private static final CombatProfile PROFILE = new CombatProfile() {
+        @Override
+        public MoveCostStrategy getMoveCostStrategy(Unit unit) {
+            return MoveType.KNIGHT_A;
+        }
+        @Override
+        public int getMovement(Unit unit) {
+            return 4;
+        }
+        @Override
+        public int getMinRange(Unit unit) {
+            return 1;
+        }
+        @Override
+        public int getMaxRange(Unit unit) {
+            return 2;
+        }
+    };
+    
+    /**
+     * Selects the units in the given set.
+     */
+    private static UnitFilter memberOf(final Set<Unit> units) {
+        return new UnitFilter() {
+            @Override
+            public boolean accept(Unit unit) {
+                return units.contains(unit);
+            }
+        };
+    }
+    
+    /**
+     * Checks the zone against a union of attack ranges calculated from scratch.
+     */
+    private static void assertMatchesFullRebuild(DangerZone dangerZone, Set<Unit> enemies) {
+        Map map = dangerZone.getMap();
+        int[] expectedCounts = new int[map.getTileCount()];
+        for(Unit enemy : map.getUnits()) {
+            if(!enemies.contains(enemy)) {
+                continue;
+            }
+            BitSet attackTiles = AttackRange.calculate(enemy, PROFILE.getMoveCostStrategy(enemy),
+                    PROFILE.getMovement(enemy), PROFILE.getMinRange(enemy),
+                    PROFILE.getMaxRange(enemy), DefaultAllegiance.ALL_HOSTILE).getAttackTiles();
+            for(int tile = attackTiles.nextSetBit(0); tile >= 0; tile = attackTiles.nextSetBit(tile + 1)) {
+                expectedCounts[tile]++;
+            }
+        }
+        for(int tile = 0; tile < map.getTileCount(); tile++) {
+            assertEquals(expectedCounts[tile], dangerZone.getThreatCount(tile));
+            assertEquals(expectedCounts[tile] > 0, dangerZone.isDangerous(tile));
+        }
+    }
+    
+    /**
+     * Test of the zone of a single threat, of class DangerZone.
+     */
+    @Test
+    public void testSingleThreat() {
+        System.out.println("singleThreat");
+        Map map = new Map(20, 20);
+        Unit enemy = new Unit();
+        Unit player = new Unit();
+        Set<Unit> enemies = new HashSet<>();
+        enemies.add(enemy);
+        map.addUnit(new ImmutablePoint(10, 10), enemy);
+        map.addUnit(new ImmutablePoint(0, 0), player);
+        
+        DangerZone dangerZone = DangerZone.attach(map, PROFILE, memberOf(enemies), 
+                DefaultAllegiance.ALL_HOSTILE);
+        // movement 4 and range 2 reach a radius 6 diamond
+        assertEquals(2 * 6 * 7 + 1, dangerZone.getDangerousTiles().cardinality());
+        assertTrue(dangerZone.isDangerous(new ImmutablePoint(16, 10)));
+        assertFalse(dangerZone.isDangerous(new ImmutablePoint(17, 10)));
+        assertFalse(dangerZone.isDangerous(new ImmutablePoint(0, 0)));
+        assertEquals(enemies, dangerZone.getThreats());
+        
+        // moving far from the enemy costs nothing
+        long recalculations = dangerZone.getRecalculationCount();
+        map.moveUnitTo(new ImmutablePoint(0, 1), player);
+        assertEquals(recalculations, dangerZone.getRecalculationCount());
+        
+        // walling the enemy in shrinks the zone to its weapon range
+        map.beginBatch();
+        for(ImmutablePoint adjacent : new ImmutablePoint(10, 10).getAdjacentPoints()) {
+            map.setTerrainAt(adjacent, DefaultTerrain.WALL);
+        }
+        map.endBatch();
+        assertEquals(recalculations + 1, dangerZone.getRecalculationCount());
+        assertEquals(12, dangerZone.getDangerousTiles().cardinality());
+        assertMatchesFullRebuild(dangerZone, enemies);
+        
+        map.removeUnit(enemy);
+        assertTrue(dangerZone.getDangerousTiles().isEmpty());
+        assertTrue(dangerZone.getThreats().isEmpty());
+        
+        dangerZone.detach();
+        map.addUnit(new ImmutablePoint(5, 5), enemy);
+        assertTrue(dangerZone.getDangerousTiles().isEmpty());
+    }
+    
+    /**
+     * Test that the zone stays equal to a full rebuild through random changes,
+     * of class DangerZone.
+     */
+    @Test
+    public void testIncrementalUpdates() {
+        System.out.println("incrementalUpdates");
+        Random random = new Random(14);
+        Map map = new Map(24, 18);
+        Terrain[] terrains = DefaultTerrain.values();
+        for(int i = 0; i < 80; i++) {
+            map.setTerrainAt(random.nextInt(map.getTileCount()), terrains[random.nextInt(terrains.length)]);
+        }
+        Set<Unit> enemies = new HashSet<>();
+        List<Unit> units = new ArrayList<>();
+        for(int i = 0; i < 16; i++) {
+            Unit unit = new Unit();
+            units.add(unit);
+            if(i % 2 == 0) {
+                enemies.add(unit);
+            }
+        }
+        
+        DangerZone dangerZone = DangerZone.attach(map, PROFILE, memberOf(enemies), 
+                DefaultAllegiance.ALL_HOSTILE);
+        for(int step = 0; step < 300; step++) {
+            Unit unit = units.get(random.nextInt(units.size()));
+            int tile = random.nextInt(map.getTileCount());
+            switch(random.nextInt(5)) {
+                case 0:
+                    map.setTerrainAt(tile, terrains[random.nextInt(terrains.length)]);
+                    break;
+                case 1:
+                    if(map.containsUnit(unit)) {
+                        map.removeUnit(unit);
+                    }
+                    else if(map.getUnitAt(tile) == null) {
+                        map.addUnit(tile, unit);
+                    }
+                    break;
+                case 2:
+                    map.beginBatch();
+                    for(Unit batchUnit : units) {
+                        int batchTile = random.nextInt(map.getTileCount());
+                        if(map.containsUnit(batchUnit) && map.getUnitAt(batchTile) == null) {
+                            map.moveUnitTo(batchTile, batchUnit);
+                        }
+                    }
+                    map.setTerrainAt(tile, terrains[random.nextInt(terrains.length)]);
+                    map.endBatch();
+                    break;
+                default:
+                    if(map.containsUnit(unit) && map.getUnitAt(tile) == null) {
+                        map.moveUnitTo(tile, unit);
+                    }
+            }
+            assertMatchesFullRebuild(dangerZone, enemies);
+        }
+        
+        // a unit switching sides needs a refresh
+        Unit defector = units.get(1);
+        enemies.add(defector);
+        dangerZone.refresh(defector);
+        assertMatchesFullRebuild(dangerZone, enemies);
+    }
+    
+}
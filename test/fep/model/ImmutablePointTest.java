@@ -100,6 +100,11 @@ public class ImmutablePointTest {
         assertTrue(instance.isAdjacentTo(adjacent));
         assertFalse(instance.isAdjacentTo(notAdjacent));
         assertFalse(instance.isAdjacentTo(instance));
+        
+        // offsets that overflow an int are not adjacent
+        ImmutablePoint farLeft = new ImmutablePoint(Integer.MIN_VALUE, 0);
+        ImmutablePoint farRight = new ImmutablePoint(Integer.MAX_VALUE, 0);
+        assertFalse(farLeft.isAdjacentTo(farRight));
     }
 
     /**
@@ -222,4 +227,45 @@ public class ImmutablePointTest {
         assertFalse(p1.equals(o));
     }
     
-}
\ No newline at end of file
+    /**
+     * Test of the pack, unpackX, unpackY, fromPacked and toPacked methods, of
+     * class ImmutablePoint.
+     */
+    @Test
+    public void testPacking() {
+        System.out.println("packing");
+        int[][] coordinates = {
+            {0, 0}, {3, 7}, {-1, 5}, {5, -1}, {-8, -9},
+            {Integer.MAX_VALUE, Integer.MIN_VALUE},
+        };
+        for(int[] coordinate : coordinates) {
+            ImmutablePoint point = new ImmutablePoint(coordinate[0], coordinate[1]);
+            long packed = ImmutablePoint.pack(coordinate[0], coordinate[1]);
+            assertEquals(packed, point.toPacked());
+            assertEquals(coordinate[0], ImmutablePoint.unpackX(packed));
+            assertEquals(coordinate[1], ImmutablePoint.unpackY(packed));
+            assertEquals(point, ImmutablePoint.fromPacked(packed));
+        }
+        assertFalse(ImmutablePoint.pack(0, -1) == ImmutablePoint.pack(-1, 0));
+    }
+    
+    /**
+     * Test of the hashCode method, of class ImmutablePoint.
+     */
+    @Test
+    public void testHashCode() {
+        System.out.println("hashCode");
+        assertEquals(new ImmutablePoint(4, -2).hashCode(), new ImmutablePoint(4, -2).hashCode());
+        assertFalse(new ImmutablePoint(1, 2).hashCode() == new ImmutablePoint(2, 1).hashCode());
+        assertFalse(new ImmutablePoint(0, 31).hashCode() == new ImmutablePoint(1, 0).hashCode());
+        
+        // every point of a map larger than 31 columns hashes differently
+        Set<Integer> hashes = new HashSet<>();
+        for(int x = 0; x < 64; x++) {
+            for(int y = 0; y < 64; y++) {
+                assertTrue(hashes.add(new ImmutablePoint(x, y).hashCode()));
+            }
+        }
+    }
+    
+}
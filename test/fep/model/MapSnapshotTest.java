@@ -0,0 +1,139 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.model;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the MapSnapshot class.
+ * @author Kyle Buzsaki
+ */
+public class MapSnapshotTest {
+
+    public MapSnapshotTest() {
+    }
+
+    private static void assertMatches(MapView expected, MapView actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertEquals(expected.getModCount(), actual.getModCount());
+        for(int tile = 0; tile < expected.getTileCount(); tile++) {
+            assertEquals(expected.getTerrainAt(tile), actual.getTerrainAt(tile));
+            assertSame(expected.getUnitAt(tile), actual.getUnitAt(tile));
+            assertSame(expected.getPoint(tile), actual.getPoint(tile));
+        }
+        assertEquals(expected.getUnits(), actual.getUnits());
+        for(Unit unit : expected.getUnits()) {
+            assertSame(expected.getPositionOf(unit), actual.getPositionOf(unit));
+        }
+    }
+
+    /**
+     * Test that a snapshot matches its map and keeps its state, of class
+     * MapSnapshot.
+     */
+    @Test
+    public void testSnapshot() {
+        System.out.println("snapshot");
+        Map map = new Map(13, 10);
+        assertNull(map.getLastSnapshot());
+        Unit unit = new Unit();
+        map.addUnit(new ImmutablePoint(12, 9), unit);
+        map.setTerrainAt(new ImmutablePoint(3, 4), DefaultTerrain.FOREST);
+
+        MapSnapshot snapshot = map.snapshot();
+        assertMatches(map, snapshot);
+        assertSame(snapshot, map.getLastSnapshot());
+        assertSame(snapshot, map.snapshot());
+        assertEquals(DefaultTerrain.FOREST, snapshot.getTerrainAt(new ImmutablePoint(3, 4)));
+        assertSame(unit, snapshot.getUnitAt(new ImmutablePoint(12, 9)));
+
+        map.moveUnitTo(new ImmutablePoint(0, 0), unit);
+        map.setTerrainAt(new ImmutablePoint(3, 4), DefaultTerrain.WALL);
+        assertSame(unit, snapshot.getUnitAt(new ImmutablePoint(12, 9)));
+        assertNull(snapshot.getUnitAt(0));
+        assertEquals(new ImmutablePoint(12, 9), snapshot.getPositionOf(unit));
+        assertEquals(DefaultTerrain.FOREST, snapshot.getTerrainAt(new ImmutablePoint(3, 4)));
+
+        MapSnapshot next = map.snapshot();
+        assertMatches(map, next);
+        assertNotSame(snapshot, next);
+
+        try {
+            snapshot.getUnits().clear();
+            fail("Modified a snapshot's units");
+        } catch (UnsupportedOperationException ex) {}
+        try {
+            next.getPositionOf(new Unit());
+            fail("Got the position of a unit not in the snapshot");
+        } catch (UnitNotFoundException ex) {}
+        try {
+            next.getUnitAt(map.getTileCount());
+            fail("Read outside the snapshot");
+        } catch (IllegalArgumentException ex) {}
+    }
+
+    /**
+     * Test that unchanged regions are shared between snapshots, of class
+     * MapSnapshot.
+     */
+    @Test
+    public void testStructuralSharing() {
+        System.out.println("structuralSharing");
+        Map map = new Map(3 * Map.REGION_SIZE, 2 * Map.REGION_SIZE);
+        Unit unit = new Unit();
+        map.addUnit(0, unit);
+        MapSnapshot first = map.snapshot();
+
+        // only the last region changes
+        map.setTerrainAt(map.getTileCount() - 1, DefaultTerrain.FOREST);
+        MapSnapshot second = map.snapshot();
+        int lastRegion = 5;
+        for(int region = 0; region < lastRegion; region++) {
+            assertSame(first.getTerrainChunk(region), second.getTerrainChunk(region));
+            assertSame(first.getUnitChunk(region), second.getUnitChunk(region));
+        }
+        assertNotSame(first.getTerrainChunk(lastRegion), second.getTerrainChunk(lastRegion));
+        assertSame(first.getUnitPositions(), second.getUnitPositions());
+        assertNotSame(first.getPalette(), second.getPalette());
+
+        map.moveUnitTo(1, unit);
+        MapSnapshot third = map.snapshot();
+        assertNotSame(second.getUnitChunk(0), third.getUnitChunk(0));
+        assertSame(second.getUnitChunk(1), third.getUnitChunk(1));
+        assertNotSame(second.getUnitPositions(), third.getUnitPositions());
+        assertSame(second.getPalette(), third.getPalette());
+        assertMatches(map, third);
+    }
+
+    /**
+     * Test that every snapshot of a randomly changing map matches it, of
+     * class MapSnapshot.
+     */
+    @Test
+    public void testRandomChanges() {
+        System.out.println("randomChanges");
+        Random random = new Random(16);
+        Terrain[] terrains = DefaultTerrain.values();
+        Map map = new Map(21, 17);
+        for(int step = 0; step < 100; step++) {
+            for(int change = random.nextInt(4); change > 0; change--) {
+                int tile = random.nextInt(map.getTileCount());
+                if(random.nextBoolean()) {
+                    map.setTerrainAt(tile, terrains[random.nextInt(terrains.length)]);
+                }
+                else if(map.getUnitAt(tile) == null) {
+                    map.addUnit(tile, new Unit());
+                }
+                else {
+                    map.removeUnit(map.getUnitAt(tile));
+                }
+            }
+            assertMatches(map, map.snapshot());
+        }
+    }
+
+}
@@ -4,11 +4,16 @@
  */
 package fep.model;
 
+import fep.model.event.MapBatchEvent;
 import fep.model.event.MapChangeListener;
 import fep.model.event.TerrainChangedEvent;
 import fep.model.event.UnitAddedEvent;
 import fep.model.event.UnitMovedEvent;
 import fep.model.event.UnitRemovedEvent;
+import java.util.ArrayList;
+import java.util.EventObject;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -35,6 +40,34 @@ public class MapTest {
         return new Unit();
     }
     
+    /**
+     * A MapChangeListener that records every event it receives, in order.
+     */
+    private static class RecordingListener implements MapChangeListener {
+        private final List<EventObject> events = new ArrayList<>();
+        
+        @Override
+        public void handleUnitAdded(UnitAddedEvent event) {
+            events.add(event);
+        }
+        @Override
+        public void handleUnitRemoved(UnitRemovedEvent event) {
+            events.add(event);
+        }
+        @Override
+        public void handleUnitMoved(UnitMovedEvent event) {
+            events.add(event);
+        }
+        @Override
+        public void handleTerrainChanged(TerrainChangedEvent event) {
+            events.add(event);
+        }
+        @Override
+        public void handleBatch(MapBatchEvent event) {
+            events.add(event);
+        }
+    }
+    
     /**
      * Test of the constructor, of class Map
      */
@@ -216,6 +249,66 @@ public class MapTest {
         }
     }
 
+    /**
+     * Test of the index based accessors, of class Map.
+     */
+    @Test
+    public void testIndexAccessors() {
+        System.out.println("indexAccessors");
+        Map map = new Map(7, 5);
+        assertEquals(35, map.getTileCount());
+        
+        ImmutablePoint p1 = new ImmutablePoint(3, 2);
+        Unit unit1 = createTestUnit();
+        map.addUnit(p1, unit1);
+        map.setTerrainAt(p1, DefaultTerrain.FOREST);
+        
+        int index = map.indexOf(p1);
+        assertEquals(2 * 7 + 3, index);
+        assertEquals(index, map.indexOf(3, 2));
+        assertEquals(3, map.xOf(index));
+        assertEquals(2, map.yOf(index));
+        assertEquals(unit1, map.getUnitAt(index));
+        assertEquals(DefaultTerrain.FOREST, map.getTerrainAt(index));
+        assertNull(map.getUnitAt(0));
+        assertEquals(DefaultTerrain.PLAINS, map.getTerrainAt(0));
+        
+        int[] invalidIndices = {-1, map.getTileCount()};
+        for(int invalidIndex : invalidIndices) {
+            try {
+                map.getUnitAt(invalidIndex);
+                fail("Successfully got a unit from an out of bounds index");
+            } catch (IllegalArgumentException ex) {}
+        }
+        try {
+            map.indexOf(7, 0);
+            fail("Successfully indexed an out of bounds position");
+        } catch (IllegalArgumentException ex) {}
+    }
+    
+    /**
+     * Test of the terrain palette, of class Map.
+     */
+    @Test
+    public void testTerrainPalette() {
+        System.out.println("terrainPalette");
+        Map map = new Map(10, 10);
+        assertEquals(1, map.getPaletteSize());
+        assertEquals(DefaultTerrain.PLAINS, map.getPaletteTerrain(0));
+        
+        ImmutablePoint p1 = new ImmutablePoint(1, 1);
+        ImmutablePoint p2 = new ImmutablePoint(2, 2);
+        map.setTerrainAt(p1, DefaultTerrain.PEAK);
+        map.setTerrainAt(p2, DefaultTerrain.PEAK);
+        assertEquals(2, map.getPaletteSize());
+        assertEquals(map.getTerrainIdAt(map.indexOf(p1)), map.getTerrainIdAt(map.indexOf(p2)));
+        assertEquals(DefaultTerrain.PEAK, map.getPaletteTerrain(map.getTerrainIdAt(map.indexOf(p1))));
+        
+        map.setTerrainAt(p2, DefaultTerrain.PLAINS);
+        assertEquals(0, map.getTerrainIdAt(map.indexOf(p2)));
+        assertEquals(2, map.getPaletteSize());
+    }
+
     /**
      * Test of getTileAt method, of class Map.
      */
@@ -465,6 +558,51 @@ public class MapTest {
         }
     }
 
+    /**
+     * Test that the unit position index stays consistent with the map 
+     * across a series of adds, moves, and removes.
+     */
+    @Test
+    public void testUnitPositionIndex() {
+        System.out.println("unitPositionIndex");
+        Map map = new Map(10, 10);
+        ImmutablePoint p1 = new ImmutablePoint(1, 2);
+        ImmutablePoint p2 = new ImmutablePoint(8, 9);
+        ImmutablePoint p3 = new ImmutablePoint(0, 0);
+        Unit unit1 = createTestUnit();
+        Unit unit2 = createTestUnit();
+        
+        Set<Unit> units = map.getUnits();
+        map.addUnit(p1, unit1);
+        map.addUnit(p2, unit2);
+        assertEquals(2, units.size());
+        
+        map.moveUnitTo(p3, unit1);
+        assertEquals(p3, map.getPositionOf(unit1));
+        assertNull(map.getUnitAt(p1));
+        assertEquals(unit1, map.getUnitAt(p3));
+        
+        map.removeUnit(unit2);
+        assertFalse(map.containsUnit(unit2));
+        assertFalse(units.contains(unit2));
+        assertNull(map.getUnitAt(p2));
+        try {
+            map.getPositionOf(unit2);
+            fail("Successfully got the position of a removed unit.");
+        } catch (UnitNotFoundException ex) {}
+        
+        // a removed unit's old position can be reused, and the unit re-added
+        map.addUnit(p2, unit2);
+        map.moveUnitTo(p1, unit2);
+        assertEquals(p1, map.getPositionOf(unit2));
+        assertEquals(2, units.size());
+        
+        try {
+            units.clear();
+            fail("Successfully modified the map's unit roster directly.");
+        } catch (UnsupportedOperationException ex) {}
+    }
+
     /**
      * Test of setTerrainAt method, of class Map.
      */
@@ -532,6 +670,11 @@ public class MapTest {
             public void handleTerrainChanged(TerrainChangedEvent event) {
                 throw new UnsupportedOperationException("Not supported yet.");
             }
+
+            @Override
+            public void handleBatch(MapBatchEvent event) {
+                throw new UnsupportedOperationException("Not supported yet.");
+            }
         };
         // map change listener sets hasSucceeded[0] to true upon receiving an event
         map.addMapChangeListener(mapChangeListener);
@@ -572,6 +715,11 @@ public class MapTest {
             public void handleTerrainChanged(TerrainChangedEvent event) {
                 throw new UnsupportedOperationException("Not supported yet.");
             }
+
+            @Override
+            public void handleBatch(MapBatchEvent event) {
+                throw new UnsupportedOperationException("Not supported yet.");
+            }
         };
         // map change listener sets hasSucceeded[0] to true upon receiving an event
         map.addMapChangeListener(mapChangeListener);
@@ -618,6 +766,11 @@ public class MapTest {
             public void handleTerrainChanged(TerrainChangedEvent event) {
                 fail("Should not fire a terrain change event.");
             }
+
+            @Override
+            public void handleBatch(MapBatchEvent event) {
+                fail("Should not fire a batch event");
+            }
         };
         
         map.addMapChangeListener(mapChangeListener);
@@ -663,11 +816,648 @@ public class MapTest {
                 assertEquals(t1, event.getPreviousTerrain());
                 assertEquals(t2, event.getNewTerrain());
             }
-            
+
+            @Override
+            public void handleBatch(MapBatchEvent event) {
+                fail("Should not fire a batch event");
+            }
         };
         
         map.addMapChangeListener(mapChangeListener);
         map.setTerrainAt(p1, t2);
         
     }
-}
\ No newline at end of file
+    
+    /**
+     * Test that every listener is handed the same event for a mutation, and
+     * that listeners may unregister while being notified, of class Map.
+     */
+    @Test
+    public void testListenerDispatch() {
+        System.out.println("listenerDispatch");
+        final Map map = new Map(10, 10);
+        ImmutablePoint p1 = new ImmutablePoint(1, 1);
+        ImmutablePoint p2 = new ImmutablePoint(2, 1);
+        Unit unit1 = createTestUnit();
+        
+        RecordingListener first = new RecordingListener();
+        final RecordingListener second = new RecordingListener();
+        RecordingListener third = new RecordingListener();
+        map.addMapChangeListener(first);
+        map.addMapChangeListener(second);
+        map.addMapChangeListener(third);
+        // removes the second listener as soon as the first event reaches it
+        map.addMapChangeListener(new RecordingListener() {
+            @Override
+            public void handleUnitAdded(UnitAddedEvent event) {
+                map.removeMapChangeListener(second);
+            }
+        });
+        map.addMapChangeListener(null);
+        
+        map.addUnit(p1, unit1);
+        map.moveUnitTo(p2, unit1);
+        map.setTerrainAt(p1, DefaultTerrain.FOREST);
+        map.removeUnit(unit1);
+        
+        assertEquals(4, first.events.size());
+        assertEquals(first.events, third.events);
+        for(int i = 0; i < first.events.size(); i++) {
+            assertSame(first.events.get(i), third.events.get(i));
+        }
+        assertTrue(first.events.get(0) instanceof UnitAddedEvent);
+        assertTrue(first.events.get(3) instanceof UnitRemovedEvent);
+        
+        // the second listener was removed after the first mutation
+        assertEquals(1, second.events.size());
+        assertSame(first.events.get(0), second.events.get(0));
+    }
+    
+    /**
+     * Test of beginBatch and endBatch, of class Map.
+     */
+    @Test
+    public void testBatch() {
+        System.out.println("batch");
+        Map map = new Map(10, 10);
+        ImmutablePoint p1 = new ImmutablePoint(1, 1);
+        ImmutablePoint p2 = new ImmutablePoint(4, 2);
+        ImmutablePoint p3 = new ImmutablePoint(2, 6);
+        Unit staying = createTestUnit();
+        Unit leaving = createTestUnit();
+        Unit arriving = createTestUnit();
+        Unit transient1 = createTestUnit();
+        map.addUnit(p1, staying);
+        map.addUnit(p2, leaving);
+        map.setTerrainAt(p3, DefaultTerrain.FOREST);
+        
+        RecordingListener listener = new RecordingListener();
+        map.addMapChangeListener(listener);
+        map.beginBatch();
+        map.moveUnitTo(new ImmutablePoint(1, 2), staying);
+        map.beginBatch();
+        map.moveUnitTo(new ImmutablePoint(1, 3), staying);
+        map.removeUnit(leaving);
+        map.endBatch();
+        assertTrue(map.isBatching());
+        map.addUnit(new ImmutablePoint(0, 0), arriving);
+        map.moveUnitTo(new ImmutablePoint(0, 1), arriving);
+        map.addUnit(new ImmutablePoint(9, 9), transient1);
+        map.removeUnit(transient1);
+        map.setTerrainAt(new ImmutablePoint(5, 5), DefaultTerrain.PEAK);
+        map.setTerrainAt(new ImmutablePoint(5, 5), DefaultTerrain.WALL);
+        map.setTerrainAt(p3, DefaultTerrain.PLAINS);
+        map.setTerrainAt(p3, DefaultTerrain.FOREST);
+        // changes take effect immediately, but are not announced
+        assertEquals(new ImmutablePoint(1, 3), map.getPositionOf(staying));
+        assertTrue(listener.events.isEmpty());
+        map.endBatch();
+        assertFalse(map.isBatching());
+        
+        assertEquals(1, listener.events.size());
+        MapBatchEvent event = (MapBatchEvent) listener.events.get(0);
+        assertSame(map, event.getMap());
+        assertEquals(1, event.getUnitsAdded().size());
+        assertSame(arriving, event.getUnitsAdded().get(0).getUnitAdded());
+        assertEquals(new ImmutablePoint(0, 1), event.getUnitsAdded().get(0).getPosition());
+        assertEquals(1, event.getUnitsRemoved().size());
+        assertSame(leaving, event.getUnitsRemoved().get(0).getUnitRemoved());
+        assertEquals(p2, event.getUnitsRemoved().get(0).getPriorPosition());
+        assertEquals(1, event.getUnitsMoved().size());
+        assertEquals(p1, event.getUnitsMoved().get(0).getPriorPosition());
+        assertEquals(new ImmutablePoint(1, 3), event.getUnitsMoved().get(0).getNewPosition());
+        assertEquals(1, event.getTerrainChanges().size());
+        TerrainChangedEvent terrainChange = event.getTerrainChanges().get(0);
+        assertEquals(new ImmutablePoint(5, 5), terrainChange.getPointChanged());
+        assertEquals(DefaultTerrain.PLAINS, terrainChange.getPreviousTerrain());
+        assertEquals(DefaultTerrain.WALL, terrainChange.getNewTerrain());
+        
+        // the transient unit and the restored forest are not part of the region
+        assertEquals(0, event.getDirtyX());
+        assertEquals(1, event.getDirtyY());
+        assertEquals(6, event.getDirtyWidth());
+        assertEquals(5, event.getDirtyHeight());
+        assertTrue(event.isDirty(new ImmutablePoint(5, 5)));
+        assertFalse(event.isDirty(p3));
+        
+        // a batch that undoes itself sends nothing
+        map.beginBatch();
+        map.moveUnitTo(p1, staying);
+        map.moveUnitTo(new ImmutablePoint(1, 3), staying);
+        map.endBatch();
+        assertEquals(1, listener.events.size());
+        
+        try {
+            map.endBatch();
+            fail("Ended a batch that was never begun");
+        } catch (IllegalStateException ex) {}
+    }
+    
+    /**
+     * Test of a batch following one whose listener threw, of class Map.
+     */
+    @Test
+    public void testBatchAfterThrowingListener() {
+        System.out.println("batchAfterThrowingListener");
+        Map map = new Map(10, 10);
+        Unit mover = createTestUnit();
+        Unit bystander = createTestUnit();
+        map.addUnit(new ImmutablePoint(0, 0), mover);
+        map.addUnit(new ImmutablePoint(9, 9), bystander);
+        
+        RecordingListener throwing = new RecordingListener() {
+            @Override
+            public void handleBatch(MapBatchEvent event) {
+                super.handleBatch(event);
+                throw new IllegalStateException("listener failure");
+            }
+        };
+        map.addMapChangeListener(throwing);
+        map.beginBatch();
+        map.moveUnitTo(new ImmutablePoint(3, 0), mover);
+        map.setTerrainAt(new ImmutablePoint(5, 5), DefaultTerrain.FOREST);
+        try {
+            map.endBatch();
+            fail("Listener failure was swallowed");
+        } catch (IllegalStateException ex) {}
+        assertFalse(map.isBatching());
+        map.removeMapChangeListener(throwing);
+        
+        RecordingListener listener = new RecordingListener();
+        map.addMapChangeListener(listener);
+        map.beginBatch();
+        map.moveUnitTo(new ImmutablePoint(8, 9), bystander);
+        map.endBatch();
+        
+        // only the clean batch's own change is reported
+        assertEquals(1, listener.events.size());
+        MapBatchEvent event = (MapBatchEvent) listener.events.get(0);
+        assertEquals(1, event.getUnitsMoved().size());
+        assertSame(bystander, event.getUnitsMoved().get(0).getUnitMoved());
+        assertEquals(new ImmutablePoint(9, 9), event.getUnitsMoved().get(0).getPriorPosition());
+        assertTrue(event.getUnitsAdded().isEmpty());
+        assertTrue(event.getTerrainChanges().isEmpty());
+    }
+    
+    /**
+     * Test of the getPoint methods and the index based mutators, of class Map.
+     */
+    @Test
+    public void testCanonicalPoints() {
+        System.out.println("canonicalPoints");
+        Map map = new Map(6, 4);
+        ImmutablePoint point = map.getPoint(2, 3);
+        assertEquals(new ImmutablePoint(2, 3), point);
+        assertSame(point, map.getPoint(2, 3));
+        assertSame(point, map.getPoint(map.indexOf(2, 3)));
+        try {
+            map.getPoint(6, 0);
+            fail("Got a point outside the map");
+        } catch (IllegalArgumentException ex) {}
+        
+        Unit unit1 = createTestUnit();
+        map.addUnit(new ImmutablePoint(2, 3), unit1);
+        assertSame(point, map.getPositionOf(unit1));
+        assertEquals(map.indexOf(point), map.getIndexOf(unit1));
+        
+        RecordingListener listener = new RecordingListener();
+        map.addMapChangeListener(listener);
+        map.moveUnitTo(map.indexOf(4, 1), unit1);
+        assertSame(map.getPoint(4, 1), map.getPositionOf(unit1));
+        map.setTerrainAt(map.indexOf(0, 0), DefaultTerrain.FOREST);
+        assertEquals(DefaultTerrain.FOREST, map.getTerrainAt(new ImmutablePoint(0, 0)));
+        map.removeUnit(unit1);
+        map.addUnit(0, unit1);
+        assertSame(map.getPoint(0, 0), map.getPositionOf(unit1));
+        
+        UnitMovedEvent moved = (UnitMovedEvent) listener.events.get(0);
+        assertEquals(map.indexOf(2, 3), moved.getPriorIndex());
+        assertEquals(map.indexOf(4, 1), moved.getNewIndex());
+        assertSame(map.getPoint(4, 1), moved.getNewPosition());
+        assertEquals(0, ((TerrainChangedEvent) listener.events.get(1)).getIndexChanged());
+        assertEquals(map.indexOf(4, 1), ((UnitRemovedEvent) listener.events.get(2)).getPriorIndex());
+        assertEquals(0, ((UnitAddedEvent) listener.events.get(3)).getIndex());
+        
+        try {
+            map.addUnit(0, createTestUnit());
+            fail("Added a unit to an occupied tile");
+        } catch (IllegalArgumentException ex) {}
+        try {
+            map.setTerrainAt(map.getTileCount(), DefaultTerrain.FOREST);
+            fail("Set terrain outside the map");
+        } catch (IllegalArgumentException ex) {}
+    }
+    
+    /**
+     * Test of getModCount and getLastModified, of class Map.
+     */
+    @Test
+    public void testModificationTracking() {
+        System.out.println("modificationTracking");
+        Map map = new Map(20, 10);
+        assertEquals(0, map.getModCount());
+        assertEquals(0, map.getLastModified(0, 0, 19, 9));
+        
+        map.setTerrainAt(new ImmutablePoint(1, 1), DefaultTerrain.FOREST);
+        assertEquals(1, map.getModCount());
+        assertEquals(1, map.getLastModified(0, 0, 3, 3));
+        assertEquals(0, map.getLastModified(Map.REGION_SIZE, 0, 19, 9));
+        
+        Unit unit1 = createTestUnit();
+        map.addUnit(new ImmutablePoint(17, 9), unit1);
+        map.moveUnitTo(new ImmutablePoint(18, 9), unit1);
+        assertEquals(3, map.getModCount());
+        assertEquals(3, map.getLastModified(16, 8, 100, 100));
+        assertEquals(1, map.getLastModified(-5, -5, 7, 7));
+        
+        // batched changes are tracked as they happen
+        map.beginBatch();
+        map.removeUnit(unit1);
+        assertEquals(4, map.getModCount());
+        map.endBatch();
+        assertEquals(4, map.getLastModified(0, 0, 19, 9));
+    }
+    
+    /**
+     * Collects the tile indices of the units a query visits.
+     */
+    private static class CollectingVisitor implements UnitVisitor {
+        final Map map;
+        final int limit;
+        final List<Integer> tiles = new ArrayList<>();
+        
+        CollectingVisitor(Map map, int limit) {
+            this.map = map;
+            this.limit = limit;
+        }
+        
+        @Override
+        public boolean visit(Unit unit, int tileIndex) {
+            assertSame(unit, map.getUnitAt(tileIndex));
+            tiles.add(tileIndex);
+            return tiles.size() < limit;
+        }
+    }
+    
+    /**
+     * Test of visitUnitsInRectangle, visitUnitsWithin and visitUnitsInDiamond,
+     * of class Map.
+     */
+    @Test
+    public void testSpatialQueries() {
+        System.out.println("spatialQueries");
+        Random random = new Random(21);
+        // wider than a word, so rows span several words of occupancy
+        Map map = new Map(150, 12);
+        for(int i = 0; i < 400; i++) {
+            int tile = random.nextInt(map.getTileCount());
+            if(map.getUnitAt(tile) == null) {
+                map.addUnit(tile, createTestUnit());
+            }
+        }
+        Unit[] units = map.getUnits().toArray(new Unit[0]);
+        for(int i = 0; i < 100; i++) {
+            Unit unit = units[random.nextInt(units.length)];
+            if(!map.containsUnit(unit)) {
+                continue;
+            }
+            int tile = random.nextInt(map.getTileCount());
+            if(random.nextBoolean()) {
+                map.removeUnit(unit);
+            }
+            else if(map.getUnitAt(tile) == null) {
+                map.moveUnitTo(tile, unit);
+            }
+        }
+        
+        for(int trial = 0; trial < 200; trial++) {
+            ImmutablePoint center = map.getPoint(random.nextInt(map.getTileCount()));
+            int radius = random.nextInt(70);
+            int minX = random.nextInt(170) - 10;
+            int minY = random.nextInt(16) - 2;
+            int maxX = minX + random.nextInt(100);
+            int maxY = minY + random.nextInt(8);
+            
+            List<Integer> inRectangle = new ArrayList<>();
+            List<Integer> within = new ArrayList<>();
+            List<Integer> inDiamond = new ArrayList<>();
+            for(int tile = 0; tile < map.getTileCount(); tile++) {
+                if(map.getUnitAt(tile) == null) {
+                    continue;
+                }
+                int x = map.xOf(tile);
+                int y = map.yOf(tile);
+                int dx = Math.abs(x - center.getX());
+                int dy = Math.abs(y - center.getY());
+                if(x >= minX && x <= maxX && y >= minY && y <= maxY) {
+                    inRectangle.add(tile);
+                }
+                if(Math.max(dx, dy) <= radius) {
+                    within.add(tile);
+                }
+                if(dx + dy <= radius) {
+                    inDiamond.add(tile);
+                }
+            }
+            
+            CollectingVisitor visitor = new CollectingVisitor(map, Integer.MAX_VALUE);
+            assertTrue(map.visitUnitsInRectangle(minX, minY, maxX, maxY, visitor));
+            assertEquals(inRectangle, visitor.tiles);
+            visitor.tiles.clear();
+            assertTrue(map.visitUnitsWithin(center, radius, visitor));
+            assertEquals(within, visitor.tiles);
+            visitor.tiles.clear();
+            assertTrue(map.visitUnitsInDiamond(center, radius, visitor));
+            assertEquals(inDiamond, visitor.tiles);
+        }
+        
+        // a visitor can stop a query early
+        CollectingVisitor firstTwo = new CollectingVisitor(map, 2);
+        assertFalse(map.visitUnitsInRectangle(0, 0, 149, 11, firstTwo));
+        assertEquals(2, firstTwo.tiles.size());
+        
+        try {
+            map.visitUnitsInDiamond(map.getPoint(0, 0), -1, firstTwo);
+            fail("Queried a negative radius");
+        } catch (IllegalArgumentException ex) {}
+    }
+    
+    /**
+     * Test of getUnits, isOccupiedBy and isHostileOccupied by faction, of 
+     * class Map.
+     */
+    @Test
+    public void testFactionIndexes() {
+        System.out.println("factionIndexes");
+        Random random = new Random(22);
+        // wider than a word, so rows span several words of occupancy
+        Map map = new Map(100, 8);
+        Faction[] factions = Faction.values();
+        for(int i = 0; i < 200; i++) {
+            int tile = random.nextInt(map.getTileCount());
+            if(map.getUnitAt(tile) == null) {
+                map.addUnit(tile, new Unit(factions[random.nextInt(factions.length)]));
+            }
+        }
+        Unit[] units = map.getUnits().toArray(new Unit[0]);
+        for(int i = 0; i < 100; i++) {
+            Unit unit = units[random.nextInt(units.length)];
+            if(!map.containsUnit(unit)) {
+                continue;
+            }
+            int tile = random.nextInt(map.getTileCount());
+            if(random.nextBoolean()) {
+                map.removeUnit(unit);
+            }
+            else if(map.getUnitAt(tile) == null) {
+                map.moveUnitTo(tile, unit);
+            }
+        }
+        
+        int total = 0;
+        for(Faction faction : factions) {
+            Set<Unit> members = map.getUnits(faction);
+            total += members.size();
+            for(Unit unit : members) {
+                assertEquals(faction, unit.getFaction());
+                assertTrue(map.containsUnit(unit));
+            }
+            for(int tile = 0; tile < map.getTileCount(); tile++) {
+                Unit unit = map.getUnitAt(tile);
+                assertEquals(unit != null && unit.getFaction() == faction, 
+                        map.isOccupiedBy(tile, faction));
+                assertEquals(unit != null && faction.isHostileTo(unit.getFaction()), 
+                        map.isHostileOccupied(tile, faction));
+            }
+        }
+        assertEquals(map.getUnits().size(), total);
+        
+        // the rosters are live views
+        Unit enemy = new Unit(Faction.ENEMY);
+        Set<Unit> enemies = map.getUnits(Faction.ENEMY);
+        int enemyCount = enemies.size();
+        ImmutablePoint tile = map.getPoint(0, 0);
+        if(map.unitAt(tile)) {
+            map.removeUnit(map.getUnitAt(tile));
+        }
+        map.addUnit(tile, enemy);
+        assertEquals(enemyCount + 1, enemies.size());
+        assertTrue(map.isHostileOccupied(tile, Faction.PLAYER));
+        assertTrue(map.isHostileOccupied(tile, Faction.ALLY));
+        assertFalse(map.isHostileOccupied(tile, Faction.ENEMY));
+        assertFalse(map.isHostileOccupied(tile, Faction.NEUTRAL));
+        map.removeUnit(enemy);
+        assertEquals(enemyCount, enemies.size());
+        assertFalse(map.isOccupiedBy(tile, Faction.ENEMY));
+        try {
+            enemies.add(enemy);
+            fail("Modified a faction roster");
+        } catch (UnsupportedOperationException ex) {}
+        
+        try {
+            map.getUnits(null);
+            fail("Got the units of a null faction");
+        } catch (IllegalArgumentException ex) {}
+    }
+    
+    /**
+     * Test of stateHash and recomputeStateHash, of class Map.
+     */
+    @Test
+    public void testStateHash() {
+        System.out.println("stateHash");
+        Random random = new Random(23);
+        Map map = new Map(40, 30);
+        Terrain[] terrains = DefaultTerrain.values();
+        assertEquals(map.recomputeStateHash(), map.stateHash());
+        
+        List<Unit> units = new ArrayList<>();
+        for(int i = 0; i < 2000; i++) {
+            int tile = random.nextInt(map.getTileCount());
+            switch(random.nextInt(4)) {
+                case 0:
+                    map.setTerrainAt(tile, terrains[random.nextInt(terrains.length)]);
+                    break;
+                case 1:
+                    if(map.getUnitAt(tile) == null) {
+                        Unit unit = createTestUnit();
+                        units.add(unit);
+                        map.addUnit(tile, unit);
+                    }
+                    break;
+                case 2:
+                    if(!units.isEmpty()) {
+                        map.removeUnit(units.remove(random.nextInt(units.size())));
+                    }
+                    break;
+                default:
+                    if(!units.isEmpty() && map.getUnitAt(tile) == null) {
+                        map.moveUnitTo(tile, units.get(random.nextInt(units.size())));
+                    }
+            }
+            assertEquals(map.recomputeStateHash(), map.stateHash());
+        }
+        assertEquals(map.stateHash(), map.snapshot().stateHash());
+        
+        // undoing changes restores the hash
+        long hash = map.stateHash();
+        ImmutablePoint tile = map.getPoint(3, 4);
+        Terrain terrain = map.getTerrainAt(tile);
+        map.setTerrainAt(tile, terrain == DefaultTerrain.WALL ? DefaultTerrain.PEAK : DefaultTerrain.WALL);
+        assertTrue(hash != map.stateHash());
+        map.setTerrainAt(tile, terrain);
+        assertEquals(hash, map.stateHash());
+        
+        // equal states hash equally whatever order they were reached in, but
+        // swapping two units is a different state
+        Map small = new Map(10, 10);
+        Unit first = createTestUnit();
+        Unit second = createTestUnit();
+        small.addUnit(small.getPoint(1, 1), first);
+        small.addUnit(small.getPoint(2, 2), second);
+        small.setTerrainAt(small.getPoint(5, 5), DefaultTerrain.FOREST);
+        long forwardHash = small.stateHash();
+        small.removeUnit(first);
+        small.removeUnit(second);
+        small.setTerrainAt(small.getPoint(5, 5), DefaultTerrain.PLAINS);
+        small.setTerrainAt(small.getPoint(5, 5), DefaultTerrain.FOREST);
+        small.addUnit(small.getPoint(0, 0), second);
+        small.addUnit(small.getPoint(1, 1), first);
+        small.moveUnitTo(small.getPoint(2, 2), second);
+        assertEquals(forwardHash, small.stateHash());
+        small.moveUnitTo(small.getPoint(3, 3), first);
+        small.moveUnitTo(small.getPoint(1, 1), second);
+        small.moveUnitTo(small.getPoint(2, 2), first);
+        assertTrue(forwardHash != small.stateHash());
+    }
+    
+    /**
+     * Makes a random change to the given map, keeping the list of units on
+     * the map up to date.
+     */
+    private void mutateRandomly(Map map, List<Unit> units, Random random) {
+        int tile = random.nextInt(map.getTileCount());
+        switch(random.nextInt(4)) {
+            case 0:
+                map.setTerrainAt(tile, DefaultTerrain.values()[random.nextInt(DefaultTerrain.values().length)]);
+                break;
+            case 1:
+                if(map.getUnitAt(tile) == null) {
+                    Unit unit = createTestUnit();
+                    units.add(unit);
+                    map.addUnit(tile, unit);
+                }
+                break;
+            case 2:
+                if(!units.isEmpty()) {
+                    map.removeUnit(units.remove(random.nextInt(units.size())));
+                }
+                break;
+            default:
+                if(!units.isEmpty() && map.getUnitAt(tile) == null) {
+                    map.moveUnitTo(tile, units.get(random.nextInt(units.size())));
+                }
+        }
+    }
+    
+    /**
+     * Asserts that the given map is in the state recorded by the snapshot.
+     */
+    private void assertMatches(MapSnapshot expected, Map map) {
+        for(int tile = 0; tile < map.getTileCount(); tile++) {
+            assertEquals(expected.getTerrainAt(tile), map.getTerrainAt(tile));
+            assertEquals(expected.getUnitAt(tile), map.getUnitAt(tile));
+        }
+        assertEquals(expected.getUnits(), map.getUnits());
+        assertEquals(expected.stateHash(), map.stateHash());
+    }
+    
+    /**
+     * Test of checkpoint, rollbackTo and releaseCheckpoint, of class Map.
+     */
+    @Test
+    public void testCheckpoints() {
+        System.out.println("checkpoints");
+        Random random = new Random(24);
+        Map map = new Map(20, 20);
+        List<Unit> units = new ArrayList<>();
+        for(int i = 0; i < 100; i++) {
+            mutateRandomly(map, units, random);
+        }
+        
+        for(int trial = 0; trial < 50; trial++) {
+            MapSnapshot outerState = map.snapshot();
+            List<Unit> outerUnits = new ArrayList<>(units);
+            int outer = map.checkpoint();
+            for(int i = random.nextInt(20); i > 0; i--) {
+                mutateRandomly(map, units, random);
+            }
+            MapSnapshot innerState = map.snapshot();
+            List<Unit> innerUnits = new ArrayList<>(units);
+            int inner = map.checkpoint();
+            assertEquals(outer + 1, inner);
+            for(int i = random.nextInt(20); i > 0; i--) {
+                mutateRandomly(map, units, random);
+            }
+            
+            map.rollbackTo(inner);
+            assertMatches(innerState, map);
+            assertEquals(outer, map.getCheckpointDepth());
+            if(random.nextBoolean()) {
+                map.rollbackTo(outer);
+                assertMatches(outerState, map);
+                units = outerUnits;
+            }
+            else {
+                map.releaseCheckpoint(outer);
+                units = innerUnits;
+            }
+            assertEquals(0, map.getCheckpointDepth());
+            assertEquals(0, map.getJournalSize());
+        }
+        
+        // changes are only journaled while a checkpoint is open
+        map.setTerrainAt(0, DefaultTerrain.WALL);
+        assertEquals(0, map.getJournalSize());
+        try {
+            map.rollbackTo(1);
+            fail("Rolled back to a checkpoint that is not open");
+        } catch (IllegalArgumentException ex) {}
+    }
+    
+    /**
+     * Test of rolling back with and without events suppressed, of class Map.
+     */
+    @Test
+    public void testSuppressingEvents() {
+        System.out.println("suppressingEvents");
+        Map map = new Map(10, 10);
+        Unit unit = createTestUnit();
+        map.addUnit(map.getPoint(1, 1), unit);
+        RecordingListener listener = new RecordingListener();
+        map.addMapChangeListener(listener);
+        
+        // a player undoing a move sees the unit moved back
+        int checkpoint = map.checkpoint();
+        map.moveUnitTo(map.getPoint(2, 2), unit);
+        map.rollbackTo(checkpoint);
+        assertEquals(2, listener.events.size());
+        UnitMovedEvent undo = (UnitMovedEvent) listener.events.get(1);
+        assertEquals(map.getPoint(2, 2), undo.getPriorPosition());
+        assertEquals(map.getPoint(1, 1), undo.getNewPosition());
+        
+        // an AI search sees nothing
+        listener.events.clear();
+        map.setSuppressingEvents(true);
+        assertTrue(map.isSuppressingEvents());
+        checkpoint = map.checkpoint();
+        map.moveUnitTo(map.getPoint(3, 3), unit);
+        map.setTerrainAt(map.getPoint(4, 4), DefaultTerrain.PEAK);
+        map.removeUnit(unit);
+        map.rollbackTo(checkpoint);
+        map.setSuppressingEvents(false);
+        assertTrue(listener.events.isEmpty());
+        assertEquals(map.getPoint(1, 1), map.getPositionOf(unit));
+        assertEquals(DefaultTerrain.PLAINS, map.getTerrainAt(map.getPoint(4, 4)));
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.model;
+
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the MoveRange class.
+ * @author Kyle Buzsaki
+ */
+public class MoveRangeTest {
+    
+    public MoveRangeTest() {
+    }
+    
+    /**
+     * Test of calculate on open terrain, of class MoveRange.
+     */
+    @Test
+    public void testCalculateOpenTerrain() {
+        System.out.println("calculateOpenTerrain");
+        Map map = new Map(10, 10);
+        ImmutablePoint origin = new ImmutablePoint(5, 5);
+        MoveRange range = MoveRange.calculate(map, origin, MoveType.FOOT, 3, DefaultAllegiance.ALL_HOSTILE);
+        
+        // a diamond of radius 3 contains 2*3*(3+1)+1 = 25 tiles
+        assertEquals(25, range.getReachableCount());
+        for(int x = 0; x < map.getWidth(); x++) {
+            for(int y = 0; y < map.getHeight(); y++) {
+                ImmutablePoint point = new ImmutablePoint(x, y);
+                int distance = origin.distanceGrid(point);
+                assertEquals(distance <= 3, range.isReachable(point));
+                if(distance <= 3) {
+                    assertEquals(distance, range.getCostTo(point));
+                }
+                else {
+                    assertEquals(MoveCostStrategy.IMPASSABLE, range.getCostTo(point));
+                }
+            }
+        }
+        assertEquals(0, range.getCostTo(origin));
+        assertTrue(range.canEndAt(origin));
+        
+        List<ImmutablePoint> points = range.getReachablePoints();
+        assertEquals(origin, points.get(0));
+        for(int i = 1; i < points.size(); i++) {
+            assertTrue(range.getCostTo(points.get(i - 1)) <= range.getCostTo(points.get(i)));
+        }
+    }
+    
+    /**
+     * Test of calculate with terrain of varying cost, of class MoveRange.
+     */
+    @Test
+    public void testCalculateTerrainCosts() {
+        System.out.println("calculateTerrainCosts");
+        Map map = new Map(10, 10);
+        ImmutablePoint origin = new ImmutablePoint(0, 0);
+        // a wall of peaks along x = 1, except for a forest gap at y = 3
+        for(int y = 0; y < map.getHeight(); y++) {
+            map.setTerrainAt(new ImmutablePoint(1, y), DefaultTerrain.PEAK);
+        }
+        map.setTerrainAt(new ImmutablePoint(1, 3), DefaultTerrain.FOREST);
+        
+        MoveRange range = MoveRange.calculate(map, origin, MoveType.FOOT, 6, DefaultAllegiance.ALL_HOSTILE);
+        ImmutablePoint gap = new ImmutablePoint(1, 3);
+        ImmutablePoint beyond = new ImmutablePoint(2, 3);
+        assertTrue(range.isReachable(gap));
+        assertEquals(5, range.getCostTo(gap));
+        assertEquals(6, range.getCostTo(beyond));
+        assertFalse(range.isReachable(new ImmutablePoint(1, 0)));
+        assertFalse(range.isReachable(new ImmutablePoint(2, 0)));
+        
+        // flyers ignore the peaks entirely
+        MoveRange flyerRange = MoveRange.calculate(map, origin, MoveType.FLYER, 6, DefaultAllegiance.ALL_HOSTILE);
+        assertEquals(2, flyerRange.getCostTo(new ImmutablePoint(2, 0)));
+        
+        // a budget large enough to overflow if IMPASSABLE were added
+        MoveRange hugeRange = MoveRange.calculate(map, origin, MoveType.FOOT, Integer.MAX_VALUE - 1, DefaultAllegiance.ALL_HOSTILE);
+        assertFalse(hugeRange.isReachable(new ImmutablePoint(1, 0)));
+        assertTrue(hugeRange.isReachable(new ImmutablePoint(9, 9)));
+    }
+    
+    /**
+     * Test of getPathTo method, of class MoveRange.
+     */
+    @Test
+    public void testGetPathTo() {
+        System.out.println("getPathTo");
+        Map map = new Map(10, 10);
+        ImmutablePoint origin = new ImmutablePoint(0, 0);
+        for(int y = 0; y < map.getHeight(); y++) {
+            map.setTerrainAt(new ImmutablePoint(1, y), DefaultTerrain.WALL);
+        }
+        map.setTerrainAt(new ImmutablePoint(1, 3), DefaultTerrain.PLAINS);
+        
+        MoveRange range = MoveRange.calculate(map, origin, MoveType.FOOT, 10, DefaultAllegiance.ALL_HOSTILE);
+        ImmutablePoint destination = new ImmutablePoint(2, 0);
+        Path path = range.getPathTo(destination);
+        
+        assertEquals(origin, path.get(0));
+        assertEquals(destination, path.getEnd());
+        assertTrue(path.contains(new ImmutablePoint(1, 3)));
+        assertEquals(range.getCostTo(destination), path.size() - 1);
+        
+        assertEquals(Path.createPath(java.util.Arrays.asList(origin)), range.getPathTo(origin));
+        assertEquals(-1, range.getPredecessorOf(map.indexOf(origin)));
+        
+        try {
+            range.getPathTo(new ImmutablePoint(1, 0));
+            fail("Successfully got a path to an unreachable position.");
+        } catch (IllegalArgumentException ex) {}
+    }
+    
+    /**
+     * Test of how occupied tiles are handled, of class MoveRange.
+     */
+    @Test
+    public void testOccupancy() {
+        System.out.println("occupancy");
+        Map map = new Map(5, 1);
+        final Unit mover = new Unit();
+        final Unit ally = new Unit();
+        Unit enemy = new Unit();
+        map.addUnit(new ImmutablePoint(0, 0), mover);
+        map.addUnit(new ImmutablePoint(1, 0), ally);
+        map.addUnit(new ImmutablePoint(3, 0), enemy);
+        
+        AllegianceStrategy allegiance = new AllegianceStrategy() {
+            @Override
+            public boolean areAllied(Unit first, Unit second) {
+                return (first == mover || first == ally) && (second == mover || second == ally);
+            }
+        };
+        
+        MoveRange range = MoveRange.calculate(mover, MoveType.FOOT, 4, allegiance);
+        // allies can be moved through but not ended on
+        assertTrue(range.isReachable(new ImmutablePoint(1, 0)));
+        assertFalse(range.canEndAt(new ImmutablePoint(1, 0)));
+        assertTrue(range.canEndAt(new ImmutablePoint(2, 0)));
+        // enemies block
+        assertFalse(range.isReachable(new ImmutablePoint(3, 0)));
+        assertFalse(range.isReachable(new ImmutablePoint(4, 0)));
+        
+        MoveRange hostileRange = MoveRange.calculate(mover, MoveType.FOOT, 4, DefaultAllegiance.ALL_HOSTILE);
+        assertEquals(1, hostileRange.getReachableCount());
+    }
+    
+    /**
+     * Test of faction based blocking, of class MoveRange.
+     */
+    @Test
+    public void testFactionAllegiance() {
+        System.out.println("factionAllegiance");
+        Map map = new Map(6, 1);
+        Unit mover = new Unit(Faction.PLAYER);
+        map.addUnit(new ImmutablePoint(0, 0), mover);
+        map.addUnit(new ImmutablePoint(1, 0), new Unit(Faction.ALLY));
+        map.addUnit(new ImmutablePoint(2, 0), new Unit(Faction.NEUTRAL));
+        map.addUnit(new ImmutablePoint(4, 0), new Unit(Faction.ENEMY));
+        
+        MoveRange range = MoveRange.calculate(mover, MoveType.FOOT, 5, DefaultAllegiance.FACTION);
+        // allies and neutrals can be moved through, enemies block
+        assertTrue(range.isReachable(new ImmutablePoint(2, 0)));
+        assertTrue(range.canEndAt(new ImmutablePoint(3, 0)));
+        assertFalse(range.isReachable(new ImmutablePoint(4, 0)));
+        assertFalse(range.isReachable(new ImmutablePoint(5, 0)));
+    }
+    
+    /**
+     * Test of calculate on a snapshot and a graph copy, of class MoveRange.
+     */
+    @Test
+    public void testCalculateOnSnapshot() {
+        System.out.println("calculateOnSnapshot");
+        Map map = new Map(6, 1);
+        Unit mover = new Unit(Faction.PLAYER);
+        map.addUnit(new ImmutablePoint(0, 0), mover);
+        MapSnapshot snapshot = map.snapshot();
+        MovementGraph movementGraph = map.getMovementGraph(MoveType.FOOT).copy();
+        
+        // neither the wall nor the enemy exists as far as the snapshot knows
+        map.setTerrainAt(new ImmutablePoint(2, 0), DefaultTerrain.WALL);
+        map.addUnit(new ImmutablePoint(4, 0), new Unit(Faction.ENEMY));
+        MoveRange range = MoveRange.calculate(snapshot, movementGraph, new ImmutablePoint(0, 0),
+                5, DefaultAllegiance.FACTION);
+        assertEquals(map, range.getMap());
+        assertEquals(6, range.getReachableCount());
+        assertEquals(5, range.getCostTo(new ImmutablePoint(5, 0)));
+        assertEquals(5, range.getPathTo(new ImmutablePoint(5, 0)).size() - 1);
+        
+        MoveRange liveRange = MoveRange.calculate(map, new ImmutablePoint(0, 0), MoveType.FOOT,
+                5, DefaultAllegiance.FACTION);
+        assertEquals(2, liveRange.getReachableCount());
+        
+        try {
+            MoveRange.calculate(snapshot, new Map(5, 5).getMovementGraph(MoveType.FOOT),
+                    new ImmutablePoint(0, 0), 1, DefaultAllegiance.FACTION);
+            fail("Successfully calculated a range with a graph of a different size.");
+        } catch (IllegalArgumentException ex) {}
+    }
+    
+    /**
+     * Test of argument validation, of class MoveRange.
+     */
+    @Test
+    public void testCalculateInvalidArguments() {
+        System.out.println("calculateInvalidArguments");
+        Map map = new Map(5, 5);
+        ImmutablePoint origin = new ImmutablePoint(0, 0);
+        try {
+            MoveRange.calculate(map, origin, MoveType.FOOT, -1, DefaultAllegiance.ALL_HOSTILE);
+            fail("Successfully calculated a range with negative movement.");
+        } catch (IllegalArgumentException ex) {}
+        try {
+            MoveRange.calculate(map, new ImmutablePoint(5, 0), MoveType.FOOT, 1, DefaultAllegiance.ALL_HOSTILE);
+            fail("Successfully calculated a range from an out of bounds origin.");
+        } catch (IllegalArgumentException ex) {}
+        try {
+            MoveRange.calculate(map, origin, null, 1, DefaultAllegiance.ALL_HOSTILE);
+            fail("Successfully calculated a range with a null strategy.");
+        } catch (IllegalArgumentException ex) {}
+        
+        MoveRange zeroRange = MoveRange.calculate(map, origin, MoveType.FOOT, 0, DefaultAllegiance.ALL_HOSTILE);
+        assertEquals(1, zeroRange.getReachableCount());
+    }
+    
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.model;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the MovementGraph class.
+ * @author Kyle Buzsaki
+ */
+public class MovementGraphTest {
+
+    public MovementGraphTest() {
+    }
+
+    private static void assertMatchesMap(Map map, MovementGraph graph) {
+        MoveCostStrategy moveCostStrategy = graph.getMoveCostStrategy();
+        for(int tile = 0; tile < map.getTileCount(); tile++) {
+            int expectedCost = moveCostStrategy.getCostOf(map.getTerrainAt(tile).getTerrainBehavior());
+            assertEquals(expectedCost, graph.getEntryCost(tile));
+            assertEquals(expectedCost != MoveCostStrategy.IMPASSABLE, graph.isPassable(tile));
+
+            ImmutablePoint point = new ImmutablePoint(map.xOf(tile), map.yOf(tile));
+            for(int direction = 0; direction < MovementGraph.DIRECTION_COUNT; direction++) {
+                ImmutablePoint neighbor = new ImmutablePoint(
+                        point.getX() + MovementGraph.NEIGHBOR_X[direction],
+                        point.getY() + MovementGraph.NEIGHBOR_Y[direction]);
+                int expectedNeighbor = -1;
+                if(neighbor.inBounds(0, 0, map.getWidth(), map.getHeight())
+                        && graph.isPassable(map.indexOf(neighbor))) {
+                    expectedNeighbor = map.indexOf(neighbor);
+                }
+                assertEquals(expectedNeighbor, graph.getNeighbor(tile, direction));
+            }
+        }
+    }
+
+    /**
+     * Test of the entry costs and neighbor table, of class MovementGraph.
+     */
+    @Test
+    public void testCompile() {
+        System.out.println("compile");
+        Map map = new Map(4, 3);
+        map.setTerrainAt(new ImmutablePoint(1, 1), DefaultTerrain.WALL);
+        map.setTerrainAt(new ImmutablePoint(2, 1), DefaultTerrain.FOREST);
+        MovementGraph graph = new MovementGraph(map, MoveType.KNIGHT_A);
+
+        assertMatchesMap(map, graph);
+        int wall = map.indexOf(1, 1);
+        assertFalse(graph.isPassable(wall));
+        assertEquals(MoveCostStrategy.IMPASSABLE, graph.getEntryCost(wall));
+        assertEquals(3, graph.getEntryCost(map.indexOf(2, 1)));
+        // the tile above the wall cannot step down into it
+        assertEquals(-1, graph.getNeighbor(map.indexOf(1, 0), 0));
+        // the corner has no neighbors up or to the left
+        assertEquals(-1, graph.getNeighbor(0, 1));
+        assertEquals(-1, graph.getNeighbor(0, 2));
+
+        assertEquals(1, graph.getMinEntryCost());
+        assertEquals(3, graph.getMaxEntryCost(10));
+        assertEquals(1, graph.getMaxEntryCost(2));
+        assertEquals(0, graph.getMaxEntryCost(0));
+    }
+
+    /**
+     * Test that graphs follow terrain changes, of class MovementGraph.
+     */
+    @Test
+    public void testTerrainChanged() {
+        System.out.println("terrainChanged");
+        Map map = new Map(12, 9);
+        MovementGraph footGraph = map.getMovementGraph(MoveType.FOOT);
+        MovementGraph knightGraph = map.getMovementGraph(MoveType.KNIGHT_A);
+        assertSame(footGraph, map.getMovementGraph(MoveType.FOOT));
+        assertSame(map, footGraph.getMap());
+
+        Terrain[] terrains = DefaultTerrain.values();
+        Random random = new Random(9);
+        for(int i = 0; i < 200; i++) {
+            ImmutablePoint point = new ImmutablePoint(random.nextInt(map.getWidth()),
+                    random.nextInt(map.getHeight()));
+            map.setTerrainAt(point, terrains[random.nextInt(terrains.length)]);
+        }
+
+        assertMatchesMap(map, footGraph);
+        assertMatchesMap(map, knightGraph);
+        assertMatchesMap(map, new MovementGraph(map, MoveType.FOOT));
+
+        // a graph built directly follows the map as a listener, batches included
+        MovementGraph listeningGraph = new MovementGraph(map, MoveType.FOOT);
+        map.addMapChangeListener(listeningGraph);
+        map.setTerrainAt(new ImmutablePoint(0, 0), DefaultTerrain.WALL);
+        map.beginBatch();
+        map.setTerrainAt(new ImmutablePoint(1, 0), DefaultTerrain.WALL);
+        map.setTerrainAt(new ImmutablePoint(0, 1), DefaultTerrain.FOREST);
+        map.endBatch();
+        assertMatchesMap(map, listeningGraph);
+
+        Map walledMap = new Map(2, 1);
+        MovementGraph walledGraph = walledMap.getMovementGraph(MoveType.FOOT);
+        walledMap.setTerrainAt(new ImmutablePoint(0, 0), DefaultTerrain.WALL);
+        walledMap.setTerrainAt(new ImmutablePoint(1, 0), DefaultTerrain.WALL);
+        assertEquals(MoveCostStrategy.IMPASSABLE, walledGraph.getMinEntryCost());
+        assertEquals(0, walledGraph.getMaxEntryCost(MoveCostStrategy.IMPASSABLE));
+    }
+
+    /**
+     * Test of the bounds on stored costs, of class MovementGraph.
+     */
+    @Test
+    public void testCostClamping() {
+        System.out.println("costClamping");
+        Map map = new Map(3, 1);
+        map.setTerrainAt(new ImmutablePoint(1, 0), DefaultTerrain.FOREST);
+        map.setTerrainAt(new ImmutablePoint(2, 0), DefaultTerrain.PEAK);
+        MovementGraph graph = new MovementGraph(map, new MoveCostStrategy() {
+            @Override
+            public int getCostOf(TerrainBehavior terrainBehavior) {
+                if(terrainBehavior == DefaultTerrainBehavior.FLAT_BEHAVIOR) {
+                    return 0;
+                }
+                else if(terrainBehavior == DefaultTerrainBehavior.FOREST_BEHAVIOR) {
+                    return MovementGraph.MAX_ENTRY_COST;
+                }
+                return MovementGraph.MAX_ENTRY_COST + 1;
+            }
+            @Override
+            public int getCostOf(java.util.List<TerrainBehavior> path) {
+                throw new UnsupportedOperationException();
+            }
+        });
+
+        assertEquals(1, graph.getEntryCost(0));
+        assertEquals(MovementGraph.MAX_ENTRY_COST, graph.getEntryCost(1));
+        assertEquals(MoveCostStrategy.IMPASSABLE, graph.getEntryCost(2));
+    }
+
+}
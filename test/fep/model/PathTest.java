@@ -6,9 +6,12 @@ package fep.model;
 
 import fep.model.ImmutablePoint;
 import fep.model.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -91,6 +94,163 @@ public class PathTest {
         assertEquals(path, path.concat(path.getEnd()));
     }
 
+    /**
+     * Test that paths sharing structure stay independent as related paths
+     * are extended and truncated, of class Path.
+     */
+    @Test
+    public void testSharedStructure() {
+        System.out.println("sharedStructure");
+        ImmutablePoint p0 = new ImmutablePoint(0, 0);
+        ImmutablePoint p1 = new ImmutablePoint(1, 0);
+        ImmutablePoint p2 = new ImmutablePoint(2, 0);
+        ImmutablePoint p3 = new ImmutablePoint(2, 1);
+        ImmutablePoint branchPoint = new ImmutablePoint(1, 1);
+        
+        Path base = Path.emptyPath().concat(p0).concat(p1);
+        Path longer = base.concat(p2).concat(p3);
+        // extending the base in a different direction must not disturb longer
+        Path branched = base.concat(branchPoint);
+        
+        assertEquals(Path.createPath(Arrays.asList(p0, p1, p2, p3)), longer);
+        assertEquals(Path.createPath(Arrays.asList(p0, p1, branchPoint)), branched);
+        assertTrue(longer.contains(p3) && !longer.contains(branchPoint));
+        assertTrue(branched.contains(branchPoint) && !branched.contains(p2));
+        assertFalse(base.contains(p2) || base.contains(branchPoint));
+        assertEquals(p3, longer.get(3));
+        assertEquals(branchPoint, branched.get(2));
+        
+        // truncating and regrowing from either one
+        Path truncated = longer.concat(p1);
+        assertEquals(base, truncated);
+        assertEquals(base.hashCode(), truncated.hashCode());
+        Path regrown = truncated.concat(branchPoint);
+        assertEquals(branched, regrown);
+        assertEquals(4, longer.size());
+        assertEquals(p2, longer.get(2));
+        assertEquals(Arrays.asList(p0, p1, p2, p3), longer.toList());
+        
+        // equal paths built independently hash and compare the same
+        assertEquals(longer.hashCode(), Path.createPath(Arrays.asList(p0, p1, p2, p3)).hashCode());
+        assertFalse(longer.equals(branched));
+    }
+    
+    /**
+     * Test of drawing a long path one point at a time, of class Path.
+     */
+    @Test
+    public void testLongPath() {
+        System.out.println("longPath");
+        Path path = Path.emptyPath();
+        int length = 10000;
+        for(int i = 0; i < length; i++) {
+            path = path.concat(new ImmutablePoint(i, 0));
+        }
+        assertEquals(length, path.size());
+        assertTrue(path.contains(new ImmutablePoint(length / 2, 0)));
+        assertFalse(path.contains(new ImmutablePoint(length, 0)));
+        assertEquals(new ImmutablePoint(1234, 0), path.get(1234));
+        
+        Path truncated = path.concat(new ImmutablePoint(10, 0));
+        assertEquals(11, truncated.size());
+        assertFalse(truncated.contains(new ImmutablePoint(11, 0)));
+        assertTrue(path.contains(new ImmutablePoint(11, 0)));
+    }
+
+    private static final int[] STEP_X = {0, 0, -1, 1};
+    private static final int[] STEP_Y = {1, -1, 0, 0};
+    
+    /**
+     * Test of a random walk that keeps doubling back on itself, of class 
+     * Path. Checks every path drawn against its points.
+     */
+    @Test
+    public void testRandomWalk() {
+        System.out.println("randomWalk");
+        Random random = new Random(7);
+        List<Path> paths = new ArrayList<>();
+        Path path = Path.createPath(Arrays.asList(new ImmutablePoint(0, 0)));
+        for(int step = 0; step < 3000; step++) {
+            ImmutablePoint end = path.getEnd();
+            int direction = random.nextInt(4);
+            ImmutablePoint next = new ImmutablePoint(end.getX() + STEP_X[direction], 
+                    end.getY() + STEP_Y[direction]);
+            path = path.concat(next);
+            if(random.nextInt(50) == 0) {
+                // go back to an older path and branch off it
+                paths.add(path);
+                path = paths.get(random.nextInt(paths.size()));
+            }
+            
+            List<ImmutablePoint> points = path.toList();
+            assertEquals(points.size(), path.size());
+            for(int dx = -2; dx <= 2; dx++) {
+                for(int dy = -2; dy <= 2; dy++) {
+                    ImmutablePoint point = new ImmutablePoint(next.getX() + dx, next.getY() + dy);
+                    assertEquals(points.contains(point), path.contains(point));
+                }
+            }
+            int index = random.nextInt(points.size());
+            assertEquals(points.get(index), path.get(index));
+        }
+        assertFalse(path.contains(null));
+    }
+
+    /**
+     * Test of reading and extending related paths from several threads, of
+     * class Path.
+     */
+    @Test
+    public void testConcurrentBranches() throws InterruptedException {
+        System.out.println("concurrentBranches");
+        List<ImmutablePoint> trunk = new ArrayList<>();
+        for(int x = 0; x < 200; x++) {
+            trunk.add(new ImmutablePoint(x, 0));
+        }
+        final Path root = Path.createPath(trunk);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[4];
+        for(int i = 0; i < threads.length; i++) {
+            final int seed = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Random random = new Random(seed);
+                        for(int round = 0; round < 200; round++) {
+                            // branch off the shared trunk at a random point, away from it
+                            int branchIndex = random.nextInt(root.size());
+                            Path path = root.concat(root.get(branchIndex));
+                            List<ImmutablePoint> points = new ArrayList<>(path.toList());
+                            int y = 0;
+                            for(int step = 0; step < 30; step++) {
+                                y += seed % 2 == 0 ? 1 : -1;
+                                ImmutablePoint next = new ImmutablePoint(branchIndex, y);
+                                path = path.concat(next);
+                                points.add(next);
+                            }
+                            int index = random.nextInt(points.size());
+                            assertEquals(points.get(index), path.get(index));
+                            assertEquals(points.size(), path.size());
+                            assertTrue(path.contains(points.get(index)));
+                            assertTrue(root.contains(new ImmutablePoint(random.nextInt(200), 0)));
+                            assertFalse(path.contains(new ImmutablePoint(branchIndex + 1, 0)));
+                        }
+                    } catch (Throwable ex) {
+                        failure.compareAndSet(null, ex);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        if(failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+
     /**
      * Test of get method, of class Path.
      */
@@ -225,4 +385,26 @@ public class PathTest {
         assertTrue(listForm != path.toList()); // ensures defensive copying
     }
     
-}
\ No newline at end of file
+    /**
+     * Test of the getPacked, toPackedArray and toIndexArray methods, of class Path.
+     */
+    @Test
+    public void testPackedAccessors() {
+        System.out.println("packedAccessors");
+        Map map = new Map(5, 5);
+        Path path = Path.createPath(Arrays.asList(new ImmutablePoint(1, 1), 
+                new ImmutablePoint(1, 2), new ImmutablePoint(2, 2)));
+        
+        long[] packedPoints = path.toPackedArray();
+        int[] indices = path.toIndexArray(map);
+        assertEquals(path.size(), packedPoints.length);
+        assertEquals(path.size(), indices.length);
+        for(int i = 0; i < path.size(); i++) {
+            assertEquals(path.get(i).toPacked(), packedPoints[i]);
+            assertEquals(packedPoints[i], path.getPacked(i));
+            assertEquals(map.indexOf(path.get(i)), indices[i]);
+        }
+        assertEquals(0, Path.emptyPath().toPackedArray().length);
+    }
+    
+}
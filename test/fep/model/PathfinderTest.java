@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.model;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the Pathfinder class.
+ * @author Kyle Buzsaki
+ */
+public class PathfinderTest {
+    
+    public PathfinderTest() {
+    }
+    
+    private static int costOf(Map map, Path path, MoveCostStrategy moveCostStrategy) {
+        int cost = 0;
+        for(int i = 1; i < path.size(); i++) {
+            cost += moveCostStrategy.getCostOf(map.getTerrainAt(path.get(i)).getTerrainBehavior());
+        }
+        return cost;
+    }
+    
+    /**
+     * Test of findPath on open terrain, of class Pathfinder.
+     */
+    @Test
+    public void testFindPathOpenTerrain() {
+        System.out.println("findPathOpenTerrain");
+        Map map = new Map(20, 20);
+        Pathfinder pathfinder = new Pathfinder(map);
+        ImmutablePoint start = new ImmutablePoint(2, 3);
+        ImmutablePoint goal = new ImmutablePoint(15, 11);
+        
+        Path path = pathfinder.findPath(start, goal, MoveType.FOOT);
+        assertNotNull(path);
+        assertEquals(start, path.get(0));
+        assertEquals(goal, path.getEnd());
+        assertEquals(start.distanceGrid(goal) + 1, path.size());
+        
+        Path trivialPath = pathfinder.findPath(start, start, MoveType.FOOT);
+        assertEquals(1, trivialPath.size());
+    }
+    
+    /**
+     * Test that findPath finds the cheapest path around obstacles and 
+     * expensive terrain, of class Pathfinder.
+     */
+    @Test
+    public void testFindPathCheapest() {
+        System.out.println("findPathCheapest");
+        Map map = new Map(10, 10);
+        // a wall along x = 5 with a gap at the bottom, and a forest gap at the top
+        for(int y = 0; y < map.getHeight(); y++) {
+            map.setTerrainAt(new ImmutablePoint(5, y), DefaultTerrain.WALL);
+        }
+        map.setTerrainAt(new ImmutablePoint(5, 0), DefaultTerrain.FOREST);
+        map.setTerrainAt(new ImmutablePoint(5, 9), DefaultTerrain.PLAINS);
+        Pathfinder pathfinder = new Pathfinder(map);
+        ImmutablePoint start = new ImmutablePoint(0, 1);
+        ImmutablePoint goal = new ImmutablePoint(9, 1);
+        
+        Path path = pathfinder.findPath(start, goal, MoveType.FOOT);
+        // through the forest costs 12, through the bottom gap costs 25
+        assertTrue(path.contains(new ImmutablePoint(5, 0)));
+        assertEquals(12, costOf(map, path, MoveType.FOOT));
+        
+        // knights pay 3 for forest, which is still the cheaper route
+        Path knightPath = pathfinder.findPath(start, goal, MoveType.KNIGHT_A);
+        assertEquals(13, costOf(map, knightPath, MoveType.KNIGHT_A));
+        
+        // closing the forest gap forces the long way around
+        map.setTerrainAt(new ImmutablePoint(5, 0), DefaultTerrain.PEAK);
+        Path longPath = pathfinder.findPath(start, goal, MoveType.FOOT);
+        assertTrue(longPath.contains(new ImmutablePoint(5, 9)));
+        assertEquals(25, costOf(map, longPath, MoveType.FOOT));
+        
+        // and closing that one leaves no path at all
+        map.setTerrainAt(new ImmutablePoint(5, 9), DefaultTerrain.WALL);
+        assertNull(pathfinder.findPath(start, goal, MoveType.FOOT));
+        assertNotNull(pathfinder.findPath(start, goal, MoveType.BANDIT));
+    }
+    
+    /**
+     * Test of findPath with a maximum cost and occupied tiles, of class 
+     * Pathfinder.
+     */
+    @Test
+    public void testFindPathMaxCostAndUnits() {
+        System.out.println("findPathMaxCostAndUnits");
+        Map map = new Map(5, 3);
+        Unit mover = new Unit();
+        Unit blocker = new Unit();
+        map.addUnit(new ImmutablePoint(0, 1), mover);
+        map.addUnit(new ImmutablePoint(2, 1), blocker);
+        Pathfinder pathfinder = new Pathfinder(map);
+        ImmutablePoint start = new ImmutablePoint(0, 1);
+        ImmutablePoint goal = new ImmutablePoint(4, 1);
+        
+        assertEquals(5, pathfinder.findPath(start, goal, MoveType.FOOT, 4, DefaultAllegiance.ALL_ALLIED).size());
+        assertNull(pathfinder.findPath(start, goal, MoveType.FOOT, 3, DefaultAllegiance.ALL_ALLIED));
+        
+        // the blocker forces a detour costing 6
+        assertNull(pathfinder.findPath(start, goal, MoveType.FOOT, 5, DefaultAllegiance.ALL_HOSTILE));
+        Path detour = pathfinder.findPath(start, goal, MoveType.FOOT, 6, DefaultAllegiance.ALL_HOSTILE);
+        assertNotNull(detour);
+        assertFalse(detour.contains(new ImmutablePoint(2, 1)));
+        
+        try {
+            pathfinder.findPath(start, new ImmutablePoint(5, 1), MoveType.FOOT);
+            fail("Successfully found a path to an out of bounds goal.");
+        } catch (IllegalArgumentException ex) {}
+        try {
+            pathfinder.findPath(start, goal, MoveType.FOOT, -1, DefaultAllegiance.ALL_ALLIED);
+            fail("Successfully found a path with a negative max cost.");
+        } catch (IllegalArgumentException ex) {}
+    }
+    
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2013 Kyle Buzsaki
+ */
+package fep.model;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the ReachabilityCache class.
+ * @author Kyle Buzsaki
+ */
+public class ReachabilityCacheTest {
+
+    public ReachabilityCacheTest() {
+    }
+
+    private static void assertSameRange(MoveRange expected, MoveRange actual) {
+        assertEquals(expected.getOrigin(), actual.getOrigin());
+        assertEquals(expected.getReachableCount(), actual.getReachableCount());
+        Map map = expected.getMap();
+        for(int tile = 0; tile < map.getTileCount(); tile++) {
+            assertEquals(expected.getCostTo(tile), actual.getCostTo(tile));
+            assertEquals(expected.canEndAt(tile), actual.canEndAt(tile));
+        }
+    }
+
+    /**
+     * Test of hits and region based invalidation, of class ReachabilityCache.
+     */
+    @Test
+    public void testInvalidation() {
+        System.out.println("invalidation");
+        Map map = new Map(40, 40);
+        ReachabilityCache cache = new ReachabilityCache(map, 8);
+        Unit unit = new Unit();
+        map.addUnit(new ImmutablePoint(4, 4), unit);
+
+        MoveRange range = cache.getMoveRange(unit, MoveType.FOOT, 3, DefaultAllegiance.ALL_HOSTILE);
+        assertSame(range, cache.getMoveRange(unit, MoveType.FOOT, 3, DefaultAllegiance.ALL_HOSTILE));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        // a change far from the unit leaves the range valid
+        map.setTerrainAt(new ImmutablePoint(30, 30), DefaultTerrain.WALL);
+        map.addUnit(new ImmutablePoint(35, 2), new Unit());
+        assertSame(range, cache.getMoveRange(unit, MoveType.FOOT, 3, DefaultAllegiance.ALL_HOSTILE));
+        assertEquals(0, cache.getInvalidationCount());
+
+        // a change within its movement does not
+        map.setTerrainAt(new ImmutablePoint(5, 4), DefaultTerrain.WALL);
+        MoveRange recalculated = cache.getMoveRange(unit, MoveType.FOOT, 3, DefaultAllegiance.ALL_HOSTILE);
+        assertNotSame(range, recalculated);
+        assertFalse(recalculated.isReachable(new ImmutablePoint(5, 4)));
+        assertEquals(1, cache.getInvalidationCount());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRate(), 0);
+
+        // neither does moving the unit at the origin away
+        map.moveUnitTo(new ImmutablePoint(4, 6), unit);
+        MoveRange emptyOrigin = cache.getMoveRange(new ImmutablePoint(4, 4), MoveType.FOOT, 3,
+                DefaultAllegiance.ALL_HOSTILE);
+        assertNotSame(recalculated, emptyOrigin);
+        assertSameRange(MoveRange.calculate(map, new ImmutablePoint(4, 4), MoveType.FOOT, 3,
+                DefaultAllegiance.ALL_HOSTILE), emptyOrigin);
+
+        // different parameters are different entries
+        assertNotSame(emptyOrigin, cache.getMoveRange(new ImmutablePoint(4, 4), MoveType.FOOT, 4,
+                DefaultAllegiance.ALL_HOSTILE));
+        assertNotSame(emptyOrigin, cache.getMoveRange(new ImmutablePoint(4, 4), MoveType.KNIGHT_A, 3,
+                DefaultAllegiance.ALL_HOSTILE));
+        assertEquals(3, cache.getSize());
+
+        try {
+            cache.getMoveRange(new Unit(), MoveType.FOOT, 3, DefaultAllegiance.ALL_HOSTILE);
+            fail("Got the move range of a unit not on the map");
+        } catch (IllegalArgumentException ex) {}
+    }
+
+    /**
+     * Test of least recently used eviction, of class ReachabilityCache.
+     */
+    @Test
+    public void testEviction() {
+        System.out.println("eviction");
+        Map map = new Map(10, 10);
+        ReachabilityCache cache = new ReachabilityCache(map, 2);
+        ImmutablePoint a = new ImmutablePoint(0, 0);
+        ImmutablePoint b = new ImmutablePoint(5, 5);
+        ImmutablePoint c = new ImmutablePoint(9, 9);
+
+        MoveRange rangeA = cache.getMoveRange(a, MoveType.FOOT, 2, DefaultAllegiance.ALL_HOSTILE);
+        cache.getMoveRange(b, MoveType.FOOT, 2, DefaultAllegiance.ALL_HOSTILE);
+        // touching a makes b the least recently used
+        cache.getMoveRange(a, MoveType.FOOT, 2, DefaultAllegiance.ALL_HOSTILE);
+        cache.getMoveRange(c, MoveType.FOOT, 2, DefaultAllegiance.ALL_HOSTILE);
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictionCount());
+
+        assertSame(rangeA, cache.getMoveRange(a, MoveType.FOOT, 2, DefaultAllegiance.ALL_HOSTILE));
+        long misses = cache.getMissCount();
+        cache.getMoveRange(b, MoveType.FOOT, 2, DefaultAllegiance.ALL_HOSTILE);
+        assertEquals(misses + 1, cache.getMissCount());
+
+        cache.clear();
+        assertEquals(0, cache.getSize());
+        try {
+            new ReachabilityCache(map, 0);
+            fail("Created a cache with no capacity");
+        } catch (IllegalArgumentException ex) {}
+    }
+
+    /**
+     * Test that cached ranges always match a fresh calculation as the map
+     * changes, of class ReachabilityCache.
+     */
+    @Test
+    public void testRandomChanges() {
+        System.out.println("randomChanges");
+        Random random = new Random(15);
+        Map map = new Map(30, 20);
+        ReachabilityCache cache = new ReachabilityCache(map, 16);
+        Terrain[] terrains = DefaultTerrain.values();
+        ImmutablePoint[] origins = new ImmutablePoint[6];
+        for(int i = 0; i < origins.length; i++) {
+            origins[i] = map.getPoint(random.nextInt(map.getTileCount()));
+        }
+        for(int step = 0; step < 300; step++) {
+            int tile = random.nextInt(map.getTileCount());
+            switch(random.nextInt(3)) {
+                case 0:
+                    map.setTerrainAt(tile, terrains[random.nextInt(terrains.length)]);
+                    break;
+                case 1:
+                    if(map.getUnitAt(tile) == null) {
+                        map.addUnit(tile, new Unit());
+                    }
+                    break;
+                default:
+                    if(map.getUnitAt(tile) != null) {
+                        map.removeUnit(map.getUnitAt(tile));
+                    }
+            }
+            ImmutablePoint origin = origins[random.nextInt(origins.length)];
+            int movement = random.nextInt(7);
+            assertSameRange(MoveRange.calculate(map, origin, MoveType.FOOT, movement,
+                    DefaultAllegiance.ALL_HOSTILE),
+                    cache.getMoveRange(origin, MoveType.FOOT, movement, DefaultAllegiance.ALL_HOSTILE));
+        }
+        assertTrue(cache.getHitCount() > 0);
+        assertTrue(cache.getInvalidationCount() > 0);
+    }
+
+}